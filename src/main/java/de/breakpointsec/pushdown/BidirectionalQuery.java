@@ -0,0 +1,166 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.weights.Semiring;
+import de.breakpointsec.pushdown.worklist.FifoWorklist;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reachability between two sets of configurations that runs post* from the source and pre* from the target in lock step, see
+ * {@link WPDS#isReachable(WeightedAutomaton, WeightedAutomaton)} and {@link WPDS#reachable(WeightedAutomaton, WeightedAutomaton)}.
+ *
+ * Whether the frontiers met is checked on the product of both automata. The checks are spaced out geometrically, so their cost stays proportional to
+ * the saturation steps.
+ *
+ * @param <L> Control location
+ * @param <S> State
+ * @param <W> Semiring
+ */
+class BidirectionalQuery<L, S, W extends Semiring> {
+
+	private static final long FIRST_CHECK = 1;
+
+	private final PostStar<L, S, W> forward;
+	private final PreStar<L, S, W> backward;
+
+	BidirectionalQuery(WPDS<L, S, W> pds, WeightedAutomaton<L, S, W> source, WeightedAutomaton<L, S, W> target) {
+		this.forward = new PostStar<>(pds, source, new FifoWorklist<>());
+		this.backward = new PreStar<>(pds, target, new FifoWorklist<>());
+	}
+
+	/**
+	 * Advances both saturations until the automata accept a common configuration or both are complete.
+	 *
+	 * @return whether a common configuration was found
+	 */
+	boolean meet() throws IllegalTransitionException {
+		forward.seed();
+		backward.seed();
+		long steps = 0;
+		long nextCheck = FIRST_CHECK;
+		while (true) {
+			boolean progress = forward.step() | backward.step();
+			steps++;
+			if (!progress || steps >= nextCheck) {
+				if (intersect(forward.getAutomaton(), backward.getAutomaton()) != null)
+					return true;
+				if (!progress)
+					return false;
+				nextCheck = steps * 2;
+			}
+		}
+	}
+
+	/**
+	 * Advances both saturations until one of them is complete and combines the weights of the common configurations. A configuration accepted by the
+	 * complete automaton carries its final weight, the ones accepted by the partial automaton carry an upper bound, so for idempotent semirings the
+	 * combination is the weight of the full saturation.
+	 *
+	 * @return the weight, or null if the automata accept no common configuration
+	 */
+	W weight() throws IllegalTransitionException {
+		forward.seed();
+		backward.seed();
+		while (forward.step() & backward.step()) {
+		}
+		return intersect(forward.getAutomaton(), backward.getAutomaton());
+	}
+
+	/**
+	 * Computes the weight of all configurations accepted by both a post* and a pre* automaton, by a fixpoint over the product of both automata that starts
+	 * at the control states. The weight of a path in the post* automaton is extended from its last transition to its first, the one in the pre* automaton
+	 * from its first transition to its last, and the weight of a configuration extends the former with the latter.
+	 *
+	 * Control states are the states of {@code post} without incoming transitions.
+	 *
+	 * @return the combined weight, or null if the automata accept no common configuration
+	 */
+	static <L, S, W extends Semiring> W intersect(WeightedAutomaton<L, S, W> post, WeightedAutomaton<L, S, W> pre) {
+		Map<StatePair<S>, W> weights = new HashMap<>();
+		Deque<StatePair<S>> worklist = new ArrayDeque<>();
+		for (S p : post.getStates()) {
+			if (post.getTransitionsInto(p).isEmpty() && !post.getTransitionsOutOf(p).isEmpty() && !pre.getTransitionsOutOf(p).isEmpty()) {
+				relax(weights, worklist, new StatePair<>(p, p), post.getOne());
+			}
+		}
+
+		W result = null;
+		L epsilon = post.epsilon();
+		while (!worklist.isEmpty()) {
+			StatePair<S> pair = worklist.poll();
+			W w = weights.get(pair);
+			if (post.getFinalState().contains(pair.post) && pre.getFinalState().contains(pair.pre)) {
+				result = result == null ? w : (W) result.combineWith(w);
+			}
+			for (Transition<L, S> t1 : post.getTransitionsOutOf(pair.post)) {
+				W w1 = post.getWeightFor(t1);
+				if (t1.getLabel().equals(epsilon)) {
+					relax(weights, worklist, new StatePair<>(t1.getTarget(), pair.pre), (W) w1.extendWith(w));
+					continue;
+				}
+				for (Transition<L, S> t2 : pre.getTransitionsOutOf(pair.pre, t1.getLabel())) {
+					relax(weights, worklist, new StatePair<>(t1.getTarget(), t2.getTarget()), (W) w1.extendWith(w).extendWith(pre.getWeightFor(t2)));
+				}
+			}
+			for (Transition<L, S> t2 : pre.getTransitionsOutOf(pair.pre, pre.epsilon())) {
+				relax(weights, worklist, new StatePair<>(pair.post, t2.getTarget()), (W) w.extendWith(pre.getWeightFor(t2)));
+			}
+		}
+		return result;
+	}
+
+	private static <S, W extends Semiring> void relax(Map<StatePair<S>, W> weights, Deque<StatePair<S>> worklist, StatePair<S> pair, W w) {
+		W old = weights.get(pair);
+		W combined = old == null ? w : (W) old.combineWith(w);
+		if (!combined.equals(old)) {
+			weights.put(pair, combined);
+			worklist.add(pair);
+		}
+	}
+
+	private static final class StatePair<S> {
+		final S post;
+		final S pre;
+
+		StatePair(S post, S pre) {
+			this.post = post;
+			this.pre = pre;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * post.hashCode() + pre.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof StatePair))
+				return false;
+			StatePair<?> other = (StatePair<?>) obj;
+			return Objects.equals(post, other.post) && Objects.equals(pre, other.pre);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.rules.NormalRule;
+import de.breakpointsec.pushdown.rules.PopRule;
+import de.breakpointsec.pushdown.rules.PushRule;
+import de.breakpointsec.pushdown.weights.Semiring;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * Remembers the results of another {@link RuleProvider}, see {@link RuleProvider#cached()}. Safe for concurrent lookups as long as the underlying
+ * provider is.
+ *
+ * @param <L> Control location
+ * @param <S> State
+ * @param <W> Semiring
+ */
+public class CachingRuleProvider<L, S, W extends Semiring> implements RuleProvider<L, S, W> {
+
+	private final RuleProvider<L, S, W> provider;
+
+	private final ConcurrentHashMap<S, ConcurrentHashMap<L, Set<PopRule<L, S, W>>>> popRulesStarting = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<S, ConcurrentHashMap<L, Set<NormalRule<L, S, W>>>> normalRulesStarting = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<S, ConcurrentHashMap<L, Set<PushRule<L, S, W>>>> pushRulesStarting = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<S, ConcurrentHashMap<L, Set<NormalRule<L, S, W>>>> normalRulesEnding = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<S, ConcurrentHashMap<L, Set<PushRule<L, S, W>>>> pushRulesEnding = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<L, Set<PushRule<L, S, W>>> pushRulesByCallSite = new ConcurrentHashMap<>();
+	private volatile Set<PopRule<L, S, W>> popRules;
+	private volatile Set<NormalRule<L, S, W>> normalRules;
+	private volatile Set<PushRule<L, S, W>> pushRules;
+
+	public CachingRuleProvider(RuleProvider<L, S, W> provider) {
+		this.provider = provider;
+	}
+
+	private static <A, B, R> Set<R> cached(ConcurrentHashMap<A, ConcurrentHashMap<B, Set<R>>> cache, A a, B b, BiFunction<A, B, Set<R>> lookup) {
+		return cache.computeIfAbsent(a, k -> new ConcurrentHashMap<>()).computeIfAbsent(b, k -> lookup.apply(a, b));
+	}
+
+	@Override
+	public Set<PopRule<L, S, W>> getPopRulesStarting(S start, L string) {
+		return cached(popRulesStarting, start, string, provider::getPopRulesStarting);
+	}
+
+	@Override
+	public Set<NormalRule<L, S, W>> getNormalRulesStarting(S start, L string) {
+		return cached(normalRulesStarting, start, string, provider::getNormalRulesStarting);
+	}
+
+	@Override
+	public Set<PushRule<L, S, W>> getPushRulesStarting(S start, L string) {
+		return cached(pushRulesStarting, start, string, provider::getPushRulesStarting);
+	}
+
+	@Override
+	public Set<NormalRule<L, S, W>> getNormalRulesEnding(S start, L string) {
+		return cached(normalRulesEnding, start, string, provider::getNormalRulesEnding);
+	}
+
+	@Override
+	public Set<PushRule<L, S, W>> getPushRulesEnding(S start, L string) {
+		return cached(pushRulesEnding, start, string, provider::getPushRulesEnding);
+	}
+
+	@Override
+	public Set<PushRule<L, S, W>> getPushRulesWithCallSite(L callSite) {
+		return pushRulesByCallSite.computeIfAbsent(callSite, provider::getPushRulesWithCallSite);
+	}
+
+	@Override
+	public Set<PopRule<L, S, W>> getPopRules() {
+		Set<PopRule<L, S, W>> rules = popRules;
+		if (rules == null) {
+			rules = provider.getPopRules();
+			popRules = rules;
+		}
+		return rules;
+	}
+
+	@Override
+	public Set<NormalRule<L, S, W>> getNormalRules() {
+		Set<NormalRule<L, S, W>> rules = normalRules;
+		if (rules == null) {
+			rules = provider.getNormalRules();
+			normalRules = rules;
+		}
+		return rules;
+	}
+
+	@Override
+	public Set<PushRule<L, S, W>> getPushRules() {
+		Set<PushRule<L, S, W>> rules = pushRules;
+		if (rules == null) {
+			rules = provider.getPushRules();
+			pushRules = rules;
+		}
+		return rules;
+	}
+
+	@Override
+	public RuleProvider<L, S, W> cached() {
+		return this;
+	}
+}
@@ -0,0 +1,199 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableSet;
+import de.breakpointsec.pushdown.fsm.SymbolTable;
+import de.breakpointsec.pushdown.rules.NormalRule;
+import de.breakpointsec.pushdown.rules.PopRule;
+import de.breakpointsec.pushdown.rules.PushRule;
+import de.breakpointsec.pushdown.rules.Rule;
+import de.breakpointsec.pushdown.weights.Semiring;
+import de.breakpointsec.pushdown.weights.WeightCache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * An immutable copy of the rules of a {@link WPDS}, created by {@link WPDS#compile()}. All saturations run on it unchanged, and it can be shared by
+ * any number of threads. Saturations still take the read lock of the rules, which is never contended since the rules cannot change.
+ *
+ * States and locations are interned to {@code int} ids, and every rule index is a {@link RuleTable}: a sorted array of packed id pairs with the offsets
+ * of their rules. A lookup hashes the state and the location once and binary searches the table, instead of hashing into nested maps, and returns a
+ * precomputed read-only set.
+ *
+ * Rules of a {@link RuleProvider} are not part of the compiled WPDS. The {@link WeightCache} of the source is shared with it.
+ *
+ * @param <L> Control location
+ * @param <S> State
+ * @param <W> Semiring
+ */
+public class CompiledWPDS<L, S, W extends Semiring> extends WPDS<L, S, W> {
+
+	private final L epsilon;
+	private final SymbolTable<S> states = new SymbolTable<>();
+	private final SymbolTable<L> locations = new SymbolTable<>();
+
+	private final Set<NormalRule<L, S, W>> allNormalRules;
+	private final Set<PopRule<L, S, W>> allPopRules;
+	private final Set<PushRule<L, S, W>> allPushRules;
+
+	private final RuleTable<PopRule<L, S, W>> popRulesStarting;
+	private final RuleTable<NormalRule<L, S, W>> normalRulesStarting;
+	private final RuleTable<PushRule<L, S, W>> pushRulesStarting;
+	private final RuleTable<NormalRule<L, S, W>> normalRulesEnding;
+	private final RuleTable<PushRule<L, S, W>> pushRulesEnding;
+	private final RuleTable<PushRule<L, S, W>> pushRulesEndingWithLabel;
+	private final RuleTable<PushRule<L, S, W>> pushRulesByCallSite;
+
+	CompiledWPDS(WPDS<L, S, W> source) {
+		this.epsilon = source.epsilon();
+		setWeightCache(source.getWeightCache());
+		this.allNormalRules = ImmutableSet.copyOf(source.normalRules);
+		this.allPopRules = ImmutableSet.copyOf(source.popRules);
+		this.allPushRules = ImmutableSet.copyOf(source.pushRules);
+		for (Rule<L, S, W> rule : source.getAllRules()) {
+			states.intern(rule.getS1());
+			states.intern(rule.getS2());
+			locations.intern(rule.getL1());
+			if (rule.getL2() != null)
+				locations.intern(rule.getL2());
+		}
+		this.popRulesStarting = new RuleTable<>(allPopRules, r -> key(r.getS1(), r.getL1()));
+		this.normalRulesStarting = new RuleTable<>(allNormalRules, r -> key(r.getS1(), r.getL1()));
+		this.pushRulesStarting = new RuleTable<>(allPushRules, r -> key(r.getS1(), r.getL1()));
+		this.normalRulesEnding = new RuleTable<>(allNormalRules, r -> key(r.getS2(), r.getL2()));
+		this.pushRulesEnding = new RuleTable<>(allPushRules, r -> key(r.getS2(), r.getL2()));
+		this.pushRulesEndingWithLabel = new RuleTable<>(allPushRules, r -> locations.indexOf(r.getL2()));
+		this.pushRulesByCallSite = new RuleTable<>(allPushRules, r -> locations.intern(r.getCallSite()));
+	}
+
+	/**
+	 * The packed ids of {@code state} and {@code location}, or -1 if one of them does not occur in any rule.
+	 */
+	private long key(S state, L location) {
+		int s = states.indexOf(state);
+		int l = locations.indexOf(location);
+		if (s < 0 || l < 0)
+			return -1;
+		return ((long) s << 32) | l;
+	}
+
+	@Override
+	public L epsilon() {
+		return epsilon;
+	}
+
+	/**
+	 * Always fails, a compiled WPDS cannot be changed.
+	 */
+	@Override
+	public boolean addRule(Rule<L, S, W> rule) {
+		throw new UnsupportedOperationException("A compiled WPDS is immutable");
+	}
+
+	/**
+	 * Always fails, a compiled WPDS cannot be changed.
+	 */
+	@Override
+	public int addRules(Collection<? extends Rule<L, S, W>> rules) {
+		throw new UnsupportedOperationException("A compiled WPDS is immutable");
+	}
+
+	/**
+	 * Always fails, a compiled WPDS cannot be changed.
+	 */
+	@Override
+	public boolean removeRule(Rule<L, S, W> rule) {
+		throw new UnsupportedOperationException("A compiled WPDS is immutable");
+	}
+
+	/**
+	 * Returns this WPDS.
+	 */
+	@Override
+	public CompiledWPDS<L, S, W> compile() {
+		return this;
+	}
+
+	@Override
+	public Set<NormalRule<L, S, W>> getNormalRules() {
+		return allNormalRules;
+	}
+
+	@Override
+	public Set<PopRule<L, S, W>> getPopRules() {
+		return allPopRules;
+	}
+
+	@Override
+	public Set<PushRule<L, S, W>> getPushRules() {
+		return allPushRules;
+	}
+
+	@Override
+	public Set<Rule<L, S, W>> getAllRules() {
+		return ImmutableSet.<Rule<L, S, W>> builder().addAll(allNormalRules).addAll(allPopRules).addAll(allPushRules).build();
+	}
+
+	@Override
+	public Set<PopRule<L, S, W>> getPopRulesStarting(S start, L string) {
+		return lookup(popRulesStarting, key(start, string));
+	}
+
+	@Override
+	public Set<NormalRule<L, S, W>> getNormalRulesStarting(S start, L string) {
+		return lookup(normalRulesStarting, key(start, string));
+	}
+
+	@Override
+	public Set<PushRule<L, S, W>> getPushRulesStarting(S start, L string) {
+		return lookup(pushRulesStarting, key(start, string));
+	}
+
+	@Override
+	public Set<NormalRule<L, S, W>> getNormalRulesEnding(S start, L string) {
+		return lookup(normalRulesEnding, key(start, string));
+	}
+
+	@Override
+	public Set<PushRule<L, S, W>> getPushRulesEnding(S start, L string) {
+		return lookup(pushRulesEnding, key(start, string));
+	}
+
+	@Override
+	public Set<PushRule<L, S, W>> getPushRulesEnding(L string) {
+		return lookup(pushRulesEndingWithLabel, locations.indexOf(string));
+	}
+
+	@Override
+	public Set<PushRule<L, S, W>> getPushRulesWithCallSite(L callSite) {
+		return lookup(pushRulesByCallSite, locations.indexOf(callSite));
+	}
+
+	private static <R> Set<R> lookup(RuleTable<R> table, long key) {
+		return key < 0 ? Collections.emptySet() : table.lookup(key);
+	}
+
+	@Override
+	public String toString() {
+		return "CompiledWPDS (#Rules: " + (allNormalRules.size() + allPopRules.size() + allPushRules.size()) + ", #States: " + states.size() + ", #Locations: "
+				+ locations.size() + ")";
+	}
+}
@@ -0,0 +1,214 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.rules.NormalRule;
+import de.breakpointsec.pushdown.rules.PopRule;
+import de.breakpointsec.pushdown.rules.PushRule;
+import de.breakpointsec.pushdown.rules.Rule;
+import de.breakpointsec.pushdown.weights.Semiring;
+import de.breakpointsec.pushdown.worklist.Worklist;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One post* saturation of an automaton against a {@link WPDS}.
+ *
+ * The state of the saturation (worklist and generated states) is kept between calls, so a saturated automaton can be resumed after rules have been
+ * added with {@link #fire(Rule)} or removed with {@link #retract(Rule)}.
+ *
+ * @param <L> Control location
+ * @param <S> State
+ * @param <W> Semiring
+ */
+class PostStar<L, S, W extends Semiring> extends Saturation<L, S, W> {
+
+	/*
+	 * For each push rule <p, y> -> <p', y' y''> the state p'_y' of Phase 1, created the first time the rule fires, and the push rules of each generated
+	 * state (rules with the same <p', y'> share it).
+	 */
+	private final Map<PushRule<L, S, W>, S> generatedStates = new HashMap<>();
+	private final SetMultimap<S, PushRule<L, S, W>> generatedBy = HashMultimap.create();
+
+	PostStar(WPDS<L, S, W> pds, WeightedAutomaton<L, S, W> fa, Worklist<L, S> worklist) {
+		super(pds, fa, worklist);
+	}
+
+	/**
+	 * Puts all transitions of the automaton on the worklist.
+	 */
+	void seed() {
+		for (Transition<L, S> t : fa.getTransitions()) {
+			rememberInitialWeight(t);
+			worklist.add(t);
+		}
+	}
+
+	@Override
+	protected void process(Transition<L, S> t) throws IllegalTransitionException {
+		//Transitive pops
+		if (t.getLabel().equals(pds.epsilon())) {
+			for (Transition<L, S> transPrime : fa.getTransitionsOutOf(t.getTarget())) {
+				Transition<L, S> newTrans = new Transition<>(t.getStart(), transPrime.getLabel(), transPrime.getTarget());
+				if (longWeights != null) {
+					updateLong(newTrans, longSemiring.extendValues(longWeight(transPrime), longWeight(t)));
+					continue;
+				}
+				W newWeight = pds.extend(fa.getCurrentWeight(transPrime), fa.getCurrentWeight(t));
+				update(newTrans, newWeight, null);
+			}
+			return;
+		}
+
+		for (PopRule<L, S, W> rule : pds.getPopRulesStarting(t.getStart(), t.getLabel())) {
+			firePopRule(rule, t);
+		}
+		for (NormalRule<L, S, W> rule : pds.getNormalRulesStarting(t.getStart(), t.getLabel())) {
+			fireNormalRule(rule, t);
+		}
+		for (PushRule<L, S, W> rule : pds.getPushRulesStarting(t.getStart(), t.getLabel())) {
+			firePushRule(rule, t);
+		}
+	}
+
+	/**
+	 * Applies a rule that was added after the saturation started to all transitions it can fire on. Transitions added later are handled by
+	 * {@link #step()} as usual.
+	 *
+	 * @param rule
+	 */
+	@Override
+	void fire(Rule<L, S, W> rule) throws IllegalTransitionException {
+		for (Transition<L, S> t : fa.getTransitionsOutOf(rule.getS1(), rule.getL1())) {
+			if (rule instanceof PopRule) {
+				firePopRule((PopRule<L, S, W>) rule, t);
+			} else if (rule instanceof NormalRule) {
+				fireNormalRule((NormalRule<L, S, W>) rule, t);
+			} else if (rule instanceof PushRule) {
+				firePushRule((PushRule<L, S, W>) rule, t);
+			}
+		}
+	}
+
+	/**
+	 * The weight of a transition into a generated state is relative to the call that created the state. It can still decrease after it was taken from a
+	 * worklist ordered by weight, so only transitions into states of the initial automaton are targets.
+	 */
+	@Override
+	protected boolean isTarget(Transition<L, S> t) {
+		return !generatedBy.containsKey(t.getTarget());
+	}
+
+	/**
+	 * Besides the rules, {@code t} is the second premise of the transitive pops over epsilon transitions into its start.
+	 */
+	@Override
+	protected void derive(Transition<L, S> t) throws IllegalTransitionException {
+		process(t);
+		if (!t.getLabel().equals(pds.epsilon())) {
+			for (Transition<L, S> eps : fa.getTransitionsInto(t.getStart(), pds.epsilon())) {
+				collect(new Transition<>(eps.getStart(), t.getLabel(), t.getTarget()));
+			}
+		}
+	}
+
+	/**
+	 * A transition p~y~>q is derived from a transition into q, from an epsilon transition out of p, or, if q is a generated state, from a transition the
+	 * push rule of q fires on.
+	 */
+	@Override
+	protected void rederive(Transition<L, S> t) {
+		for (Transition<L, S> into : fa.getTransitionsInto(t.getTarget())) {
+			worklist.add(into);
+		}
+		for (Transition<L, S> eps : fa.getTransitionsOutOf(t.getStart(), pds.epsilon())) {
+			worklist.add(eps);
+		}
+		for (PushRule<L, S, W> rule : generatedBy.get(t.getTarget())) {
+			for (Transition<L, S> premise : fa.getTransitionsOutOf(rule.getS1(), rule.getL1())) {
+				worklist.add(premise);
+			}
+		}
+	}
+
+	private boolean update(Transition<L, S> newTrans, W newWeight, Rule<L, S, W> rule) throws IllegalTransitionException {
+		if (collect(newTrans))
+			return true;
+		return pds.updatePostStar(newTrans, newWeight, rule, fa, worklist);
+	}
+
+	private void firePopRule(PopRule<L, S, W> rule, Transition<L, S> t) throws IllegalTransitionException {
+		Transition<L, S> newTrans = new Transition<L, S>(rule.getS2(), pds.epsilon(), t.getTarget());
+		if (longWeights != null) {
+			updateLong(newTrans, longSemiring.extendValues(longWeight(t), longValue(rule.getWeight())));
+			return;
+		}
+		W newWeight = pds.extend(fa.getCurrentWeight(t), rule.getWeight());
+		update(newTrans, newWeight, rule);
+	}
+
+	private void fireNormalRule(NormalRule<L, S, W> rule, Transition<L, S> t) throws IllegalTransitionException {
+		Transition<L, S> newTrans = new Transition<L, S>(rule.getS2(), rule.getL2(), t.getTarget());
+		if (longWeights != null) {
+			updateLong(newTrans, longSemiring.extendValues(longWeight(t), longValue(rule.getWeight())));
+			return;
+		}
+		W newWeight = pds.extend(fa.getCurrentWeight(t), rule.getWeight());
+		update(newTrans, newWeight, rule);
+	}
+
+	private void firePushRule(PushRule<L, S, W> rule, Transition<L, S> t) throws IllegalTransitionException {
+		S irState = generatedStates.computeIfAbsent(rule, r -> {
+			S state = fa.createState(r.getS2(), r.getL2());
+			generatedBy.put(state, r);
+			return state;
+		});
+		Transition<L, S> newTrans = new Transition<L, S>(rule.getS2(), rule.getL2(), irState);
+		if (longWeights != null) {
+			firePushRuleLong(rule, t, irState, newTrans);
+			return;
+		}
+		update(newTrans, fa.getOne(), rule);
+
+		Transition<L, S> newTrans2 = new Transition<L, S>(irState, rule.getCallSite(), t.getTarget());
+		W newWeight2 = pds.extend(fa.getCurrentWeight(t), rule.getWeight());
+		boolean changed = update(newTrans2, newWeight2, rule);
+		if (changed) {
+			for (Transition<L, S> tPrime : fa.getTransitionsInto(irState, fa.epsilon())) {
+				update(new Transition<L, S>(tPrime.getStart(), rule.getCallSite(), t.getTarget()), pds.extend(newWeight2, fa.getCurrentWeight(tPrime)), rule);
+			}
+		}
+	}
+
+	private void firePushRuleLong(PushRule<L, S, W> rule, Transition<L, S> t, S irState, Transition<L, S> newTrans) throws IllegalTransitionException {
+		updateLong(newTrans, longOne);
+
+		Transition<L, S> newTrans2 = new Transition<L, S>(irState, rule.getCallSite(), t.getTarget());
+		long newWeight2 = longSemiring.extendValues(longWeight(t), longValue(rule.getWeight()));
+		if (updateLong(newTrans2, newWeight2)) {
+			for (Transition<L, S> tPrime : fa.getTransitionsInto(irState, fa.epsilon())) {
+				updateLong(new Transition<L, S>(tPrime.getStart(), rule.getCallSite(), t.getTarget()), longSemiring.extendValues(newWeight2, longWeight(tPrime)));
+			}
+		}
+	}
+}
@@ -0,0 +1,177 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.TransitionListener;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.rules.NormalRule;
+import de.breakpointsec.pushdown.rules.PopRule;
+import de.breakpointsec.pushdown.rules.PushRule;
+import de.breakpointsec.pushdown.rules.Rule;
+import de.breakpointsec.pushdown.weights.Semiring;
+import de.breakpointsec.pushdown.worklist.Worklist;
+
+/**
+ * One pre* saturation of an automaton against a {@link WPDS}.
+ *
+ * Like {@link PostStar} the worklist is kept between calls, so a saturated automaton can be extended with new rules ({@link #fire(Rule)}) and, while
+ * registered as {@link TransitionListener}, with transitions added to the automaton. Rules are removed with {@link #retract(Rule)}.
+ *
+ * @param <L> Control location
+ * @param <S> State
+ * @param <W> Semiring
+ */
+class PreStar<L, S, W extends Semiring> extends Saturation<L, S, W> implements TransitionListener<L, S, W> {
+
+	private boolean saturating;
+
+	PreStar(WPDS<L, S, W> pds, WeightedAutomaton<L, S, W> fa, Worklist<L, S> worklist) {
+		super(pds, fa, worklist);
+	}
+
+	/**
+	 * Combines the weight one into all transitions of the automaton, puts them on the worklist and adds the transitions of all pop rules.
+	 */
+	void seed() throws IllegalTransitionException {
+		for (Transition<L, S> trans : fa.getTransitions()) {
+			if (longWeights != null)
+				fa.accumulateWeight(trans, longOne, longSemiring);
+			else
+				fa.combineWeightForTransition(trans, fa.getOne());
+			rememberInitialWeight(trans);
+			worklist.add(trans);
+		}
+		for (PopRule<L, S, W> r : pds.getPopRules()) {
+			firePopRule(r);
+		}
+	}
+
+	@Override
+	void saturate() throws IllegalTransitionException {
+		saturating = true;
+		try {
+			super.saturate();
+		} finally {
+			saturating = false;
+		}
+	}
+
+	@Override
+	protected void process(Transition<L, S> t) throws IllegalTransitionException {
+
+		// Normal rules
+		for (NormalRule<L, S, W> r : pds.getNormalRulesEnding(t.getStart(), t.getLabel())) {
+			fireNormalRule(r, t);
+		}
+
+		// Push rules, t as the first transition: <p, y> -> <t.start, t.label y''> with t.target~y''~>q
+		for (PushRule<L, S, W> r : pds.getPushRulesEnding(t.getStart(), t.getLabel())) {
+			firePushRule(r, t);
+		}
+
+		// t as the second transition of a push rule: <p, y> -> <p', y' t.label> with p'~y'~>t.start
+		for (PushRule<L, S, W> r : pds.getPushRulesWithCallSite(t.getLabel())) {
+			Transition<L, S> tdash = new Transition<L, S>(r.getS2(), r.getL2(), t.getStart());
+			if (!fa.containsTransition(tdash))
+				continue;
+			Transition<L, S> newTrans = new Transition<L, S>(r.getS1(), r.getL1(), t.getTarget());
+			if (longWeights != null)
+				updateLong(newTrans, longSemiring.extendValues(longSemiring.extendValues(longValue(r.getWeight()), longWeight(tdash)), longWeight(t)));
+			else
+				update(newTrans, pds.extend(pds.extend(r.getWeight(), fa.getCurrentWeight(tdash)), fa.getCurrentWeight(t)));
+		}
+	}
+
+	/**
+	 * Applies a rule that was added after the saturation started to all transitions matching its right-hand side.
+	 *
+	 * @param rule
+	 */
+	@Override
+	void fire(Rule<L, S, W> rule) throws IllegalTransitionException {
+		if (rule instanceof PopRule) {
+			firePopRule((PopRule<L, S, W>) rule);
+			return;
+		}
+		for (Transition<L, S> t : fa.getTransitionsOutOf(rule.getS2(), rule.getL2())) {
+			if (rule instanceof NormalRule) {
+				fireNormalRule((NormalRule<L, S, W>) rule, t);
+			} else if (rule instanceof PushRule) {
+				firePushRule((PushRule<L, S, W>) rule, t);
+			}
+		}
+	}
+
+	/**
+	 * A transition p~y~>q is derived from a transition into q, or it is the transition of a pop rule.
+	 */
+	@Override
+	protected void rederive(Transition<L, S> t) throws IllegalTransitionException {
+		for (Transition<L, S> into : fa.getTransitionsInto(t.getTarget())) {
+			worklist.add(into);
+		}
+		for (PopRule<L, S, W> r : pds.getPopRulesStarting(t.getStart(), t.getLabel())) {
+			if (r.getS2().equals(t.getTarget()))
+				firePopRule(r);
+		}
+	}
+
+	/**
+	 * Queues a transition added to the automaton from outside and lets the WPDS resume the saturation, unless the transition was added during
+	 * saturation.
+	 */
+	@Override
+	public void transitionAdded(Transition<L, S> trans, W weight) {
+		rememberInitialWeight(trans, weight);
+		worklist.add(trans);
+		if (!saturating)
+			pds.resumeIncremental(this);
+	}
+
+	private void update(Transition<L, S> t, W w) throws IllegalTransitionException {
+		if (!collect(t))
+			pds.updatePrestar(worklist, t, w, fa);
+	}
+
+	private void firePopRule(PopRule<L, S, W> r) throws IllegalTransitionException {
+		Transition<L, S> newTrans = new Transition<>(r.getS1(), r.getL1(), r.getS2());
+		if (longWeights != null)
+			updateLong(newTrans, longValue(r.getWeight()));
+		else
+			update(newTrans, r.getWeight());
+	}
+
+	private void fireNormalRule(NormalRule<L, S, W> r, Transition<L, S> t) throws IllegalTransitionException {
+		Transition<L, S> newTrans = new Transition<L, S>(r.getS1(), r.getL1(), t.getTarget());
+		if (longWeights != null)
+			updateLong(newTrans, longSemiring.extendValues(longValue(r.getWeight()), longWeight(t)));
+		else
+			update(newTrans, pds.extend(r.getWeight(), fa.getCurrentWeight(t)));
+	}
+
+	private void firePushRule(PushRule<L, S, W> r, Transition<L, S> t) throws IllegalTransitionException {
+		for (Transition<L, S> tdash : fa.getTransitionsOutOf(t.getTarget(), r.getCallSite())) {
+			Transition<L, S> newTrans = new Transition<L, S>(r.getS1(), r.getL1(), tdash.getTarget());
+			if (longWeights != null)
+				updateLong(newTrans, longSemiring.extendValues(longSemiring.extendValues(longValue(r.getWeight()), longWeight(t)), longWeight(tdash)));
+			else
+				update(newTrans, pds.extend(pds.extend(r.getWeight(), fa.getCurrentWeight(t)), fa.getCurrentWeight(tdash)));
+		}
+	}
+}
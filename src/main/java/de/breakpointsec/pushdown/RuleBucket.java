@@ -0,0 +1,60 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import com.google.common.collect.Iterators;
+
+import java.util.AbstractSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * A set of rules stored under one key of a rule index in {@link WPDS}.
+ *
+ * The bucket itself is a read-only view, so lookups can hand it out directly without copying or wrapping it.
+ *
+ * @param <R> Rule type
+ */
+class RuleBucket<R> extends AbstractSet<R> {
+
+	private final Set<R> rules = new HashSet<>();
+
+	boolean addRule(R rule) {
+		return rules.add(rule);
+	}
+
+	boolean removeRule(R rule) {
+		return rules.remove(rule);
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return rules.contains(o);
+	}
+
+	@Override
+	public Iterator<R> iterator() {
+		return Iterators.unmodifiableIterator(rules.iterator());
+	}
+
+	@Override
+	public int size() {
+		return rules.size();
+	}
+}
@@ -0,0 +1,96 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.rules.NormalRule;
+import de.breakpointsec.pushdown.rules.PopRule;
+import de.breakpointsec.pushdown.rules.PushRule;
+import de.breakpointsec.pushdown.weights.Semiring;
+import de.breakpointsec.pushdown.worklist.WorklistStrategy;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Supplies the rules of a {@link WPDS} on demand, so only the rules a query actually reaches have to be created.
+ *
+ * The lookups mirror those of {@link WPDS}: post* asks for the rules starting at a transition, pre* for the rules ending at a transition and for all pop
+ * rules. Lookups a provider cannot answer may be left at their default, which provides no rules. Parallel saturation and batch queries call the
+ * provider from several threads at once.
+ *
+ * @param <L> Control location
+ * @param <S> State
+ * @param <W> Semiring
+ */
+public interface RuleProvider<L, S, W extends Semiring> {
+
+	default Set<PopRule<L, S, W>> getPopRulesStarting(S start, L string) {
+		return Collections.emptySet();
+	}
+
+	default Set<NormalRule<L, S, W>> getNormalRulesStarting(S start, L string) {
+		return Collections.emptySet();
+	}
+
+	default Set<PushRule<L, S, W>> getPushRulesStarting(S start, L string) {
+		return Collections.emptySet();
+	}
+
+	default Set<NormalRule<L, S, W>> getNormalRulesEnding(S start, L string) {
+		return Collections.emptySet();
+	}
+
+	default Set<PushRule<L, S, W>> getPushRulesEnding(S start, L string) {
+		return Collections.emptySet();
+	}
+
+	default Set<PushRule<L, S, W>> getPushRulesWithCallSite(L callSite) {
+		return Collections.emptySet();
+	}
+
+	/**
+	 * All pop rules, used by pre* to seed the automaton.
+	 */
+	default Set<PopRule<L, S, W>> getPopRules() {
+		return Collections.emptySet();
+	}
+
+	/**
+	 * All normal rules, used by the worklist strategies that order labels by the rule graph, see {@link WorklistStrategy#topological()}. Rules left out
+	 * here are still found by the lookups, they only do not contribute to the label order.
+	 */
+	default Set<NormalRule<L, S, W>> getNormalRules() {
+		return Collections.emptySet();
+	}
+
+	/**
+	 * All push rules, used like {@link #getNormalRules()}.
+	 */
+	default Set<PushRule<L, S, W>> getPushRules() {
+		return Collections.emptySet();
+	}
+
+	/**
+	 * Returns a provider that asks this one at most once per lookup and remembers the result.
+	 *
+	 * @return
+	 */
+	default RuleProvider<L, S, W> cached() {
+		return new CachingRuleProvider<>(this);
+	}
+}
@@ -0,0 +1,115 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+/**
+ * Immutable rule index of a {@link CompiledWPDS}. The rules are sorted by a {@code long} key, the distinct keys are kept in a sorted array with the
+ * offsets of their rules next to them, so a lookup is a binary search that returns a precomputed read-only slice of the rule array.
+ *
+ * @param <R> Rule type
+ */
+final class RuleTable<R> {
+
+	private final long[] keys;
+	private final Object[] rules;
+	private final Slice<R>[] slices;
+
+	RuleTable(Collection<? extends R> rules, ToLongFunction<? super R> key) {
+		Object[] sorted = rules.toArray();
+		long[] ruleKeys = new long[sorted.length];
+		Integer[] order = new Integer[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			ruleKeys[i] = key.applyAsLong((R) sorted[i]);
+			order[i] = i;
+		}
+		Arrays.sort(order, Comparator.comparingLong(i -> ruleKeys[i]));
+
+		this.rules = new Object[sorted.length];
+		long[] distinct = new long[sorted.length];
+		int[] offsets = new int[sorted.length + 1];
+		int n = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			long k = ruleKeys[order[i]];
+			this.rules[i] = sorted[order[i]];
+			if (n == 0 || distinct[n - 1] != k) {
+				distinct[n] = k;
+				offsets[n++] = i;
+			}
+		}
+		offsets[n] = sorted.length;
+		this.keys = Arrays.copyOf(distinct, n);
+		this.slices = new Slice[n];
+		for (int i = 0; i < n; i++) {
+			slices[i] = new Slice<>(this.rules, offsets[i], offsets[i + 1]);
+		}
+	}
+
+	/**
+	 * @return the rules with the given key, as a read-only set
+	 */
+	Set<R> lookup(long key) {
+		int i = Arrays.binarySearch(keys, key);
+		return i < 0 ? Collections.emptySet() : slices[i];
+	}
+
+	private static final class Slice<R> extends AbstractSet<R> {
+		private final Object[] rules;
+		private final int from;
+		private final int to;
+
+		Slice(Object[] rules, int from, int to) {
+			this.rules = rules;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public Iterator<R> iterator() {
+			return new Iterator<R>() {
+				private int i = from;
+
+				@Override
+				public boolean hasNext() {
+					return i < to;
+				}
+
+				@Override
+				public R next() {
+					if (i >= to)
+						throw new NoSuchElementException();
+					return (R) rules[i++];
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return to - from;
+		}
+	}
+}
@@ -0,0 +1,261 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.LongWeightStore;
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.WeightStore;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.rules.Rule;
+import de.breakpointsec.pushdown.weights.LongSemiring;
+import de.breakpointsec.pushdown.weights.Semiring;
+import de.breakpointsec.pushdown.worklist.Worklist;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Common part of the sequential {@link PostStar} and {@link PreStar} saturations: the worklist loop and the removal of rules.
+ *
+ * A rule is removed delete-and-rederive style. All transitions that were derived from the rule, directly or transitively, are deleted first, then the
+ * surviving transitions that may derive one of them again are put back on the worklist.
+ *
+ * @param <L> Control location
+ * @param <S> State
+ * @param <W> Semiring
+ */
+abstract class Saturation<L, S, W extends Semiring> {
+
+	protected final WPDS<L, S, W> pds;
+	protected final WeightedAutomaton<L, S, W> fa;
+	protected final Worklist<L, S> worklist;
+
+	/*
+	 * Set if the weights of the automaton are kept in a LongWeightStore and no weight cache is used. Rules then fire on plain values, without creating
+	 * weight objects.
+	 */
+	protected final LongWeightStore<L, S, ?> longWeights;
+	protected final LongSemiring longSemiring;
+	protected final long longOne;
+	private final long longZero;
+
+	/*
+	 * Weights of the transitions of the initial automaton, restored when they are over-deleted. Only kept for saturations that may retract rules.
+	 */
+	private Map<Transition<L, S>, W> initialWeights;
+
+	/*
+	 * While not null, conclusions are collected here instead of being added to the automaton.
+	 */
+	private List<Transition<L, S>> sink;
+
+	Saturation(WPDS<L, S, W> pds, WeightedAutomaton<L, S, W> fa, Worklist<L, S> worklist) {
+		this.pds = pds;
+		this.fa = fa;
+		this.worklist = worklist;
+		WeightStore<L, S, W> store = fa.getWeightStore();
+		if (store instanceof LongWeightStore && pds.getWeightCache() == null) {
+			this.longWeights = (LongWeightStore<L, S, ?>) store;
+			this.longSemiring = (LongSemiring) fa.getOne();
+			this.longOne = longSemiring.longValue();
+			this.longZero = ((LongSemiring) fa.getZero()).longValue();
+		} else {
+			this.longWeights = null;
+			this.longSemiring = null;
+			this.longOne = 0;
+			this.longZero = 0;
+		}
+	}
+
+	WeightedAutomaton<L, S, W> getAutomaton() {
+		return fa;
+	}
+
+	/**
+	 * Runs until the worklist is empty.
+	 */
+	void saturate() throws IllegalTransitionException {
+		while (step()) {
+		}
+	}
+
+	/**
+	 * Processes a single transition of the worklist.
+	 *
+	 * @return false if the worklist was empty
+	 */
+	boolean step() throws IllegalTransitionException {
+		if (worklist.isEmpty())
+			return false;
+		process(worklist.poll());
+		return true;
+	}
+
+	/**
+	 * Runs until the worklist is empty or a transition matching {@code target} has been processed. The saturation can be resumed afterwards.
+	 *
+	 * @param target
+	 * @return the matching transition, or null if saturation completed without taking one from the worklist
+	 */
+	Transition<L, S> saturateUntil(Predicate<? super Transition<L, S>> target) throws IllegalTransitionException {
+		while (!worklist.isEmpty()) {
+			Transition<L, S> t = worklist.poll();
+			process(t);
+			if (isTarget(t) && target.test(t))
+				return t;
+		}
+		return null;
+	}
+
+	/**
+	 * Whether {@link #saturateUntil(Predicate)} may stop at {@code t}.
+	 */
+	protected boolean isTarget(Transition<L, S> t) {
+		return true;
+	}
+
+	/**
+	 * Applies all rules to {@code t}.
+	 */
+	protected abstract void process(Transition<L, S> t) throws IllegalTransitionException;
+
+	/**
+	 * Applies a rule that was added after the saturation started to all transitions it can fire on.
+	 */
+	abstract void fire(Rule<L, S, W> rule) throws IllegalTransitionException;
+
+	/**
+	 * Emits every conclusion that has {@code t} as one of its premises. Defaults to {@link #process(Transition)}.
+	 */
+	protected void derive(Transition<L, S> t) throws IllegalTransitionException {
+		process(t);
+	}
+
+	/**
+	 * Puts the surviving transitions back on the worklist that may derive the deleted transition {@code t}.
+	 */
+	protected abstract void rederive(Transition<L, S> t) throws IllegalTransitionException;
+
+	/**
+	 * Starts to keep track of the initial automaton, which is required by {@link #retract(Rule)}. Call it before seeding.
+	 */
+	void trackInitialWeights() {
+		initialWeights = new HashMap<>();
+	}
+
+	/**
+	 * Adds the current weight of {@code t} to its initial weight, if initial weights are kept.
+	 */
+	protected void rememberInitialWeight(Transition<L, S> t) {
+		if (initialWeights != null)
+			rememberInitialWeight(t, fa.getCurrentWeight(t));
+	}
+
+	/**
+	 * Adds {@code weight} to the initial weight of {@code t}, if initial weights are kept.
+	 */
+	protected void rememberInitialWeight(Transition<L, S> t, W weight) {
+		if (initialWeights != null)
+			initialWeights.merge(t, (W) weight.snapshot(), (w1, w2) -> (W) w1.combineWith(w2));
+	}
+
+
+	/**
+	 * Removes the consequences of a rule that is no longer part of the WPDS. Expects a saturated automaton, the transitions to rederive are left on the
+	 * worklist.
+	 *
+	 * @param rule
+	 */
+	void retract(Rule<L, S, W> rule) throws IllegalTransitionException {
+		if (initialWeights == null)
+			throw new IllegalStateException("Initial weights are unknown");
+
+		// Over-delete: everything derived from the rule, and everything derived from that
+		Set<Transition<L, S>> deleted = new HashSet<>();
+		List<Transition<L, S>> found = new ArrayList<>();
+		sink = found;
+		try {
+			fire(rule);
+			for (int i = 0; i < found.size(); i++) {
+				Transition<L, S> t = found.get(i);
+				if (deleted.add(t))
+					derive(t);
+			}
+		} finally {
+			sink = null;
+		}
+
+		for (Transition<L, S> t : deleted) {
+			W initial = initialWeights.get(t);
+			if (initial == null) {
+				fa.removeTransition(t);
+			} else {
+				fa.setWeightForTransition(t, initial);
+				worklist.add(t);
+			}
+		}
+
+		// Rederive what is still supported
+		for (Transition<L, S> t : deleted) {
+			rederive(t);
+		}
+	}
+
+	/**
+	 * The weight of {@code t} as plain value, if {@link #longWeights} is set. Transitions without weight have weight zero.
+	 */
+	protected long longWeight(Transition<L, S> t) {
+		return longWeights.getLong(t, longZero);
+	}
+
+	protected static long longValue(Semiring weight) {
+		return ((LongSemiring) weight).longValue();
+	}
+
+	/**
+	 * Combines the plain weight {@code w} into {@code t} and puts {@code t} on the worklist if its weight changed. Used instead of
+	 * {@link WPDS#updatePostStar} and {@link WPDS#updatePrestar} if {@link #longWeights} is set.
+	 *
+	 * @return whether the weight changed, true if {@code t} was collected
+	 */
+	protected boolean updateLong(Transition<L, S> t, long w) throws IllegalTransitionException {
+		if (collect(t))
+			return true;
+		if (!fa.accumulateWeight(t, w, longSemiring))
+			return false;
+		worklist.add(t);
+		return true;
+	}
+
+	/**
+	 * Adds a conclusion to the sink while over-deleting.
+	 *
+	 * @return false if {@code t} should be added to the automaton
+	 */
+	protected boolean collect(Transition<L, S> t) {
+		if (sink == null)
+			return false;
+		sink.add(t);
+		return true;
+	}
+}
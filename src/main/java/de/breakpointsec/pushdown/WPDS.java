@@ -18,10 +18,13 @@ package de.breakpointsec.pushdown;
  */
 
 import com.google.common.base.Joiner;
+import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.google.common.collect.Table;
+import de.breakpointsec.pushdown.concurrent.ParallelPostStar;
+import de.breakpointsec.pushdown.concurrent.ParallelPreStar;
 import de.breakpointsec.pushdown.fsm.Transition;
 import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
 import de.breakpointsec.pushdown.rules.NormalRule;
@@ -29,9 +32,19 @@ import de.breakpointsec.pushdown.rules.PopRule;
 import de.breakpointsec.pushdown.rules.PushRule;
 import de.breakpointsec.pushdown.rules.Rule;
 import de.breakpointsec.pushdown.weights.Semiring;
+import de.breakpointsec.pushdown.weights.WeightCache;
+import de.breakpointsec.pushdown.worklist.FifoWorklist;
+import de.breakpointsec.pushdown.worklist.Worklist;
+import de.breakpointsec.pushdown.worklist.WorklistStrategy;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
 
 /**
  * Implementation of a Weighted Pushdown System.
@@ -50,77 +63,333 @@ public abstract class WPDS<L, S, W extends Semiring> {
 	protected final Set<NormalRule<L, S, W>> normalRules = Sets.newHashSet();
 	private final Multimap<S, Transition<L, S>> transitionsInto = HashMultimap.create();
 
+	/*
+	 * Rules indexed by their left-hand side <S1, L1>, so saturation only visits the rules that can fire on a transition.
+	 */
+	private final Table<S, L, RuleBucket<PushRule<L, S, W>>> pushRulesStarting = HashBasedTable.create();
+	private final Table<S, L, RuleBucket<PopRule<L, S, W>>> popRulesStarting = HashBasedTable.create();
+	private final Table<S, L, RuleBucket<NormalRule<L, S, W>>> normalRulesStarting = HashBasedTable.create();
+
+	/*
+	 * Rules indexed by their right-hand side <S2, L2> (and push rules additionally by L2 alone and by their call site) for pre*.
+	 */
+	private final Table<S, L, RuleBucket<PushRule<L, S, W>>> pushRulesEnding = HashBasedTable.create();
+	private final Table<S, L, RuleBucket<NormalRule<L, S, W>>> normalRulesEnding = HashBasedTable.create();
+	private final Map<L, RuleBucket<PushRule<L, S, W>>> pushRulesEndingWithLabel = new HashMap<>();
+	private final Map<L, RuleBucket<PushRule<L, S, W>>> pushRulesByCallSite = new HashMap<>();
+
+	/*
+	 * Saturations hold the read lock, so any number of them can share the rule indexes while addRule waits for them to finish.
+	 */
+	private final ReentrantReadWriteLock rulesLock = new ReentrantReadWriteLock();
+
+	/*
+	 * Automata saturated by poststarIncremental and prestarIncremental, resumed whenever a rule is added.
+	 */
+	private final Map<WeightedAutomaton<L, S, W>, PostStar<L, S, W>> incrementalPostStars = new IdentityHashMap<>();
+	private final Map<WeightedAutomaton<L, S, W>, PreStar<L, S, W>> incrementalPreStars = new IdentityHashMap<>();
+
+	/*
+	 * Rules created on demand, in addition to the ones added by addRule.
+	 */
+	private final RuleProvider<L, S, W> ruleProvider;
+
+	private volatile WeightCache<W> weightCache;
+
+	public WPDS() {
+		this(null);
+	}
+
+	/**
+	 * Creates a WPDS that pulls its rules from {@code ruleProvider} during saturation, see {@link RuleProvider#cached()} to ask the provider only once per
+	 * lookup. Rules can still be added and removed, the provided rules are not affected by {@link #removeRule(Rule)}. {@link #getNormalRules()},
+	 * {@link #getPopRules()} and {@link #getPushRules()} include the rules the provider enumerates, {@link #getAllRules()} only contains the added rules.
+	 *
+	 * @param ruleProvider
+	 */
+	public WPDS(RuleProvider<L, S, W> ruleProvider) {
+		this.ruleProvider = ruleProvider;
+	}
+
+	/**
+	 * Routes the extend and combine operations of the sequential saturations through {@code cache}, or computes them directly if it is null. With a cache,
+	 * weights are compared by reference to detect changes and stored as returned by the cache, so no accumulators ({@link Semiring#accumulator()}) are
+	 * created. Accumulators an automaton already holds are replaced by their combined value the next time the transition is updated. Set it before
+	 * saturating.
+	 *
+	 * @param cache
+	 */
+	public void setWeightCache(WeightCache<W> cache) {
+		this.weightCache = cache;
+	}
+
+	public WeightCache<W> getWeightCache() {
+		return weightCache;
+	}
+
 	public boolean addRule(Rule<L, S, W> rule) {
-		return addRuleInternal(rule);
+		Lock lock = rulesLock.writeLock();
+		lock.lock();
+		try {
+			if (!addRuleInternal(rule))
+				return false;
+			if (!incrementalPostStars.isEmpty() || !incrementalPreStars.isEmpty())
+				resumeIncremental(Collections.singletonList(rule));
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Adds many rules at once. The lock is taken once for all of them, and incremental saturations are resumed once after all rules were added.
+	 *
+	 * @param rules
+	 * @return the number of rules that were new
+	 */
+	public int addRules(Collection<? extends Rule<L, S, W>> rules) {
+		Lock lock = rulesLock.writeLock();
+		lock.lock();
+		try {
+			List<Rule<L, S, W>> added = new ArrayList<>(rules.size());
+			for (Rule<L, S, W> rule : rules) {
+				if (addRuleInternal(rule))
+					added.add(rule);
+			}
+			if (!added.isEmpty() && (!incrementalPostStars.isEmpty() || !incrementalPreStars.isEmpty()))
+				resumeIncremental(added);
+			return added.size();
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	private boolean addRuleInternal(Rule<L, S, W> rule) {
-		if (rule instanceof PushRule)
-			return pushRules.add((PushRule) rule);
-		else if (rule instanceof PopRule)
-			return popRules.add((PopRule) rule);
-		else if (rule instanceof NormalRule)
-			return normalRules.add((NormalRule) rule);
+		if (rule instanceof PushRule) {
+			PushRule<L, S, W> pushRule = (PushRule<L, S, W>) rule;
+			if (!pushRules.add(pushRule))
+				return false;
+			index(pushRulesStarting, pushRule.getS1(), pushRule.getL1(), pushRule);
+			index(pushRulesEnding, pushRule.getS2(), pushRule.getL2(), pushRule);
+			pushRulesEndingWithLabel.computeIfAbsent(pushRule.getL2(), l -> new RuleBucket<>()).addRule(pushRule);
+			pushRulesByCallSite.computeIfAbsent(pushRule.getCallSite(), l -> new RuleBucket<>()).addRule(pushRule);
+			return true;
+		} else if (rule instanceof PopRule) {
+			PopRule<L, S, W> popRule = (PopRule<L, S, W>) rule;
+			if (!popRules.add(popRule))
+				return false;
+			index(popRulesStarting, popRule.getS1(), popRule.getL1(), popRule);
+			return true;
+		} else if (rule instanceof NormalRule) {
+			NormalRule<L, S, W> normalRule = (NormalRule<L, S, W>) rule;
+			if (!normalRules.add(normalRule))
+				return false;
+			index(normalRulesStarting, normalRule.getS1(), normalRule.getL1(), normalRule);
+			index(normalRulesEnding, normalRule.getS2(), normalRule.getL2(), normalRule);
+			return true;
+		}
 		throw new RuntimeException("Try to add a rule of wrong type");
 	}
 
+	/**
+	 * Removes a rule. Automata attached by {@link #poststarIncremental(WeightedAutomaton)} or {@link #prestarIncremental(WeightedAutomaton)} lose all
+	 * transitions that were derived from the rule and keep those that can still be derived without it.
+	 *
+	 * @param rule
+	 * @return false if the rule was not part of this WPDS
+	 */
+	public boolean removeRule(Rule<L, S, W> rule) {
+		Lock lock = rulesLock.writeLock();
+		lock.lock();
+		try {
+			if (!removeRuleInternal(rule))
+				return false;
+			if (!incrementalPostStars.isEmpty() || !incrementalPreStars.isEmpty())
+				retractIncremental(rule);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean removeRuleInternal(Rule<L, S, W> rule) {
+		if (rule instanceof PushRule) {
+			PushRule<L, S, W> pushRule = (PushRule<L, S, W>) rule;
+			if (!pushRules.remove(pushRule))
+				return false;
+			unindex(pushRulesStarting, pushRule.getS1(), pushRule.getL1(), pushRule);
+			unindex(pushRulesEnding, pushRule.getS2(), pushRule.getL2(), pushRule);
+			pushRulesEndingWithLabel.get(pushRule.getL2()).removeRule(pushRule);
+			pushRulesByCallSite.get(pushRule.getCallSite()).removeRule(pushRule);
+			return true;
+		} else if (rule instanceof PopRule) {
+			PopRule<L, S, W> popRule = (PopRule<L, S, W>) rule;
+			if (!popRules.remove(popRule))
+				return false;
+			unindex(popRulesStarting, popRule.getS1(), popRule.getL1(), popRule);
+			return true;
+		} else if (rule instanceof NormalRule) {
+			NormalRule<L, S, W> normalRule = (NormalRule<L, S, W>) rule;
+			if (!normalRules.remove(normalRule))
+				return false;
+			unindex(normalRulesStarting, normalRule.getS1(), normalRule.getL1(), normalRule);
+			unindex(normalRulesEnding, normalRule.getS2(), normalRule.getL2(), normalRule);
+			return true;
+		}
+		throw new RuntimeException("Try to remove a rule of wrong type");
+	}
+
+	/**
+	 * Freezes the added rules into a {@link CompiledWPDS}, an immutable copy with array-based rule indexes that saturations can share. The copy uses the
+	 * same weight cache. Later changes to the rules of this WPDS do not affect the copy.
+	 */
+	public CompiledWPDS<L, S, W> compile() {
+		Lock lock = rulesLock.readLock();
+		lock.lock();
+		try {
+			return new CompiledWPDS<>(this);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static <A, B, R> void unindex(Table<A, B, RuleBucket<R>> index, A a, B b, R rule) {
+		RuleBucket<R> bucket = index.get(a, b);
+		bucket.removeRule(rule);
+		if (bucket.isEmpty())
+			index.remove(a, b);
+	}
+
+	private static <A, B, R> void index(Table<A, B, RuleBucket<R>> index, A a, B b, R rule) {
+		RuleBucket<R> bucket = index.get(a, b);
+		if (bucket == null) {
+			bucket = new RuleBucket<>();
+			index.put(a, b, bucket);
+		}
+		bucket.addRule(rule);
+	}
+
+	private static <A, B, R> Set<R> lookup(Table<A, B, RuleBucket<R>> index, A a, B b) {
+		RuleBucket<R> bucket = index.get(a, b);
+		return bucket == null ? Collections.emptySet() : bucket;
+	}
+
+	private static <R> Set<R> union(Set<R> added, Set<R> provided) {
+		if (provided.isEmpty())
+			return added;
+		return added.isEmpty() ? provided : Sets.union(added, provided);
+	}
+
+	/**
+	 * Returns all normal rules, including the ones of the rule provider.
+	 */
 	public Set<NormalRule<L, S, W>> getNormalRules() {
-		return normalRules;
+		if (ruleProvider == null)
+			return normalRules;
+		return union(normalRules, ruleProvider.getNormalRules());
 	}
 
+	/**
+	 * Returns all pop rules, including the ones of the rule provider.
+	 */
 	public Set<PopRule<L, S, W>> getPopRules() {
-		return popRules;
+		if (ruleProvider == null)
+			return popRules;
+		return union(popRules, ruleProvider.getPopRules());
 	}
 
+	/**
+	 * Returns all push rules, including the ones of the rule provider.
+	 */
 	public Set<PushRule<L, S, W>> getPushRules() {
-		return pushRules;
+		if (ruleProvider == null)
+			return pushRules;
+		return union(pushRules, ruleProvider.getPushRules());
 	}
 
+	/**
+	 * Returns a copy of all added rules, without the ones of the rule provider. The copy is taken under the read lock of the rules, so it is consistent
+	 * while other threads add or remove rules.
+	 */
 	public Set<Rule<L, S, W>> getAllRules() {
-		Set<Rule<L, S, W>> rules = Sets.newHashSet();
-		rules.addAll(normalRules);
-		rules.addAll(popRules);
-		rules.addAll(pushRules);
-		return rules;
+		Lock lock = rulesLock.readLock();
+		lock.lock();
+		try {
+			Set<Rule<L, S, W>> rules = Sets.newHashSetWithExpectedSize(normalRules.size() + popRules.size() + pushRules.size());
+			rules.addAll(normalRules);
+			rules.addAll(popRules);
+			rules.addAll(pushRules);
+			return rules;
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	@Deprecated
 	public Set<Rule<L, S, W>> getRulesStarting(S start, L string) {
 		Set<Rule<L, S, W>> result = new HashSet<>();
-		getRulesStartingWithinSet(start, string, popRules, result);
-		getRulesStartingWithinSet(start, string, normalRules, result);
-		getRulesStartingWithinSet(start, string, pushRules, result);
+		result.addAll(getPopRulesStarting(start, string));
+		result.addAll(getNormalRulesStarting(start, string));
+		result.addAll(getPushRulesStarting(start, string));
 		return result;
 	}
 
-	@Deprecated
-	private void getRulesStartingWithinSet(S start, L string, Set<? extends Rule<L, S, W>> rules,
-			Set<Rule<L, S, W>> res) {
-		for (Rule<L, S, W> r : rules) {
-			if (r.getS1().equals(start) && r.getL1().equals(string)) {
-				res.add(r);
-			}
-		}
+	/**
+	 * Returns all pop rules with left-hand side {@code <start, string>}. The returned set is a read-only view of the rule index and the rule provider.
+	 */
+	public Set<PopRule<L, S, W>> getPopRulesStarting(S start, L string) {
+		Set<PopRule<L, S, W>> rules = lookup(popRulesStarting, start, string);
+		return ruleProvider == null ? rules : union(rules, ruleProvider.getPopRulesStarting(start, string));
+	}
+
+	/**
+	 * Returns all normal rules with left-hand side {@code <start, string>}. The returned set is a read-only view of the rule index and the rule provider.
+	 */
+	public Set<NormalRule<L, S, W>> getNormalRulesStarting(S start, L string) {
+		Set<NormalRule<L, S, W>> rules = lookup(normalRulesStarting, start, string);
+		return ruleProvider == null ? rules : union(rules, ruleProvider.getNormalRulesStarting(start, string));
+	}
+
+	/**
+	 * Returns all push rules with left-hand side {@code <start, string>}. The returned set is a read-only view of the rule index and the rule provider.
+	 */
+	public Set<PushRule<L, S, W>> getPushRulesStarting(S start, L string) {
+		Set<PushRule<L, S, W>> rules = lookup(pushRulesStarting, start, string);
+		return ruleProvider == null ? rules : union(rules, ruleProvider.getPushRulesStarting(start, string));
 	}
 
+	/**
+	 * Returns all normal rules with right-hand side {@code <start, string>}. The returned set is a read-only view of the rule index and the rule provider.
+	 */
 	public Set<NormalRule<L, S, W>> getNormalRulesEnding(S start, L string) {
-		Set<NormalRule<L, S, W>> allRules = getNormalRules();
-		Set<NormalRule<L, S, W>> result = new HashSet<>();
-		for (NormalRule<L, S, W> r : allRules) {
-			if (r.getS2().equals(start) && r.getL2().equals(string))
-				result.add(r);
-		}
-		return result;
+		Set<NormalRule<L, S, W>> rules = lookup(normalRulesEnding, start, string);
+		return ruleProvider == null ? rules : union(rules, ruleProvider.getNormalRulesEnding(start, string));
 	}
 
+	/**
+	 * Returns all push rules with right-hand side {@code <start, string callSite>}. The returned set is a read-only view of the rule index and the rule provider.
+	 */
 	public Set<PushRule<L, S, W>> getPushRulesEnding(S start, L string) {
-		Set<PushRule<L, S, W>> allRules = getPushRules();
-		Set<PushRule<L, S, W>> result = new HashSet<>();
-		for (PushRule<L, S, W> r : allRules) {
-			if (r.getS2().equals(start) && r.getL2().equals(string))
-				result.add(r);
-		}
-		return result;
+		Set<PushRule<L, S, W>> rules = lookup(pushRulesEnding, start, string);
+		return ruleProvider == null ? rules : union(rules, ruleProvider.getPushRulesEnding(start, string));
+	}
+
+	/**
+	 * Returns all push rules with {@code string} as L2, regardless of their target state. The returned set is a read-only view of the rule index, rules
+	 * of the rule provider are not included.
+	 */
+	public Set<PushRule<L, S, W>> getPushRulesEnding(L string) {
+		RuleBucket<PushRule<L, S, W>> bucket = pushRulesEndingWithLabel.get(string);
+		return bucket == null ? Collections.emptySet() : bucket;
+	}
+
+	/**
+	 * Returns all push rules with the given call site, regardless of their target state. The returned set is a read-only view of the rule index and the rule provider.
+	 */
+	public Set<PushRule<L, S, W>> getPushRulesWithCallSite(L callSite) {
+		RuleBucket<PushRule<L, S, W>> bucket = pushRulesByCallSite.get(callSite);
+		Set<PushRule<L, S, W>> rules = bucket == null ? Collections.emptySet() : bucket;
+		return ruleProvider == null ? rules : union(rules, ruleProvider.getPushRulesWithCallSite(callSite));
 	}
 
 	@Deprecated
@@ -133,16 +402,36 @@ public abstract class WPDS<L, S, W extends Semiring> {
 		return states;
 	}
 
-	protected boolean updatePostStar(Transition<L, S> t, W w, Rule rule, final WeightedAutomaton<L, S, W> fa, final LinkedList<Transition<L, S>> worklist)
+	/**
+	 * {@code a} extended with {@code b}, taken from the weight cache if one is set. Accumulators are snapshot before they reach the cache, whose memo is
+	 * keyed by identity.
+	 */
+	W extend(W a, W b) {
+		WeightCache<W> cache = weightCache;
+		return cache == null ? (W) a.extendWith(b) : cache.extend((W) a.snapshot(), (W) b.snapshot());
+	}
+
+	/**
+	 * The combination of {@code a} and {@code b}, taken from the weight cache if one is set. Accumulators are snapshot before they reach the cache.
+	 */
+	W combine(W a, W b) {
+		WeightCache<W> cache = weightCache;
+		return cache == null ? (W) a.combineWith(b) : cache.combine((W) a.snapshot(), (W) b.snapshot());
+	}
+
+	private boolean updateCached(Transition<L, S> t, W w, WeightedAutomaton<L, S, W> fa) throws IllegalTransitionException {
+		W oldWeight = fa.getOrInsertWeight(t);
+		W newWeight = (oldWeight == null) ? w : combine(oldWeight, w);
+		if (newWeight == oldWeight)
+			return false;
+		fa.setWeightForTransition(t, newWeight);
+		return true;
+	}
+
+	protected boolean updatePostStar(Transition<L, S> t, W w, Rule rule, final WeightedAutomaton<L, S, W> fa, final Worklist<L, S> worklist)
 			throws IllegalTransitionException {
-		if (!fa.getTransitions().contains(t)) {
-			fa.addTransition(t, null);
-		}
-		W oldWeight = fa.getWeightFor(t);
-		W newWeight = (oldWeight == null) ? w : (W) oldWeight.combineWith(w);
-		boolean changed = !newWeight.equals(oldWeight);
+		boolean changed = weightCache == null ? fa.accumulateWeight(t, w) : updateCached(t, w, fa);
 		if (changed) {
-			fa.setWeightForTransition(t, newWeight);
 			worklist.add(t);
 		}
 		return changed;
@@ -155,80 +444,314 @@ public abstract class WPDS<L, S, W extends Semiring> {
 	 * @param fa initial P-automaton
 	 */
 	public void poststar(WeightedAutomaton<L, S, W> fa) throws IllegalTransitionException {
-		// Phase 1: For each pair <p', γ'> such that pds contains at least one rule of the form <p', γ'γ''> (i.e., a push rule), add a new state p'_γ''.
-		Map<PushRule<L, S, W>, S> generatedStates = new HashMap<>();
-		for (PushRule<L, S, W> rule : getPushRules()) {
-			final S p = rule.getS2();
-			final L gammaPrime = rule.getL2();
-			final S irState = fa.createState(p, gammaPrime);
-			final L transitionLabel = rule.getCallSite();
-			generatedStates.put(rule, irState);
+		poststar(fa, new FifoWorklist<>());
+	}
+
+	/**
+	 * post* processing transitions in the order chosen by {@code strategy}.
+	 *
+	 * @param fa initial P-automaton
+	 * @param strategy
+	 */
+	public void poststar(WeightedAutomaton<L, S, W> fa, WorklistStrategy<L, S, W> strategy) throws IllegalTransitionException {
+		poststar(fa, strategy.createWorklist(this, fa));
+	}
+
+	/**
+	 * post* using the given (empty) worklist, which can be inspected afterwards for its enqueue and dequeue counts.
+	 *
+	 * @param fa initial P-automaton
+	 * @param worklist
+	 */
+	public void poststar(WeightedAutomaton<L, S, W> fa, Worklist<L, S> worklist) throws IllegalTransitionException {
+		Lock lock = rulesLock.readLock();
+		lock.lock();
+		try {
+			checkDetached(fa);
+			saturatePostStar(fa, worklist);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Goal-directed post* that stops once the weight of a target transition is final. Transitions are processed in ascending order of their weight
+	 * according to {@code order}, like in Dijkstra's algorithm. If the semiring is idempotent, {@code order} agrees with combine (the combination of two
+	 * weights is the smaller one) and extending a weight never makes it smaller, the first target transition taken from the worklist has its final weight,
+	 * which is the smallest of all target transitions. Transitions into states generated for push rules are never targets, their weights are relative to
+	 * the call site.
+	 *
+	 * @param fa initial P-automaton, partially saturated afterwards
+	 * @param target
+	 * @param order
+	 * @return the target transition with the smallest weight, or null if no target is reachable, in which case {@code fa} is fully saturated
+	 */
+	public Transition<L, S> poststarUntil(WeightedAutomaton<L, S, W> fa, Predicate<? super Transition<L, S>> target, Comparator<? super W> order)
+			throws IllegalTransitionException {
+		Lock lock = rulesLock.readLock();
+		lock.lock();
+		try {
+			checkDetached(fa);
+			PostStar<L, S, W> postStar = new PostStar<>(this, fa, WorklistStrategy.<L, S, W> byWeight(order).createWorklist(this, fa));
+			postStar.seed();
+			return postStar.saturateUntil(target);
+		} finally {
+			lock.unlock();
 		}
+	}
 
-		// Phase 2 (saturation)
-		LinkedList<Transition<L, S>> worklist = Lists.newLinkedList(fa.getTransitions());
-		while (!worklist.isEmpty()) {
-			Transition<L, S> t = worklist.pop();
+	/**
+	 * Goal-directed post* for the configurations with control state {@code state} and top of stack {@code location}, see
+	 * {@link #poststarUntil(WeightedAutomaton, Predicate, Comparator)}.
+	 *
+	 * @param fa initial P-automaton, partially saturated afterwards
+	 * @param state
+	 * @param location
+	 * @param order
+	 * @return the transition state~location~>q with the smallest weight, or null if the configurations are not reachable
+	 */
+	public Transition<L, S> poststarUntil(WeightedAutomaton<L, S, W> fa, S state, L location, Comparator<? super W> order) throws IllegalTransitionException {
+		return poststarUntil(fa, t -> t.getStart().equals(state) && t.getLabel().equals(location), order);
+	}
 
-			//Transitive pops
-			if (t.getLabel().equals(epsilon())) {
+	/**
+	 * Decides whether a configuration accepted by {@code target} is reachable from a configuration accepted by {@code source}. post* on {@code source}
+	 * and pre* on {@code target} advance in turns, and the query stops as soon as both automata accept a common configuration. Both automata are left
+	 * partially saturated.
+	 *
+	 * The control states of {@code source} must not have incoming transitions.
+	 *
+	 * @param source initial P-automaton for post*
+	 * @param target initial P-automaton for pre*
+	 * @return whether a configuration of {@code target} is reachable
+	 */
+	public boolean isReachable(WeightedAutomaton<L, S, W> source, WeightedAutomaton<L, S, W> target) throws IllegalTransitionException {
+		Lock lock = rulesLock.readLock();
+		lock.lock();
+		try {
+			checkDetached(source);
+			checkDetached(target);
+			return new BidirectionalQuery<>(this, source, target).meet();
+		} finally {
+			lock.unlock();
+		}
+	}
 
-				for (Transition<L, S> transPrime : fa.getTransitionsOutOf(t.getTarget())) {
-					Transition<L, S> newTrans = new Transition<>(t.getStart(), transPrime.getLabel(), transPrime.getTarget());
-					W newWeight = (W) fa.getWeightFor(transPrime).extendWith(fa.getWeightFor(t));
-					updatePostStar(newTrans, newWeight, null, fa, worklist);
-				}
+	/**
+	 * The weight of reaching the configurations accepted by {@code target} from the ones accepted by {@code source}. post* on {@code source} and pre* on
+	 * {@code target} advance in turns until one of them is complete, the other one is left partially saturated. For idempotent semirings the result is
+	 * the combined weight of the target configurations in the post* of {@code source}.
+	 *
+	 * The control states of {@code source} must not have incoming transitions.
+	 *
+	 * @param source initial P-automaton for post*
+	 * @param target initial P-automaton for pre*
+	 * @return the weight, or null if no configuration of {@code target} is reachable
+	 */
+	public W reachable(WeightedAutomaton<L, S, W> source, WeightedAutomaton<L, S, W> target) throws IllegalTransitionException {
+		Lock lock = rulesLock.readLock();
+		lock.lock();
+		try {
+			checkDetached(source);
+			checkDetached(target);
+			return new BidirectionalQuery<>(this, source, target).weight();
+		} finally {
+			lock.unlock();
+		}
+	}
 
-			} else {
+	private void saturatePostStar(WeightedAutomaton<L, S, W> fa, Worklist<L, S> worklist) throws IllegalTransitionException {
+		PostStar<L, S, W> postStar = new PostStar<>(this, fa, worklist);
+		postStar.seed();
+		postStar.saturate();
+	}
 
-				// Pop rules
-				for (PopRule<L, S, W> rule : getPopRules()) {
-					if (rule.getS1().equals(t.getStart()) && rule.getL1().equals(t.getLabel())) {
-						Transition<L, S> newTrans = new Transition<L, S>(rule.getS2(), epsilon(), t.getTarget());
-						W newWeight = (W) fa.getWeightFor(t).extendWith(rule.getWeight());
-						updatePostStar(newTrans, newWeight, rule, fa, worklist);
-					}
-				}
+	/**
+	 * post* that keeps {@code fa} attached to this WPDS afterwards: each rule added by {@link #addRule(Rule)} is fired on the transitions it applies to and
+	 * saturation resumes from the current fixpoint, so {@code fa} stays the post* of its initial automaton. The same holds for rules removed by
+	 * {@link #removeRule(Rule)}. Calling it again for an attached automaton only resumes its saturation, other saturations of {@code fa} are rejected until
+	 * it is detached. If resuming fails for some attached automata, all of them still see the rule change, the failed ones are detached and reported
+	 * together in one RuntimeException.
+	 *
+	 * @param fa initial P-automaton
+	 */
+	public void poststarIncremental(WeightedAutomaton<L, S, W> fa) throws IllegalTransitionException {
+		Lock lock = rulesLock.writeLock();
+		lock.lock();
+		try {
+			PostStar<L, S, W> postStar = incrementalPostStars.get(fa);
+			if (postStar == null) {
+				checkDetached(fa);
+				postStar = new PostStar<>(this, fa, new FifoWorklist<>());
+				postStar.trackInitialWeights();
+				postStar.seed();
+				incrementalPostStars.put(fa, postStar);
+			}
+			try {
+				postStar.saturate();
+			} catch (IllegalTransitionException e) {
+				incrementalPostStars.remove(fa);
+				throw e;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
 
-				// Normal rules
-				for (NormalRule<L, S, W> rule : getNormalRules()) {
-					if (rule.getS1().equals(t.getStart()) && rule.getL1().equals(t.getLabel())) {
-						Transition<L, S> newTrans = new Transition<L, S>(rule.getS2(), rule.getL2(), t.getTarget());
-						W newWeight = (W) fa.getWeightFor(t).extendWith(rule.getWeight());
-						updatePostStar(newTrans, newWeight, rule, fa, worklist);
-					}
-				}
+	/**
+	 * Stops updating an automaton passed to {@link #poststarIncremental(WeightedAutomaton)} or {@link #prestarIncremental(WeightedAutomaton)}.
+	 *
+	 * @param fa
+	 * @return false if {@code fa} was not attached
+	 */
+	public boolean detach(WeightedAutomaton<L, S, W> fa) {
+		Lock lock = rulesLock.writeLock();
+		lock.lock();
+		try {
+			PreStar<L, S, W> preStar = incrementalPreStars.remove(fa);
+			if (preStar != null)
+				fa.removeTransitionListener(preStar);
+			return incrementalPostStars.remove(fa) != null | preStar != null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Rejects saturations of an automaton that is kept up to date by {@link #poststarIncremental(WeightedAutomaton)} or
+	 * {@link #prestarIncremental(WeightedAutomaton)}. They would mix their conclusions into its initial automaton, and transitions added by pre* would try
+	 * to resume the incremental saturation while the rules lock is held. Call it with the rules lock held.
+	 */
+	private void checkDetached(WeightedAutomaton<L, S, W> fa) {
+		if (incrementalPostStars.containsKey(fa) || incrementalPreStars.containsKey(fa))
+			throw new IllegalStateException("Automaton is attached to an incremental saturation, detach it first");
+	}
 
-				// Push rules
-				for (PushRule<L, S, W> rule : getPushRules()) {
-					if (rule.getS1().equals(t.getStart()) && rule.getL1().equals(t.getLabel())) {
-
-						S irState = generatedStates.get(rule);
-						if (irState == null) {
-							System.out.println("UNEXPECTED: No generated state found for rule " + rule.toString());
-						}
-						Transition<L, S> newTrans = new Transition<L, S>(rule.getS2(), rule.getL2(), irState);
-						updatePostStar(newTrans, fa.getOne(), rule, fa, worklist);
-
-						Transition<L, S> newTrans2 = new Transition<L, S>(irState, rule.getCallSite(), t.getTarget());
-						W newWeight2 = (W) fa.getWeightFor(t).extendWith(rule.getWeight());
-						boolean changed = updatePostStar(newTrans2, newWeight2, rule, fa, worklist);
-						if (changed) {
-							Set<Transition<L, S>> tPrimes = fa.getTransitionsInto(irState)
-									.stream()
-									.filter(trans -> trans.getLabel().equals(fa.epsilon()) && trans.getTarget().equals(irState))
-									.collect(Collectors.toSet());
-							for (Transition<L, S> tPrime : tPrimes) {
-								updatePostStar(new Transition<L, S>(tPrime.getStart(), rule.getCallSite(), t.getTarget()),
-									(W) newWeight2.extendWith(fa.getWeightFor(tPrime)), rule, fa, worklist);
-							}
-						}
-
-					}
+	private void resumeIncremental(List<Rule<L, S, W>> rules) {
+		List<Saturation<L, S, W>> failed = new ArrayList<>();
+		List<IllegalTransitionException> causes = new ArrayList<>();
+		for (Saturation<L, S, W> saturation : incrementalSaturations()) {
+			try {
+				for (Rule<L, S, W> rule : rules) {
+					saturation.fire(rule);
 				}
+				saturation.saturate();
+			} catch (IllegalTransitionException e) {
+				failed.add(saturation);
+				causes.add(e);
 			}
 		}
+		detachFailed(failed, causes, "adding " + (rules.size() == 1 ? rules.get(0) : rules.size() + " rules"));
+	}
 
+	private void retractIncremental(Rule<L, S, W> rule) {
+		List<Saturation<L, S, W>> failed = new ArrayList<>();
+		List<IllegalTransitionException> causes = new ArrayList<>();
+		for (Saturation<L, S, W> saturation : incrementalSaturations()) {
+			try {
+				saturation.retract(rule);
+				saturation.saturate();
+			} catch (IllegalTransitionException e) {
+				failed.add(saturation);
+				causes.add(e);
+			}
+		}
+		detachFailed(failed, causes, "removing " + rule);
+	}
+
+	/**
+	 * Detaches the automata of the failed incremental saturations once all saturations have seen the rule change, and reports them in one exception. The
+	 * first failure is its cause, the others are suppressed exceptions.
+	 */
+	private void detachFailed(List<Saturation<L, S, W>> failed, List<IllegalTransitionException> causes, String change) {
+		if (failed.isEmpty())
+			return;
+		List<S> initialStates = new ArrayList<>(failed.size());
+		for (Saturation<L, S, W> saturation : failed) {
+			detach(saturation.getAutomaton());
+			initialStates.add(saturation.getAutomaton().getInitialState());
+		}
+		RuntimeException e = new RuntimeException(
+				"Incremental saturation failed after " + change + ", detached the automata with initial states " + initialStates, causes.get(0));
+		for (IllegalTransitionException cause : causes.subList(1, causes.size())) {
+			e.addSuppressed(cause);
+		}
+		throw e;
+	}
+
+	private List<Saturation<L, S, W>> incrementalSaturations() {
+		List<Saturation<L, S, W>> saturations = new ArrayList<>(incrementalPostStars.values());
+		saturations.addAll(incrementalPreStars.values());
+		return saturations;
+	}
+
+	/**
+	 * Resumes an incremental pre* after transitions have been added to its automaton.
+	 */
+	void resumeIncremental(PreStar<L, S, W> preStar) {
+		// The read lock cannot be upgraded, waiting for the write lock would never return
+		if (rulesLock.getReadHoldCount() > 0)
+			throw new IllegalStateException("Transition added to an automaton attached to incremental pre* during a saturation of the same WPDS");
+		Lock lock = rulesLock.writeLock();
+		lock.lock();
+		try {
+			preStar.saturate();
+		} catch (IllegalTransitionException e) {
+			detach(preStar.getAutomaton());
+			throw new RuntimeException("Incremental pre* failed, automaton detached", e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Parallel post* on the common fork-join pool, see {@link #poststarParallel(WeightedAutomaton, ForkJoinPool)}.
+	 *
+	 * @param fa initial P-automaton
+	 */
+	public void poststarParallel(WeightedAutomaton<L, S, W> fa) throws IllegalTransitionException {
+		poststarParallel(fa, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * post* that processes transitions concurrently on {@code pool}. For idempotent semirings the saturated automaton equals the one computed by
+	 * {@link #poststar(WeightedAutomaton)}. Rules must not be added while it runs, and {@link #updatePostStar} is not called.
+	 *
+	 * @param fa initial P-automaton
+	 * @param pool
+	 */
+	public void poststarParallel(WeightedAutomaton<L, S, W> fa, ForkJoinPool pool) throws IllegalTransitionException {
+		Lock lock = rulesLock.readLock();
+		lock.lock();
+		try {
+			checkDetached(fa);
+			new ParallelPostStar<>(this, fa, pool).saturate();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Runs post* on each of the given automata as an independent query on {@code executor}. All queries share the rule indexes of this WPDS, rules added
+	 * meanwhile wait for the running queries to finish.
+	 *
+	 * @param automata initial P-automata, one per query
+	 * @param executor
+	 * @return one future per automaton, in iteration order of {@code automata}, completed with the saturated automaton as soon as its query is done
+	 */
+	public List<CompletableFuture<WeightedAutomaton<L, S, W>>> poststar(Collection<? extends WeightedAutomaton<L, S, W>> automata, Executor executor) {
+		List<CompletableFuture<WeightedAutomaton<L, S, W>>> results = new ArrayList<>(automata.size());
+		for (WeightedAutomaton<L, S, W> fa : automata) {
+			results.add(CompletableFuture.supplyAsync(() -> {
+				try {
+					poststar(fa);
+					return fa;
+				} catch (IllegalTransitionException e) {
+					throw new CompletionException(e);
+				}
+			}, executor));
+		}
+		return results;
 	}
 
 	/**
@@ -241,51 +764,127 @@ public abstract class WPDS<L, S, W extends Semiring> {
 	 * @return
 	 */
 	public WeightedAutomaton<L, S, W> prestar(WeightedAutomaton<L, S, W> fa) throws IllegalTransitionException {
-		LinkedList<Transition<L, S>> worklist = Lists.newLinkedList(fa.getTransitions());
-		for (Transition<L, S> trans : Sets.newHashSet(fa.getTransitions())) {
-			W one = fa.getOne();
-			fa.combineWeightForTransition(trans, one);
-		}
+		return prestar(fa, new FifoWorklist<>());
+	}
 
-		// Initialize with pop rules.
-		for (PopRule<L, S, W> r : this.getPopRules()) {
-			updatePrestar(worklist, new Transition<>(r.getS1(), r.getL1(), r.getS2()), r.getWeight(), fa);
+	/**
+	 * pre* processing transitions in the order chosen by {@code strategy}.
+	 *
+	 * @param fa initial P-automaton
+	 * @param strategy
+	 * @return
+	 */
+	public WeightedAutomaton<L, S, W> prestar(WeightedAutomaton<L, S, W> fa, WorklistStrategy<L, S, W> strategy) throws IllegalTransitionException {
+		return prestar(fa, strategy.createWorklist(this, fa));
+	}
+
+	/**
+	 * pre* using the given (empty) worklist, which can be inspected afterwards for its enqueue and dequeue counts.
+	 *
+	 * @param fa initial P-automaton
+	 * @param worklist
+	 * @return
+	 */
+	public WeightedAutomaton<L, S, W> prestar(WeightedAutomaton<L, S, W> fa, Worklist<L, S> worklist) throws IllegalTransitionException {
+		Lock lock = rulesLock.readLock();
+		lock.lock();
+		try {
+			checkDetached(fa);
+			return saturatePreStar(fa, worklist);
+		} finally {
+			lock.unlock();
 		}
+	}
 
-		while (!worklist.isEmpty()) {
-			Transition<L, S> t = worklist.pop();
+	private WeightedAutomaton<L, S, W> saturatePreStar(WeightedAutomaton<L, S, W> fa, Worklist<L, S> worklist) throws IllegalTransitionException {
+		PreStar<L, S, W> preStar = new PreStar<>(this, fa, worklist);
+		preStar.seed();
+		preStar.saturate();
+		return fa;
+	}
 
-			// Normal rules
-			Set<NormalRule<L, S, W>> nRules = this.getNormalRulesEnding(t.getStart(), t.getLabel());
-			for (NormalRule<L, S, W> r : nRules) {
-				updatePrestar(worklist, new Transition<L, S>(r.getS1(), r.getL1(), t.getTarget()), (W) r.getWeight().extendWith(fa.getWeightFor(t)), fa);
+	/**
+	 * pre* that keeps {@code fa} attached to this WPDS afterwards. Rules added by {@link #addRule(Rule)} or removed by {@link #removeRule(Rule)} and
+	 * transitions added to {@code fa} by {@link WeightedAutomaton#addTransition(Transition)} or
+	 * {@link WeightedAutomaton#combineWeightForTransition(Transition, Semiring)} are propagated from the current fixpoint, without starting over. Other
+	 * saturations of {@code fa} are rejected until it is detached.
+	 *
+	 * @param fa initial P-automaton
+	 * @return
+	 */
+	public WeightedAutomaton<L, S, W> prestarIncremental(WeightedAutomaton<L, S, W> fa) throws IllegalTransitionException {
+		Lock lock = rulesLock.writeLock();
+		lock.lock();
+		try {
+			PreStar<L, S, W> preStar = incrementalPreStars.get(fa);
+			if (preStar == null) {
+				checkDetached(fa);
+				preStar = new PreStar<>(this, fa, new FifoWorklist<>());
+				preStar.trackInitialWeights();
+				preStar.seed();
+				incrementalPreStars.put(fa, preStar);
+				fa.addTransitionListener(preStar);
 			}
-
-			// Push rules
-			for (PushRule<L, S, W> r : this.getPushRules()) {
-				if (r.getS2().equals(t.getStart()) && r.getL2().equals(t.getLabel())) {
-					for (Transition<L, S> tdash : Sets.newHashSet(fa.getTransitionsOutOf(t.getTarget()))) {
-						if (tdash.getLabel().equals(r.getCallSite())) {
-							updatePrestar(worklist, new Transition<L, S>(r.getS1(), r.getL1(), tdash.getTarget()),
-								(W) r.getWeight().extendWith(fa.getWeightFor(t)).extendWith(fa.getWeightFor(tdash)), fa);
-						}
-					}
-				}
+			try {
+				preStar.saturate();
+			} catch (IllegalTransitionException e) {
+				detach(fa);
+				throw e;
 			}
+			return fa;
+		} finally {
+			lock.unlock();
+		}
+	}
 
-			for (PushRule<L, S, W> r : this.getPushRules()) {
-				if (r.getL2().equals(t.getLabel())) {
-					for (Transition<L, S> tdash : Sets.newHashSet(fa.getTransitionsOutOf(r.getS2()))) {
-						if (tdash.getLabel().equals(r.getCallSite()) && tdash.getTarget().equals(t.getStart())) {
-							updatePrestar(worklist, new Transition<L, S>(r.getS1(), r.getL1(), t.getTarget()),
-								(W) r.getWeight().extendWith(fa.getWeightFor(tdash)).extendWith(fa.getWeightFor(t)), fa);
-						}
-					}
-				}
-			}
+	/**
+	 * Parallel pre* on the common fork-join pool, see {@link #prestarParallel(WeightedAutomaton, ForkJoinPool)}.
+	 *
+	 * @param fa initial P-automaton
+	 * @return
+	 */
+	public WeightedAutomaton<L, S, W> prestarParallel(WeightedAutomaton<L, S, W> fa) throws IllegalTransitionException {
+		return prestarParallel(fa, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * pre* that processes transitions concurrently on {@code pool}. For idempotent semirings the saturated automaton equals the one computed by
+	 * {@link #prestar(WeightedAutomaton)}. Rules must not be added while it runs, and {@link #updatePrestar} is not called.
+	 *
+	 * @param fa initial P-automaton
+	 * @param pool
+	 * @return
+	 */
+	public WeightedAutomaton<L, S, W> prestarParallel(WeightedAutomaton<L, S, W> fa, ForkJoinPool pool) throws IllegalTransitionException {
+		Lock lock = rulesLock.readLock();
+		lock.lock();
+		try {
+			checkDetached(fa);
+			return new ParallelPreStar<>(this, fa, pool).saturate();
+		} finally {
+			lock.unlock();
 		}
+	}
 
-		return fa;
+	/**
+	 * Runs pre* on each of the given automata as an independent query on {@code executor}, see {@link #poststar(Collection, Executor)}.
+	 *
+	 * @param automata initial P-automata, one per query
+	 * @param executor
+	 * @return one future per automaton, in iteration order of {@code automata}
+	 */
+	public List<CompletableFuture<WeightedAutomaton<L, S, W>>> prestar(Collection<? extends WeightedAutomaton<L, S, W>> automata, Executor executor) {
+		List<CompletableFuture<WeightedAutomaton<L, S, W>>> results = new ArrayList<>(automata.size());
+		for (WeightedAutomaton<L, S, W> fa : automata) {
+			results.add(CompletableFuture.supplyAsync(() -> {
+				try {
+					return prestar(fa);
+				} catch (IllegalTransitionException e) {
+					throw new CompletionException(e);
+				}
+			}, executor));
+		}
+		return results;
 	}
 
 	/**
@@ -296,15 +895,9 @@ public abstract class WPDS<L, S, W extends Semiring> {
 	 * @param w
 	 * @param fa
 	 */
-	protected void updatePrestar(LinkedList<Transition<L, S>> worklist, Transition<L, S> t, W w, WeightedAutomaton<L, S, W> fa) throws IllegalTransitionException {
-		if (!fa.getTransitions().contains(t)) {
-			fa.addTransition(t, null);
-		}
-		W oldWeight = fa.getWeightFor(t);
-		W newWeight = (oldWeight == null) ? w : (W) oldWeight.combineWith(w);
-		boolean changed = !newWeight.equals(oldWeight);
+	protected void updatePrestar(Worklist<L, S> worklist, Transition<L, S> t, W w, WeightedAutomaton<L, S, W> fa) throws IllegalTransitionException {
+		boolean changed = weightCache == null ? fa.accumulateWeight(t, w) : updateCached(t, w, fa);
 		if (changed) {
-			fa.setWeightForTransition(t, newWeight);
 			worklist.add(t);
 		}
 	}
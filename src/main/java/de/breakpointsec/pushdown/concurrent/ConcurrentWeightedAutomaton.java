@@ -0,0 +1,139 @@
+
+package de.breakpointsec.pushdown.concurrent;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.IllegalTransitionException;
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.weights.Semiring;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe transition and weight store used by the parallel saturation engines.
+ *
+ * It is initialized from a {@link WeightedAutomaton}, which also supplies epsilon, one and generated states. Weight updates are atomic per
+ * transition, adjacency is kept in concurrent maps and may be iterated while other threads add transitions. Once saturation is done, the result is
+ * written back with {@link #writeTo(WeightedAutomaton)}.
+ *
+ * A transition is always added to the adjacency maps before its weight is published. A thread that observes a weight therefore also finds the
+ * transition when it looks it up by state.
+ *
+ * @param <L>
+ * @param <S>
+ * @param <W>
+ */
+public class ConcurrentWeightedAutomaton<L, S, W extends Semiring> {
+
+	private final ConcurrentHashMap<Transition<L, S>, W> weights = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<S, ConcurrentHashMap<L, Set<Transition<L, S>>>> transitionsOutOf = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<S, ConcurrentHashMap<L, Set<Transition<L, S>>>> transitionsInto = new ConcurrentHashMap<>();
+	private final L epsilon;
+
+	public ConcurrentWeightedAutomaton(WeightedAutomaton<L, S, W> fa) {
+		this.epsilon = fa.epsilon();
+		for (Transition<L, S> t : fa.getTransitions()) {
+			W w = fa.getWeightFor(t);
+			index(t);
+			if (w != null) {
+				weights.put(t, w);
+			}
+		}
+	}
+
+	/**
+	 * Combines the weight of {@code t} with {@code w}, adding {@code t} if necessary.
+	 *
+	 * @return true if the weight of {@code t} has changed
+	 */
+	public boolean combine(Transition<L, S> t, W w) throws IllegalTransitionException {
+		if (w == null)
+			throw new IllegalArgumentException("Semiring must not be null!");
+		if (t.getStart().equals(t.getTarget()) && t.getLabel().equals(epsilon)) {
+			throw new IllegalTransitionException("Epsilon loop in state " + t.getStart().toString());
+		}
+		if (!weights.containsKey(t)) {
+			index(t);
+		}
+		boolean[] changed = new boolean[1];
+		weights.compute(t, (k, oldWeight) -> {
+			W newWeight = (oldWeight == null) ? w : (W) oldWeight.combineWith(w);
+			changed[0] = !newWeight.equals(oldWeight);
+			return newWeight;
+		});
+		return changed[0];
+	}
+
+	private void index(Transition<L, S> t) {
+		bucket(transitionsOutOf, t.getStart(), t.getLabel()).add(t);
+		bucket(transitionsInto, t.getTarget(), t.getLabel()).add(t);
+	}
+
+	private Set<Transition<L, S>> bucket(ConcurrentHashMap<S, ConcurrentHashMap<L, Set<Transition<L, S>>>> index, S s, L label) {
+		return index.computeIfAbsent(s, k -> new ConcurrentHashMap<>()).computeIfAbsent(label, k -> ConcurrentHashMap.newKeySet());
+	}
+
+	private Collection<Transition<L, S>> lookup(ConcurrentHashMap<S, ConcurrentHashMap<L, Set<Transition<L, S>>>> index, S s, L label) {
+		ConcurrentHashMap<L, Set<Transition<L, S>>> byLabel = index.get(s);
+		if (byLabel == null)
+			return Collections.emptySet();
+		Set<Transition<L, S>> bucket = byLabel.get(label);
+		return bucket == null ? Collections.emptySet() : bucket;
+	}
+
+	public W getWeightFor(Transition<L, S> t) {
+		return weights.get(t);
+	}
+
+	public boolean containsTransition(Transition<L, S> t) {
+		return weights.containsKey(t);
+	}
+
+	/**
+	 * Gets all transitions out of {@code s}, grouped by label. The views are weakly consistent.
+	 */
+	public Collection<Set<Transition<L, S>>> getTransitionsOutOf(S s) {
+		ConcurrentHashMap<L, Set<Transition<L, S>>> byLabel = transitionsOutOf.get(s);
+		return byLabel == null ? Collections.emptySet() : byLabel.values();
+	}
+
+	public Collection<Transition<L, S>> getTransitionsOutOf(S s, L label) {
+		return lookup(transitionsOutOf, s, label);
+	}
+
+	public Collection<Transition<L, S>> getTransitionsInto(S s, L label) {
+		return lookup(transitionsInto, s, label);
+	}
+
+	public Set<Transition<L, S>> getTransitions() {
+		return Collections.unmodifiableSet(weights.keySet());
+	}
+
+	/**
+	 * Copies all transitions and weights into {@code fa}. Must not be called while saturation is running.
+	 */
+	public void writeTo(WeightedAutomaton<L, S, W> fa) throws IllegalTransitionException {
+		for (Map.Entry<Transition<L, S>, W> e : weights.entrySet()) {
+			fa.setWeightForTransition(e.getKey(), e.getValue());
+		}
+	}
+}
@@ -0,0 +1,112 @@
+
+package de.breakpointsec.pushdown.concurrent;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.IllegalTransitionException;
+import de.breakpointsec.pushdown.WPDS;
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.rules.NormalRule;
+import de.breakpointsec.pushdown.rules.PopRule;
+import de.breakpointsec.pushdown.rules.PushRule;
+import de.breakpointsec.pushdown.weights.Semiring;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Parallel version of {@link WPDS#poststar(WeightedAutomaton)}. It applies the same rules, see Reps et al. (2005), Algorithm 3, but processes
+ * transitions concurrently on a fork-join pool.
+ *
+ * The rule set of the WPDS must not change while the saturation runs.
+ *
+ * @param <L>
+ * @param <S>
+ * @param <W>
+ */
+public class ParallelPostStar<L, S, W extends Semiring> extends ParallelSaturation<L, S, W> {
+
+	private final ConcurrentHashMap<PushRule<L, S, W>, S> generatedStates = new ConcurrentHashMap<>();
+
+	public ParallelPostStar(WPDS<L, S, W> pds, WeightedAutomaton<L, S, W> fa, ForkJoinPool pool) {
+		super(pds, fa, pool);
+	}
+
+	/**
+	 * Saturates the automaton and writes the result back into it.
+	 */
+	public void saturate() throws IllegalTransitionException {
+		run();
+	}
+
+	@Override
+	protected void seed() {
+		for (Transition<L, S> t : store.getTransitions()) {
+			enqueue(t);
+		}
+	}
+
+	@Override
+	protected void process(Transition<L, S> t) throws IllegalTransitionException {
+		W weight = store.getWeightFor(t);
+
+		//Transitive pops
+		if (t.getLabel().equals(pds.epsilon())) {
+			for (Set<Transition<L, S>> byLabel : store.getTransitionsOutOf(t.getTarget())) {
+				for (Transition<L, S> transPrime : byLabel) {
+					W weightPrime = store.getWeightFor(transPrime);
+					if (weightPrime == null)
+						continue; // Not yet published, its thread pairs it with t afterwards
+					Transition<L, S> newTrans = new Transition<>(t.getStart(), transPrime.getLabel(), transPrime.getTarget());
+					update(newTrans, (W) weightPrime.extendWith(weight));
+				}
+			}
+			return;
+		}
+
+		// Pop rules
+		for (PopRule<L, S, W> rule : pds.getPopRulesStarting(t.getStart(), t.getLabel())) {
+			Transition<L, S> newTrans = new Transition<L, S>(rule.getS2(), pds.epsilon(), t.getTarget());
+			update(newTrans, (W) weight.extendWith(rule.getWeight()));
+		}
+
+		// Normal rules
+		for (NormalRule<L, S, W> rule : pds.getNormalRulesStarting(t.getStart(), t.getLabel())) {
+			Transition<L, S> newTrans = new Transition<L, S>(rule.getS2(), rule.getL2(), t.getTarget());
+			update(newTrans, (W) weight.extendWith(rule.getWeight()));
+		}
+
+		// Push rules
+		for (PushRule<L, S, W> rule : pds.getPushRulesStarting(t.getStart(), t.getLabel())) {
+			S irState = generatedStates.computeIfAbsent(rule, r -> fa.createState(r.getS2(), r.getL2()));
+			update(new Transition<L, S>(rule.getS2(), rule.getL2(), irState), fa.getOne());
+
+			Transition<L, S> newTrans2 = new Transition<L, S>(irState, rule.getCallSite(), t.getTarget());
+			W newWeight2 = (W) weight.extendWith(rule.getWeight());
+			if (update(newTrans2, newWeight2)) {
+				for (Transition<L, S> tPrime : store.getTransitionsInto(irState, fa.epsilon())) {
+					W weightPrime = store.getWeightFor(tPrime);
+					if (weightPrime == null)
+						continue; // Not yet published, it is processed after newTrans2 is visible
+					update(new Transition<L, S>(tPrime.getStart(), rule.getCallSite(), t.getTarget()), (W) newWeight2.extendWith(weightPrime));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,149 @@
+
+package de.breakpointsec.pushdown.concurrent;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.IllegalTransitionException;
+import de.breakpointsec.pushdown.WPDS;
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.rules.NormalRule;
+import de.breakpointsec.pushdown.rules.PopRule;
+import de.breakpointsec.pushdown.rules.PushRule;
+import de.breakpointsec.pushdown.weights.Semiring;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Parallel version of {@link WPDS#prestar(WeightedAutomaton)}, see Reps et al. (2007), Algorithm 1.
+ *
+ * Work is partitioned by the target state of a transition. Each partition has its own queue that is drained by at most one task at a time. Normal
+ * rules preserve the target state, so most conclusions stay within the partition of their premise and are processed by the same task.
+ *
+ * The join of push rules is symmetric: a conclusion is derived by whichever of its two premises is processed last, so the result does not depend on
+ * scheduling. For idempotent semirings the weights equal those of the sequential algorithm.
+ *
+ * The rule set of the WPDS must not change while the saturation runs.
+ *
+ * @param <L>
+ * @param <S>
+ * @param <W>
+ */
+public class ParallelPreStar<L, S, W extends Semiring> extends ParallelSaturation<L, S, W> {
+
+	private final Partition[] partitions;
+
+	public ParallelPreStar(WPDS<L, S, W> pds, WeightedAutomaton<L, S, W> fa, ForkJoinPool pool) {
+		super(pds, fa, pool);
+		partitions = new ParallelPreStar.Partition[parallelism() * 4];
+		for (int i = 0; i < partitions.length; i++) {
+			partitions[i] = new Partition();
+		}
+	}
+
+	/**
+	 * Saturates the automaton and writes the result back into it.
+	 *
+	 * @return the saturated automaton
+	 */
+	public WeightedAutomaton<L, S, W> saturate() throws IllegalTransitionException {
+		run();
+		return fa;
+	}
+
+	@Override
+	protected void seed() throws IllegalTransitionException {
+		for (Transition<L, S> t : fa.getTransitions()) {
+			store.combine(t, fa.getOne());
+			enqueue(t);
+		}
+
+		// Initialize with pop rules.
+		for (PopRule<L, S, W> r : pds.getPopRules()) {
+			update(new Transition<>(r.getS1(), r.getL1(), r.getS2()), r.getWeight());
+		}
+	}
+
+	@Override
+	protected void dispatch(Transition<L, S> t) {
+		Partition partition = partitions[Math.floorMod(t.getTarget().hashCode(), partitions.length)];
+		partition.queue.add(t);
+		partition.schedule();
+	}
+
+	@Override
+	protected void process(Transition<L, S> t) throws IllegalTransitionException {
+		W weight = store.getWeightFor(t);
+
+		// Normal rules
+		for (NormalRule<L, S, W> r : pds.getNormalRulesEnding(t.getStart(), t.getLabel())) {
+			update(new Transition<L, S>(r.getS1(), r.getL1(), t.getTarget()), (W) r.getWeight().extendWith(weight));
+		}
+
+		// Push rules, t as the first transition
+		for (PushRule<L, S, W> r : pds.getPushRulesEnding(t.getStart(), t.getLabel())) {
+			for (Transition<L, S> tdash : store.getTransitionsOutOf(t.getTarget(), r.getCallSite())) {
+				W weightDash = store.getWeightFor(tdash);
+				if (weightDash == null)
+					continue; // Not yet published, tdash finds t once it is processed
+				update(new Transition<L, S>(r.getS1(), r.getL1(), tdash.getTarget()), (W) r.getWeight().extendWith(weight).extendWith(weightDash));
+			}
+		}
+
+		// Push rules, t as the second transition
+		for (PushRule<L, S, W> r : pds.getPushRulesWithCallSite(t.getLabel())) {
+			W weightDash = store.getWeightFor(new Transition<L, S>(r.getS2(), r.getL2(), t.getStart()));
+			if (weightDash != null) {
+				update(new Transition<L, S>(r.getS1(), r.getL1(), t.getTarget()), (W) r.getWeight().extendWith(weightDash).extendWith(weight));
+			}
+		}
+	}
+
+	private class Partition {
+		final ConcurrentLinkedQueue<Transition<L, S>> queue = new ConcurrentLinkedQueue<>();
+		final AtomicBoolean scheduled = new AtomicBoolean();
+
+		void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				submit(new Drain(this));
+			}
+		}
+	}
+
+	private class Drain extends RecursiveAction {
+		private final Partition partition;
+
+		Drain(Partition partition) {
+			this.partition = partition;
+		}
+
+		@Override
+		protected void compute() {
+			do {
+				Transition<L, S> t;
+				while ((t = partition.queue.poll()) != null) {
+					processPending(t);
+				}
+				partition.scheduled.set(false);
+				// Transitions queued after the last poll but before the flag was cleared did not schedule a task
+			} while (!partition.queue.isEmpty() && partition.scheduled.compareAndSet(false, true));
+		}
+	}
+}
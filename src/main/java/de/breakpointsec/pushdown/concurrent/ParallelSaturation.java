@@ -0,0 +1,172 @@
+
+package de.breakpointsec.pushdown.concurrent;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.IllegalTransitionException;
+import de.breakpointsec.pushdown.WPDS;
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.weights.Semiring;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fixpoint driver shared by the parallel saturation engines.
+ *
+ * Every queued transition becomes a fork-join task. Tasks forked from a worker go to that worker's deque and are stolen by idle workers. A transition
+ * that is already pending is not queued again; it is removed from the pending set right before it is processed, so a weight change during processing
+ * queues it anew. The fixpoint is reached when no task is left.
+ *
+ * For idempotent semirings the result does not depend on the order in which tasks run, and equals that of the sequential algorithm.
+ *
+ * @param <L>
+ * @param <S>
+ * @param <W>
+ */
+abstract class ParallelSaturation<L, S, W extends Semiring> {
+
+	protected final WPDS<L, S, W> pds;
+	protected final WeightedAutomaton<L, S, W> fa;
+	protected final ConcurrentWeightedAutomaton<L, S, W> store;
+	private final ForkJoinPool pool;
+	private final Set<Transition<L, S>> pending = ConcurrentHashMap.newKeySet();
+	/* Number of pending transitions not yet processed, plus one while seeding. */
+	private final AtomicLong running = new AtomicLong(1);
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+	private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+	ParallelSaturation(WPDS<L, S, W> pds, WeightedAutomaton<L, S, W> fa, ForkJoinPool pool) {
+		this.pds = pds;
+		this.fa = fa;
+		this.pool = pool;
+		this.store = new ConcurrentWeightedAutomaton<>(fa);
+	}
+
+	/**
+	 * Puts the initial transitions on the worklist.
+	 */
+	protected abstract void seed() throws IllegalTransitionException;
+
+	/**
+	 * Applies all rules to {@code t}.
+	 */
+	protected abstract void process(Transition<L, S> t) throws IllegalTransitionException;
+
+	/**
+	 * Saturates the store and writes the result back into the automaton.
+	 */
+	void run() throws IllegalTransitionException {
+		try {
+			seed();
+		} catch (IllegalTransitionException | RuntimeException e) {
+			failure.compareAndSet(null, e);
+		}
+		finished();
+		done.join();
+		Throwable t = failure.get();
+		if (t instanceof IllegalTransitionException)
+			throw (IllegalTransitionException) t;
+		if (t instanceof RuntimeException)
+			throw (RuntimeException) t;
+		if (t instanceof Error)
+			throw (Error) t;
+		store.writeTo(fa);
+	}
+
+	/**
+	 * Combines the weight of {@code t} with {@code w} and queues {@code t} if its weight has changed.
+	 *
+	 * @return true if the weight has changed
+	 */
+	protected boolean update(Transition<L, S> t, W w) throws IllegalTransitionException {
+		boolean changed = store.combine(t, w);
+		if (changed) {
+			enqueue(t);
+		}
+		return changed;
+	}
+
+	protected void enqueue(Transition<L, S> t) {
+		if (!pending.add(t))
+			return;
+		running.incrementAndGet();
+		dispatch(t);
+	}
+
+	/**
+	 * Hands a newly pending transition to the pool. By default every transition becomes its own task, forked onto the current worker's deque.
+	 * Overriding implementations must eventually pass {@code t} to {@link #processPending(Transition)}.
+	 */
+	protected void dispatch(Transition<L, S> t) {
+		submit(new Task(t));
+	}
+
+	protected void submit(ForkJoinTask<?> task) {
+		if (ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == pool) {
+			task.fork();
+		} else {
+			pool.execute(task);
+		}
+	}
+
+	protected int parallelism() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Processes a pending transition and accounts for its completion.
+	 */
+	protected void processPending(Transition<L, S> t) {
+		try {
+			if (failure.get() == null) {
+				pending.remove(t);
+				process(t);
+			}
+		} catch (Throwable e) {
+			failure.compareAndSet(null, e);
+		} finally {
+			finished();
+		}
+	}
+
+	private void finished() {
+		if (running.decrementAndGet() == 0) {
+			done.complete(null);
+		}
+	}
+
+	private class Task extends RecursiveAction {
+		private final Transition<L, S> t;
+
+		Task(Transition<L, S> t) {
+			this.t = t;
+		}
+
+		@Override
+		protected void compute() {
+			processPending(t);
+		}
+	}
+}
@@ -0,0 +1,297 @@
+
+package de.breakpointsec.pushdown.fsm;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.weights.Semiring;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A weighted automaton with a compact memory layout, for keeping large saturated automata around and querying them.
+ *
+ * States and labels are interned to dense {@code int} ids by {@link SymbolTable}s. A transition is keyed by its start and target ids, packed into one
+ * {@code long}, and its label id, in an open addressing table, and its weight is kept in an array next to it. Transitions out of and into a state are indexed in compressed sparse
+ * row form ({@code int[]} offsets into an {@code int[]} of transition ids), which is rebuilt on the first query after transitions were added.
+ * {@link Transition} objects are only created when transitions are read.
+ *
+ * Saturation works on {@link WeightedAutomaton}, use {@link #copyOf(WeightedAutomaton)} to store its result. Ids use the full {@code int} range, so the
+ * number of states and labels is only bounded by the symbol tables.
+ *
+ * @param <L>
+ * @param <S>
+ * @param <W>
+ */
+public class CompactAutomaton<L, S, W extends Semiring> {
+
+	private final SymbolTable<S> states = new SymbolTable<>();
+	private final SymbolTable<L> labels = new SymbolTable<>();
+	private final int initialState;
+	private final BitSet finalStates = new BitSet();
+
+	/*
+	 * Transitions by id: packed start and target ids, label ids and weights.
+	 */
+	private long[] transitions = new long[16];
+	private int[] transitionLabels = new int[16];
+	private Object[] weights = new Object[16];
+	private int size;
+
+	/*
+	 * Open addressing table from key to transition id + 1, 0 marks an empty slot.
+	 */
+	private long[] tableKeys = new long[32];
+	private int[] tableLabels = new int[32];
+	private int[] tableIds = new int[32];
+
+	/*
+	 * Compressed sparse rows of the transitions out of and into each state, valid for the first indexedSize transitions.
+	 */
+	private int[] outOffsets = new int[1];
+	private int[] outTransitions = new int[0];
+	private int[] inOffsets = new int[1];
+	private int[] inTransitions = new int[0];
+	private int indexedSize;
+
+	public CompactAutomaton(S initialState) {
+		this.initialState = stateId(initialState);
+	}
+
+	/**
+	 * Copies the transitions, weights and final states of {@code fa}.
+	 */
+	public static <L, S, W extends Semiring> CompactAutomaton<L, S, W> copyOf(WeightedAutomaton<L, S, W> fa) {
+		CompactAutomaton<L, S, W> copy = new CompactAutomaton<>(fa.getInitialState());
+		for (Transition<L, S> t : fa.getTransitions()) {
+			copy.addTransition(t, fa.getWeightFor(t));
+		}
+		for (S s : fa.getFinalState()) {
+			copy.addFinalState(s);
+		}
+		return copy;
+	}
+
+	private int stateId(S state) {
+		return states.intern(state);
+	}
+
+	private int labelId(L label) {
+		return labels.intern(label);
+	}
+
+	private static long pack(int start, int target) {
+		return ((long) start << 32) | (target & 0xFFFFFFFFL);
+	}
+
+	private static int start(long key) {
+		return (int) (key >>> 32);
+	}
+
+	private static int target(long key) {
+		return (int) key;
+	}
+
+	private int slot(long key, int label) {
+		int mask = tableKeys.length - 1;
+		long h = (key + label * 0xC2B2AE3D27D4EB4FL) * 0x9E3779B97F4A7C15L;
+		for (int i = (int) (h >>> 32) & mask;; i = (i + 1) & mask) {
+			if (tableIds[i] == 0 || tableKeys[i] == key && tableLabels[i] == label)
+				return i;
+		}
+	}
+
+	/**
+	 * @return the id of the transition, or -1 if it is not part of the automaton
+	 */
+	private int find(Transition<L, S> t) {
+		int start = states.indexOf(t.getStart());
+		int label = labels.indexOf(t.getLabel());
+		int target = states.indexOf(t.getTarget());
+		if (start < 0 || label < 0 || target < 0)
+			return -1;
+		return tableIds[slot(pack(start, target), label)] - 1;
+	}
+
+	/**
+	 * Adds {@code t} with {@code weight}, or replaces the weight if {@code t} is already present.
+	 *
+	 * @return true if {@code t} is new
+	 */
+	public boolean addTransition(Transition<L, S> t, W weight) {
+		long key = pack(stateId(t.getStart()), stateId(t.getTarget()));
+		int label = labelId(t.getLabel());
+		int i = slot(key, label);
+		if (tableIds[i] != 0) {
+			weights[tableIds[i] - 1] = weight;
+			return false;
+		}
+		if (size == transitions.length) {
+			transitions = Arrays.copyOf(transitions, size * 2);
+			transitionLabels = Arrays.copyOf(transitionLabels, size * 2);
+			weights = Arrays.copyOf(weights, size * 2);
+		}
+		transitions[size] = key;
+		transitionLabels[size] = label;
+		weights[size] = weight;
+		tableKeys[i] = key;
+		tableLabels[i] = label;
+		tableIds[i] = ++size;
+		if (2 * size > tableKeys.length)
+			rehash();
+		return true;
+	}
+
+	private void rehash() {
+		tableKeys = new long[tableKeys.length * 2];
+		tableLabels = new int[tableKeys.length];
+		tableIds = new int[tableKeys.length];
+		for (int id = 0; id < size; id++) {
+			int i = slot(transitions[id], transitionLabels[id]);
+			tableKeys[i] = transitions[id];
+			tableLabels[i] = transitionLabels[id];
+			tableIds[i] = id + 1;
+		}
+	}
+
+	public boolean containsTransition(Transition<L, S> t) {
+		return find(t) >= 0;
+	}
+
+	/**
+	 * @return the weight of {@code t}, or null if {@code t} is not part of the automaton
+	 */
+	public W getWeightFor(Transition<L, S> t) {
+		int id = find(t);
+		return id < 0 ? null : (W) weights[id];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Read-only view of all transitions, in the order they were added. Elements are created on access.
+	 */
+	public List<Transition<L, S>> getTransitions() {
+		return new AbstractList<Transition<L, S>>() {
+			@Override
+			public Transition<L, S> get(int index) {
+				if (index >= size)
+					throw new IndexOutOfBoundsException("No transition " + index);
+				return transition(index);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	private Transition<L, S> transition(int id) {
+		long key = transitions[id];
+		return new Transition<>(states.get(start(key)), labels.get(transitionLabels[id]), states.get(target(key)));
+	}
+
+	public List<Transition<L, S>> getTransitionsOutOf(S s) {
+		index();
+		return rows(outOffsets, outTransitions, states.indexOf(s));
+	}
+
+	public List<Transition<L, S>> getTransitionsInto(S s) {
+		index();
+		return rows(inOffsets, inTransitions, states.indexOf(s));
+	}
+
+	private List<Transition<L, S>> rows(int[] offsets, int[] ids, int state) {
+		if (state < 0 || state + 1 >= offsets.length)
+			return Collections.emptyList();
+		int from = offsets[state];
+		int to = offsets[state + 1];
+		return new AbstractList<Transition<L, S>>() {
+			@Override
+			public Transition<L, S> get(int index) {
+				if (index < 0 || index >= to - from)
+					throw new IndexOutOfBoundsException("No transition " + index);
+				return transition(ids[from + index]);
+			}
+
+			@Override
+			public int size() {
+				return to - from;
+			}
+		};
+	}
+
+	private void index() {
+		if (indexedSize == size)
+			return;
+		int n = states.size();
+		outOffsets = new int[n + 1];
+		inOffsets = new int[n + 1];
+		for (int id = 0; id < size; id++) {
+			outOffsets[start(transitions[id]) + 1]++;
+			inOffsets[target(transitions[id]) + 1]++;
+		}
+		for (int s = 0; s < n; s++) {
+			outOffsets[s + 1] += outOffsets[s];
+			inOffsets[s + 1] += inOffsets[s];
+		}
+		outTransitions = new int[size];
+		inTransitions = new int[size];
+		int[] outNext = Arrays.copyOf(outOffsets, n);
+		int[] inNext = Arrays.copyOf(inOffsets, n);
+		for (int id = 0; id < size; id++) {
+			outTransitions[outNext[start(transitions[id])]++] = id;
+			inTransitions[inNext[target(transitions[id])]++] = id;
+		}
+		indexedSize = size;
+	}
+
+	public S getInitialState() {
+		return states.get(initialState);
+	}
+
+	public void addFinalState(S state) {
+		finalStates.set(stateId(state));
+	}
+
+	public boolean isFinalState(S state) {
+		int id = states.indexOf(state);
+		return id >= 0 && finalStates.get(id);
+	}
+
+	/**
+	 * All states seen so far, indexed by their ids.
+	 */
+	public List<S> getStates() {
+		return states.symbols();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder("CompactAutomaton (#Transitions: " + size + ")\n");
+		for (int id = 0; id < size; id++) {
+			s.append('\t').append(transition(id)).append(" W: ").append(weights[id]).append('\n');
+		}
+		return s.toString();
+	}
+}
@@ -0,0 +1,171 @@
+
+package de.breakpointsec.pushdown.fsm;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.weights.LongSemiring;
+
+import java.util.function.BiConsumer;
+import java.util.function.LongFunction;
+
+/**
+ * {@link WeightStore} for {@link LongSemiring}s that keeps the weights as {@code long}s in an open addressing table, next to the transitions. Weight
+ * objects are only created when a weight is read, by {@code valueOf}, for example {@code MinPlusSemiring::of}.
+ *
+ * Unless a weight cache is set, the sequential saturations of {@link de.breakpointsec.pushdown.WPDS} fire rules on plain values through
+ * {@link #getLong(Transition, long)} and {@link #combineLong(Transition, long, LongSemiring)}. They create no weight objects then and do not call
+ * {@code updatePostStar} and {@code updatePrestar}.
+ *
+ * @param <L>
+ * @param <S>
+ * @param <W>
+ */
+public class LongWeightStore<L, S, W extends LongSemiring> implements WeightStore<L, S, W> {
+
+	private final LongFunction<W> valueOf;
+	private Object[] keys = new Object[16];
+	private long[] values = new long[16];
+	private int size;
+
+	public LongWeightStore(LongFunction<W> valueOf) {
+		this.valueOf = valueOf;
+	}
+
+	private int slot(Object key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (keys.length - 1);
+	}
+
+	private int find(Object key) {
+		int mask = keys.length - 1;
+		for (int i = slot(key);; i = (i + 1) & mask) {
+			Object k = keys[i];
+			if (k == null || k.equals(key))
+				return i;
+		}
+	}
+
+	@Override
+	public W get(Transition<L, S> trans) {
+		int i = find(trans);
+		return keys[i] == null ? null : valueOf.apply(values[i]);
+	}
+
+	/**
+	 * Reads a weight without creating an object.
+	 *
+	 * @param trans
+	 * @param absent returned if {@code trans} has no weight
+	 * @return
+	 */
+	public long getLong(Transition<L, S> trans, long absent) {
+		int i = find(trans);
+		return keys[i] == null ? absent : values[i];
+	}
+
+	/**
+	 * Stores {@code weight} for {@code trans}. A null weight removes the weight of {@code trans}, {@link #get(Transition)} then returns null as for any
+	 * transition without weight.
+	 */
+	@Override
+	public void put(Transition<L, S> trans, W weight) {
+		if (weight == null)
+			remove(trans);
+		else
+			putLong(trans, weight.longValue());
+	}
+
+	public void putLong(Transition<L, S> trans, long weight) {
+		int i = find(trans);
+		if (keys[i] == null) {
+			if (2 * (size + 1) > keys.length) {
+				grow();
+				i = find(trans);
+			}
+			keys[i] = trans;
+			size++;
+		}
+		values[i] = weight;
+	}
+
+	/**
+	 * Combines {@code weight} into the weight of {@code trans} without creating objects, or stores it if {@code trans} has no weight yet.
+	 *
+	 * @param trans
+	 * @param weight
+	 * @param semiring any weight of the semiring of this store, provides {@link LongSemiring#combineValues(long, long)}
+	 * @return whether the weight of {@code trans} changed
+	 */
+	public boolean combineLong(Transition<L, S> trans, long weight, LongSemiring semiring) {
+		int i = find(trans);
+		if (keys[i] == null) {
+			putLong(trans, weight);
+			return true;
+		}
+		long combined = semiring.combineValues(values[i], weight);
+		if (combined == values[i])
+			return false;
+		values[i] = combined;
+		return true;
+	}
+
+	private void grow() {
+		Object[] oldKeys = keys;
+		long[] oldValues = values;
+		keys = new Object[oldKeys.length * 2];
+		values = new long[oldKeys.length * 2];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != null) {
+				int j = find(oldKeys[i]);
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+
+	@Override
+	public void remove(Transition<L, S> trans) {
+		int i = find(trans);
+		if (keys[i] == null)
+			return;
+		// Backward shift deletion keeps the probe sequences intact without tombstones
+		int mask = keys.length - 1;
+		int gap = i;
+		for (int j = (i + 1) & mask; keys[j] != null; j = (j + 1) & mask) {
+			int home = slot(keys[j]);
+			if (((j - home) & mask) >= ((j - gap) & mask)) {
+				keys[gap] = keys[j];
+				values[gap] = values[j];
+				gap = j;
+			}
+		}
+		keys[gap] = null;
+		size--;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super Transition<L, S>, ? super W> action) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null)
+				action.accept((Transition<L, S>) keys[i], valueOf.apply(values[i]));
+		}
+	}
+}
@@ -0,0 +1,52 @@
+
+package de.breakpointsec.pushdown.fsm;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.weights.Semiring;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Default {@link WeightStore}, backed by a {@link HashMap}.
+ */
+class MapWeightStore<L, S, W extends Semiring> implements WeightStore<L, S, W> {
+
+	private final Map<Transition<L, S>, W> weights = new HashMap<>();
+
+	@Override
+	public W get(Transition<L, S> trans) {
+		return weights.get(trans);
+	}
+
+	@Override
+	public void put(Transition<L, S> trans, W weight) {
+		weights.put(trans, weight);
+	}
+
+	@Override
+	public void remove(Transition<L, S> trans) {
+		weights.remove(trans);
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super Transition<L, S>, ? super W> action) {
+		weights.forEach(action);
+	}
+}
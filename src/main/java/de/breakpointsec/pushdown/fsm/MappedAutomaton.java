@@ -0,0 +1,364 @@
+
+package de.breakpointsec.pushdown.fsm;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.weights.LongSemiring;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongFunction;
+
+/**
+ * A saturated weighted automaton kept off the heap, in a memory mapped file, for automata that are too large to keep as a {@link WeightedAutomaton}.
+ *
+ * The layout follows {@link CompactAutomaton}: transitions are stored by id with their packed start and target ids, label id and {@code long} weight,
+ * an open addressing table maps a transition to its id, and transitions out of and into a state are indexed in compressed sparse row form. All of them
+ * live in the file. Only the dictionary of states and labels stays on the heap, and {@link Transition} objects and weights are only created when they
+ * are read.
+ *
+ * The automaton is written once by {@link #copyOf(WeightedAutomaton, Path, LongFunction)}, saturate a {@link WeightedAutomaton} first, optionally with
+ * a {@link MappedWeightStore}. It can be reopened with {@link #open(Path, LongFunction, List, List)} if the dictionary, {@link #getStates()} and
+ * {@link #getLabels()}, was saved.
+ *
+ * @param <L>
+ * @param <S>
+ * @param <W>
+ */
+public class MappedAutomaton<L, S, W extends LongSemiring> implements Closeable {
+
+	private static final long MAGIC = 0x504453415554304DL;
+	private static final int HEADER_SIZE = 64;
+
+	/*
+	 * A transition holds its packed state ids, its label id and its weight.
+	 */
+	private static final int TRANSITION_SIZE = 24;
+	private static final int LABEL = 8;
+	private static final int VALUE = 16;
+
+	private final LongFunction<W> valueOf;
+	private final SymbolTable<S> states;
+	private final SymbolTable<L> labels;
+	private MappedFile mapped;
+
+	private final int size;
+	private final int stateCount;
+	private final long tableCapacity;
+	private final int initialState;
+
+	/*
+	 * Offsets of the sections of the file.
+	 */
+	private final long table;
+	private final long outOffsets;
+	private final long outTransitions;
+	private final long inOffsets;
+	private final long inTransitions;
+	private final long finalStates;
+
+	private MappedAutomaton(LongFunction<W> valueOf, SymbolTable<S> states, SymbolTable<L> labels, int size, long tableCapacity, int initialState) {
+		this.valueOf = valueOf;
+		this.states = states;
+		this.labels = labels;
+		this.size = size;
+		this.stateCount = states.size();
+		this.tableCapacity = tableCapacity;
+		this.initialState = initialState;
+		this.table = HEADER_SIZE + (long) size * TRANSITION_SIZE;
+		this.outOffsets = table + align(tableCapacity * 4);
+		this.outTransitions = outOffsets + align((stateCount + 1L) * 4);
+		this.inOffsets = outTransitions + align(size * 4L);
+		this.inTransitions = inOffsets + align((stateCount + 1L) * 4);
+		this.finalStates = inTransitions + align(size * 4L);
+	}
+
+	private static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+
+	private long fileSize() {
+		return finalStates + ((stateCount + 63L) >>> 6) * 8;
+	}
+
+	/**
+	 * Writes the transitions, weights and final states of {@code fa} to {@code file}, replacing it if it exists.
+	 *
+	 * @param fa an automaton whose weights are {@link LongSemiring}s
+	 * @param file
+	 * @param valueOf creates the weights that are read, for example {@code MinPlusSemiring::of}
+	 */
+	public static <L, S, W extends LongSemiring> MappedAutomaton<L, S, W> copyOf(WeightedAutomaton<L, S, ?> fa, Path file, LongFunction<W> valueOf)
+			throws IOException {
+		SymbolTable<S> states = new SymbolTable<>();
+		SymbolTable<L> labels = new SymbolTable<>();
+		int initialState = states.intern(fa.getInitialState());
+		for (Transition<L, S> t : fa.getTransitions()) {
+			states.intern(t.getStart());
+			states.intern(t.getTarget());
+			labels.intern(t.getLabel());
+		}
+		for (S s : fa.getFinalState()) {
+			states.intern(s);
+		}
+		int size = fa.getTransitions().size();
+		// At most half full
+		long tableCapacity = Long.highestOneBit(Math.max(1, size)) << 2;
+		MappedAutomaton<L, S, W> copy = new MappedAutomaton<>(valueOf, states, labels, size, tableCapacity, initialState);
+		copy.mapped = MappedFile.create(file, copy.fileSize());
+		copy.write(fa);
+		return copy;
+	}
+
+	private void write(WeightedAutomaton<L, S, ?> fa) {
+		mapped.putLong(0, MAGIC);
+		mapped.putLong(8, size);
+		mapped.putLong(16, stateCount);
+		mapped.putLong(24, labels.size());
+		mapped.putLong(32, tableCapacity);
+		mapped.putLong(40, initialState);
+		int id = 0;
+		for (Transition<L, S> t : fa.getTransitions()) {
+			int start = states.indexOf(t.getStart());
+			int target = states.indexOf(t.getTarget());
+			long key = pack(start, target);
+			int label = labels.indexOf(t.getLabel());
+			long offset = HEADER_SIZE + (long) id * TRANSITION_SIZE;
+			mapped.putLong(offset, key);
+			mapped.putInt(offset + LABEL, label);
+			mapped.putLong(offset + VALUE, ((LongSemiring) fa.getWeightFor(t)).longValue());
+			mapped.putInt(table + slot(key, label) * 4, ++id);
+			increment(outOffsets, start + 1);
+			increment(inOffsets, target + 1);
+		}
+		index(outOffsets, outTransitions, true);
+		index(inOffsets, inTransitions, false);
+		for (S s : fa.getFinalState()) {
+			int state = states.indexOf(s);
+			long offset = finalStates + (state >>> 6) * 8L;
+			mapped.putLong(offset, mapped.getLong(offset) | 1L << state);
+		}
+		mapped.flush();
+	}
+
+	private void increment(long offsets, int state) {
+		long offset = offsets + state * 4L;
+		mapped.putInt(offset, mapped.getInt(offset) + 1);
+	}
+
+	/**
+	 * Turns the transition counts per state in {@code offsets} into row offsets and fills the rows, using the row starts as cursors.
+	 */
+	private void index(long offsets, long rows, boolean byStart) {
+		for (int s = 0; s < stateCount; s++) {
+			mapped.putInt(offsets + (s + 1) * 4L, mapped.getInt(offsets + (s + 1) * 4L) + mapped.getInt(offsets + s * 4L));
+		}
+		for (int id = 0; id < size; id++) {
+			long key = keyOf(id);
+			int state = byStart ? start(key) : target(key);
+			int cursor = mapped.getInt(offsets + state * 4L);
+			mapped.putInt(rows + cursor * 4L, id);
+			mapped.putInt(offsets + state * 4L, cursor + 1);
+		}
+		// Each cursor now points to the start of the next row
+		for (int s = stateCount; s > 0; s--) {
+			mapped.putInt(offsets + s * 4L, mapped.getInt(offsets + (s - 1) * 4L));
+		}
+		mapped.putInt(offsets, 0);
+	}
+
+	/**
+	 * Reopens an automaton written by {@link #copyOf(WeightedAutomaton, Path, LongFunction)}.
+	 *
+	 * @param file
+	 * @param valueOf
+	 * @param states the states of the dictionary, in the order of {@link #getStates()}
+	 * @param labels the labels of the dictionary, in the order of {@link #getLabels()}
+	 */
+	public static <L, S, W extends LongSemiring> MappedAutomaton<L, S, W> open(Path file, LongFunction<W> valueOf, List<? extends S> states,
+			List<? extends L> labels) throws IOException {
+		SymbolTable<S> stateTable = new SymbolTable<>();
+		for (S s : states) {
+			stateTable.intern(s);
+		}
+		SymbolTable<L> labelTable = new SymbolTable<>();
+		for (L l : labels) {
+			labelTable.intern(l);
+		}
+		MappedFile mapped = MappedFile.open(file);
+		MappedAutomaton<L, S, W> automaton = null;
+		if (mapped.size() >= HEADER_SIZE && mapped.getLong(0) == MAGIC && mapped.getLong(16) == stateTable.size() && mapped.getLong(24) == labelTable.size()) {
+			automaton = new MappedAutomaton<>(valueOf, stateTable, labelTable, (int) mapped.getLong(8), mapped.getLong(32), (int) mapped.getLong(40));
+			automaton.mapped = mapped;
+		}
+		if (automaton == null || automaton.fileSize() != mapped.size()) {
+			mapped.close();
+			throw new IOException(file + " is not an automaton with " + stateTable.size() + " states and " + labelTable.size() + " labels");
+		}
+		return automaton;
+	}
+
+	private static long pack(int start, int target) {
+		return ((long) start << 32) | (target & 0xFFFFFFFFL);
+	}
+
+	private static int start(long key) {
+		return (int) (key >>> 32);
+	}
+
+	private static int target(long key) {
+		return (int) key;
+	}
+
+	private long keyOf(int id) {
+		return mapped.getLong(HEADER_SIZE + (long) id * TRANSITION_SIZE);
+	}
+
+	private int labelOf(int id) {
+		return mapped.getInt(HEADER_SIZE + (long) id * TRANSITION_SIZE + LABEL);
+	}
+
+	private long slot(long key, int label) {
+		long mask = tableCapacity - 1;
+		long h = (key + label * 0xC2B2AE3D27D4EB4FL) * 0x9E3779B97F4A7C15L;
+		for (long i = (h >>> 32) & mask;; i = (i + 1) & mask) {
+			int id = mapped.getInt(table + i * 4);
+			if (id == 0 || keyOf(id - 1) == key && labelOf(id - 1) == label)
+				return i;
+		}
+	}
+
+	/**
+	 * @return the id of the transition, or -1 if it is not part of the automaton
+	 */
+	private int find(Transition<L, S> t) {
+		int start = states.indexOf(t.getStart());
+		int label = labels.indexOf(t.getLabel());
+		int target = states.indexOf(t.getTarget());
+		if (start < 0 || label < 0 || target < 0)
+			return -1;
+		return mapped.getInt(table + slot(pack(start, target), label) * 4) - 1;
+	}
+
+	public boolean containsTransition(Transition<L, S> t) {
+		return find(t) >= 0;
+	}
+
+	/**
+	 * @return the weight of {@code t}, or null if {@code t} is not part of the automaton
+	 */
+	public W getWeightFor(Transition<L, S> t) {
+		int id = find(t);
+		return id < 0 ? null : valueOf.apply(mapped.getLong(HEADER_SIZE + (long) id * TRANSITION_SIZE + VALUE));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Read-only view of all transitions, in the order they were copied. Elements are created on access.
+	 */
+	public List<Transition<L, S>> getTransitions() {
+		return new AbstractList<Transition<L, S>>() {
+			@Override
+			public Transition<L, S> get(int index) {
+				if (index < 0 || index >= size)
+					throw new IndexOutOfBoundsException("No transition " + index);
+				return transition(index);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	private Transition<L, S> transition(int id) {
+		long key = keyOf(id);
+		return new Transition<>(states.get(start(key)), labels.get(labelOf(id)), states.get(target(key)));
+	}
+
+	public List<Transition<L, S>> getTransitionsOutOf(S s) {
+		return rows(outOffsets, outTransitions, states.indexOf(s));
+	}
+
+	public List<Transition<L, S>> getTransitionsInto(S s) {
+		return rows(inOffsets, inTransitions, states.indexOf(s));
+	}
+
+	private List<Transition<L, S>> rows(long offsets, long ids, int state) {
+		if (state < 0)
+			return Collections.emptyList();
+		int from = mapped.getInt(offsets + state * 4L);
+		int to = mapped.getInt(offsets + (state + 1) * 4L);
+		return new AbstractList<Transition<L, S>>() {
+			@Override
+			public Transition<L, S> get(int index) {
+				if (index < 0 || index >= to - from)
+					throw new IndexOutOfBoundsException("No transition " + index);
+				return transition(mapped.getInt(ids + (from + index) * 4L));
+			}
+
+			@Override
+			public int size() {
+				return to - from;
+			}
+		};
+	}
+
+	public S getInitialState() {
+		return states.get(initialState);
+	}
+
+	public boolean isFinalState(S state) {
+		int id = states.indexOf(state);
+		return id >= 0 && (mapped.getLong(finalStates + (id >>> 6) * 8L) & 1L << id) != 0;
+	}
+
+	/**
+	 * The states of the dictionary, indexed by their ids. Save them to reopen the automaton.
+	 */
+	public List<S> getStates() {
+		return states.symbols();
+	}
+
+	/**
+	 * The labels of the dictionary, indexed by their ids. Save them to reopen the automaton.
+	 */
+	public List<L> getLabels() {
+		return labels.symbols();
+	}
+
+	/**
+	 * Unmaps the file. The automaton must not be used afterwards.
+	 */
+	@Override
+	public void close() throws IOException {
+		mapped.close();
+	}
+
+	@Override
+	public String toString() {
+		return "MappedAutomaton (#Transitions: " + size + ")";
+	}
+}
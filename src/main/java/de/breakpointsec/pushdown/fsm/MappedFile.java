@@ -0,0 +1,148 @@
+
+package de.breakpointsec.pushdown.fsm;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file mapped into memory in segments of 1 GB, read and written at {@code long} offsets. Longs must be 8-byte and ints 4-byte aligned, so no value
+ * crosses a segment boundary.
+ *
+ * The segments are unmapped when the file is closed, instead of waiting for the garbage collector, where the JVM allows it.
+ */
+final class MappedFile implements Closeable {
+
+	private static final int SEGMENT_BITS = 30;
+	private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+	private static final MethodHandle INVOKE_CLEANER = invokeCleaner();
+
+	private final FileChannel channel;
+	private MappedByteBuffer[] segments;
+	private final long size;
+
+	private MappedFile(FileChannel channel, long size) throws IOException {
+		this.channel = channel;
+		this.size = size;
+		int count = (int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS);
+		this.segments = new MappedByteBuffer[count];
+		try {
+			for (int i = 0; i < count; i++) {
+				long offset = (long) i << SEGMENT_BITS;
+				segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, offset, Math.min(1L << SEGMENT_BITS, size - offset));
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates {@code file} with {@code size} zero bytes, replacing it if it exists.
+	 */
+	static MappedFile create(Path file, long size) throws IOException {
+		return new MappedFile(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+				StandardOpenOption.WRITE), size);
+	}
+
+	/**
+	 * Maps all of an existing {@code file}.
+	 */
+	static MappedFile open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		return new MappedFile(channel, channel.size());
+	}
+
+	long size() {
+		return size;
+	}
+
+	long getLong(long offset) {
+		return segments[(int) (offset >>> SEGMENT_BITS)].getLong((int) (offset & SEGMENT_MASK));
+	}
+
+	void putLong(long offset, long value) {
+		segments[(int) (offset >>> SEGMENT_BITS)].putLong((int) (offset & SEGMENT_MASK), value);
+	}
+
+	int getInt(long offset) {
+		return segments[(int) (offset >>> SEGMENT_BITS)].getInt((int) (offset & SEGMENT_MASK));
+	}
+
+	void putInt(long offset, int value) {
+		segments[(int) (offset >>> SEGMENT_BITS)].putInt((int) (offset & SEGMENT_MASK), value);
+	}
+
+	/**
+	 * Writes all changes to the file.
+	 */
+	void flush() {
+		for (MappedByteBuffer segment : segments) {
+			segment.force();
+		}
+	}
+
+	/**
+	 * Unmaps the segments and closes the file without flushing. It must not be accessed afterwards.
+	 */
+	@Override
+	public void close() throws IOException {
+		MappedByteBuffer[] mapped = segments;
+		// Later accesses fail with a NullPointerException instead of touching unmapped memory
+		segments = null;
+		for (MappedByteBuffer segment : mapped) {
+			if (segment != null)
+				unmap(segment);
+		}
+		channel.close();
+	}
+
+	private static void unmap(MappedByteBuffer segment) {
+		if (INVOKE_CLEANER == null)
+			return;
+		try {
+			INVOKE_CLEANER.invokeExact((ByteBuffer) segment);
+		} catch (Throwable e) {
+			throw new IllegalStateException("Cannot unmap segment", e);
+		}
+	}
+
+	/*
+	 * Unsafe.invokeCleaner, available from Java 9. On Java 8 the segments are unmapped when they are garbage collected.
+	 */
+	private static MethodHandle invokeCleaner() {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			return MethodHandles.lookup().findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+					.bindTo(theUnsafe.get(null));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+}
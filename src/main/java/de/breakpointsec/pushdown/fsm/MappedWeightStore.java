@@ -0,0 +1,297 @@
+
+package de.breakpointsec.pushdown.fsm;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.weights.LongSemiring;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.LongFunction;
+
+/**
+ * {@link WeightStore} for {@link LongSemiring}s that keeps the transitions and their weights off the heap, in an open addressing table in a memory
+ * mapped file. Only the dictionary of states and labels, which assigns the ids a transition is packed from, stays on the heap. As in
+ * {@link CompactAutomaton}, a transition is keyed by its start and target ids, packed into one {@code long}, and its label id, so ids use the full
+ * {@code int} range.
+ *
+ * This only moves the weights off the heap. A {@link WeightedAutomaton} that uses the store still keeps its {@link Transition}s and their indexes on
+ * the heap while it is saturated. Use {@link MappedAutomaton#copyOf(WeightedAutomaton, Path, LongFunction)} to keep a saturated automaton, with its
+ * adjacency lists, off the heap.
+ *
+ * The file can be reopened with {@link #open(Path, LongFunction, List, List)} if the dictionary, {@link #getStates()} and {@link #getLabels()}, was
+ * saved. Call {@link #close()} or {@link #flush()} before, to write all changes to the file. An automaton created with the reopened store contains its
+ * transitions again, without saturating.
+ *
+ * @param <L>
+ * @param <S>
+ * @param <W>
+ */
+public class MappedWeightStore<L, S, W extends LongSemiring> implements WeightStore<L, S, W>, Closeable {
+
+	private static final long MAGIC = 0x5044535745494748L;
+	private static final int HEADER_SIZE = 64;
+	private static final long INITIAL_CAPACITY = 1 << 10;
+
+	/*
+	 * A slot holds the packed state ids, the label id + 1 (0 marks an empty slot) and the weight.
+	 */
+	private static final int SLOT_SIZE = 24;
+	private static final int LABEL = 8;
+	private static final int VALUE = 16;
+
+	private final Path file;
+	private final LongFunction<W> valueOf;
+	private final SymbolTable<S> states = new SymbolTable<>();
+	private final SymbolTable<L> labels = new SymbolTable<>();
+
+	private MappedFile mapped;
+	private long capacity;
+	private long size;
+
+	/**
+	 * Creates an empty store, replacing {@code file} if it exists.
+	 */
+	public MappedWeightStore(Path file, LongFunction<W> valueOf) throws IOException {
+		this.file = file;
+		this.valueOf = valueOf;
+		this.mapped = create(file, INITIAL_CAPACITY);
+		this.capacity = INITIAL_CAPACITY;
+		writeHeader();
+	}
+
+	private MappedWeightStore(Path file, LongFunction<W> valueOf, MappedFile mapped) {
+		this.file = file;
+		this.valueOf = valueOf;
+		this.mapped = mapped;
+		this.capacity = mapped.getLong(8);
+		this.size = mapped.getLong(16);
+	}
+
+	/**
+	 * Reopens a store written by this class.
+	 *
+	 * @param file
+	 * @param valueOf
+	 * @param states the states of the dictionary, in the order of {@link #getStates()} when the store was closed
+	 * @param labels the labels of the dictionary, in the order of {@link #getLabels()} when the store was closed
+	 */
+	public static <L, S, W extends LongSemiring> MappedWeightStore<L, S, W> open(Path file, LongFunction<W> valueOf, List<? extends S> states,
+			List<? extends L> labels) throws IOException {
+		MappedFile mapped = MappedFile.open(file);
+		if (mapped.size() < HEADER_SIZE || mapped.getLong(0) != MAGIC || mapped.size() != HEADER_SIZE + mapped.getLong(8) * SLOT_SIZE) {
+			mapped.close();
+			throw new IOException(file + " is not a weight store");
+		}
+		MappedWeightStore<L, S, W> store = new MappedWeightStore<>(file, valueOf, mapped);
+		for (S s : states) {
+			store.states.intern(s);
+		}
+		for (L l : labels) {
+			store.labels.intern(l);
+		}
+		return store;
+	}
+
+	private static MappedFile create(Path file, long slots) throws IOException {
+		return MappedFile.create(file, HEADER_SIZE + slots * SLOT_SIZE);
+	}
+
+	private void writeHeader() {
+		mapped.putLong(0, MAGIC);
+		mapped.putLong(8, capacity);
+		mapped.putLong(16, size);
+	}
+
+	private static long offset(long slot) {
+		return HEADER_SIZE + slot * SLOT_SIZE;
+	}
+
+	private static void write(MappedFile to, long slot, long key, int storedLabel, long value) {
+		long offset = offset(slot);
+		to.putLong(offset, key);
+		to.putInt(offset + LABEL, storedLabel);
+		to.putLong(offset + VALUE, value);
+	}
+
+	private static long pack(int start, int target) {
+		return ((long) start << 32) | (target & 0xFFFFFFFFL);
+	}
+
+	private long home(long key, int label) {
+		long h = (key + label * 0xC2B2AE3D27D4EB4FL) * 0x9E3779B97F4A7C15L;
+		return (h >>> 32) & (capacity - 1);
+	}
+
+	private long find(long key, int label) {
+		long mask = capacity - 1;
+		for (long i = home(key, label);; i = (i + 1) & mask) {
+			long offset = offset(i);
+			int l = mapped.getInt(offset + LABEL);
+			if (l == 0 || l == label + 1 && mapped.getLong(offset) == key)
+				return i;
+		}
+	}
+
+	/**
+	 * @return the slot of {@code trans}, or -1 if it has no weight
+	 */
+	private long slotOf(Transition<L, S> trans) {
+		int start = states.indexOf(trans.getStart());
+		int label = labels.indexOf(trans.getLabel());
+		int target = states.indexOf(trans.getTarget());
+		if (start < 0 || label < 0 || target < 0)
+			return -1;
+		long i = find(pack(start, target), label);
+		return mapped.getInt(offset(i) + LABEL) == 0 ? -1 : i;
+	}
+
+	private Transition<L, S> transition(long slot) {
+		long offset = offset(slot);
+		long key = mapped.getLong(offset);
+		return new Transition<>(states.get((int) (key >>> 32)), labels.get(mapped.getInt(offset + LABEL) - 1), states.get((int) key));
+	}
+
+	@Override
+	public W get(Transition<L, S> trans) {
+		long i = slotOf(trans);
+		return i < 0 ? null : valueOf.apply(mapped.getLong(offset(i) + VALUE));
+	}
+
+	/**
+	 * Stores {@code weight}, or removes the weight of {@code trans} if it is null.
+	 */
+	@Override
+	public void put(Transition<L, S> trans, W weight) {
+		if (weight == null)
+			remove(trans);
+		else
+			putLong(trans, weight.longValue());
+	}
+
+	public void putLong(Transition<L, S> trans, long weight) {
+		long key = pack(states.intern(trans.getStart()), states.intern(trans.getTarget()));
+		int label = labels.intern(trans.getLabel());
+		long i = find(key, label);
+		if (mapped.getInt(offset(i) + LABEL) == 0) {
+			if (2 * (size + 1) > capacity) {
+				grow();
+				i = find(key, label);
+			}
+			size++;
+			mapped.putLong(16, size);
+		}
+		write(mapped, i, key, label + 1, weight);
+	}
+
+	/**
+	 * Rehashes into a table of twice the size in a new file, which then replaces the old one. The old file is unmapped.
+	 */
+	private void grow() {
+		Path next = file.resolveSibling(file.getFileName() + ".grow");
+		MappedFile old = mapped;
+		long oldCapacity = capacity;
+		try {
+			mapped = create(next, oldCapacity * 2);
+			capacity = oldCapacity * 2;
+			for (long slot = 0; slot < oldCapacity; slot++) {
+				long offset = offset(slot);
+				int label = old.getInt(offset + LABEL);
+				if (label != 0) {
+					long key = old.getLong(offset);
+					write(mapped, find(key, label - 1), key, label, old.getLong(offset + VALUE));
+				}
+			}
+			writeHeader();
+			old.close();
+			Files.move(next, file, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void remove(Transition<L, S> trans) {
+		long i = slotOf(trans);
+		if (i < 0)
+			return;
+		// Backward shift deletion, as in LongWeightStore
+		long mask = capacity - 1;
+		long gap = i;
+		for (long j = (i + 1) & mask; mapped.getInt(offset(j) + LABEL) != 0; j = (j + 1) & mask) {
+			long offset = offset(j);
+			long key = mapped.getLong(offset);
+			int label = mapped.getInt(offset + LABEL);
+			if (((j - home(key, label - 1)) & mask) >= ((j - gap) & mask)) {
+				write(mapped, gap, key, label, mapped.getLong(offset + VALUE));
+				gap = j;
+			}
+		}
+		write(mapped, gap, 0, 0, 0);
+		size--;
+		mapped.putLong(16, size);
+	}
+
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super Transition<L, S>, ? super W> action) {
+		for (long i = 0; i < capacity; i++) {
+			long offset = offset(i);
+			if (mapped.getInt(offset + LABEL) != 0)
+				action.accept(transition(i), valueOf.apply(mapped.getLong(offset + VALUE)));
+		}
+	}
+
+	/**
+	 * The states of the dictionary, indexed by their ids. Save them to reopen the store.
+	 */
+	public List<S> getStates() {
+		return states.symbols();
+	}
+
+	/**
+	 * The labels of the dictionary, indexed by their ids. Save them to reopen the store.
+	 */
+	public List<L> getLabels() {
+		return labels.symbols();
+	}
+
+	/**
+	 * Writes all changes to the file.
+	 */
+	public void flush() {
+		mapped.flush();
+	}
+
+	/**
+	 * Writes all changes to the file and unmaps it.
+	 */
+	@Override
+	public void close() throws IOException {
+		flush();
+		mapped.close();
+	}
+}
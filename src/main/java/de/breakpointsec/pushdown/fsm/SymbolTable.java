@@ -0,0 +1,109 @@
+
+package de.breakpointsec.pushdown.fsm;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assigns dense {@code int} ids, starting at 0, to distinct objects in the order they are first seen. Ids are never reused.
+ *
+ * @param <T>
+ */
+public final class SymbolTable<T> {
+
+	private Object[] symbols = new Object[16];
+	private int size;
+
+	/*
+	 * Open addressing table from symbol to id + 1, 0 marks an empty slot.
+	 */
+	private Object[] keys = new Object[32];
+	private int[] ids = new int[32];
+
+	/**
+	 * Returns the id of {@code symbol}, assigning the next free id if it has none yet.
+	 */
+	public int intern(T symbol) {
+		int i = find(symbol);
+		if (ids[i] != 0)
+			return ids[i] - 1;
+		if (size == symbols.length)
+			symbols = Arrays.copyOf(symbols, size * 2);
+		symbols[size] = symbol;
+		keys[i] = symbol;
+		ids[i] = ++size;
+		if (2 * size > keys.length)
+			rehash();
+		return size - 1;
+	}
+
+	/**
+	 * @return the id of {@code symbol}, or -1 if it has none
+	 */
+	public int indexOf(Object symbol) {
+		return ids[find(symbol)] - 1;
+	}
+
+	public T get(int id) {
+		if (id < 0 || id >= size)
+			throw new IndexOutOfBoundsException("No symbol " + id);
+		return (T) symbols[id];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Read-only view of all symbols, indexed by their ids.
+	 */
+	public List<T> symbols() {
+		return new AbstractList<T>() {
+			@Override
+			public T get(int index) {
+				return SymbolTable.this.get(index);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	private int find(Object symbol) {
+		int mask = keys.length - 1;
+		int h = symbol.hashCode() * 0x9E3779B9;
+		for (int i = (h ^ (h >>> 16)) & mask;; i = (i + 1) & mask) {
+			if (ids[i] == 0 || keys[i].equals(symbol))
+				return i;
+		}
+	}
+
+	private void rehash() {
+		keys = new Object[keys.length * 2];
+		ids = new int[keys.length];
+		for (int id = 0; id < size; id++) {
+			int i = find(symbols[id]);
+			keys[i] = symbols[id];
+			ids[i] = id + 1;
+		}
+	}
+}
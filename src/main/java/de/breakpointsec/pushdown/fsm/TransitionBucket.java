@@ -0,0 +1,89 @@
+
+package de.breakpointsec.pushdown.fsm;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * List of transitions that share a state and a label. Transitions are appended, removal copies the elements.
+ *
+ * Iterators work on a snapshot of the elements present when they were created, so a bucket can be iterated while saturation keeps adding transitions
+ * to it. Duplicates are not filtered here, the owning {@link WeightedAutomaton} only adds transitions that are new.
+ *
+ * @param <L>
+ * @param <S>
+ */
+class TransitionBucket<L, S> extends AbstractCollection<Transition<L, S>> {
+
+	private Object[] elements = new Object[2];
+	private int size;
+
+	void append(Transition<L, S> trans) {
+		if (size == elements.length) {
+			elements = Arrays.copyOf(elements, size * 2);
+		}
+		elements[size++] = trans;
+	}
+
+	/**
+	 * Removes {@code trans}, called by {@link WeightedAutomaton#removeTransition(Transition)}. The inherited {@link #remove(Object)} stays unsupported,
+	 * so the buckets handed out as views cannot be changed.
+	 */
+	boolean removeTransition(Transition<L, S> trans) {
+		for (int i = 0; i < size; i++) {
+			if (elements[i].equals(trans)) {
+				Object[] copy = new Object[Math.max(2, elements.length)];
+				System.arraycopy(elements, 0, copy, 0, i);
+				System.arraycopy(elements, i + 1, copy, i, size - i - 1);
+				elements = copy;
+				size--;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Iterator<Transition<L, S>> iterator() {
+		final Object[] snapshot = elements;
+		final int end = size;
+		return new Iterator<Transition<L, S>>() {
+			private int i = 0;
+
+			@Override
+			public boolean hasNext() {
+				return i < end;
+			}
+
+			@Override
+			public Transition<L, S> next() {
+				if (i >= end)
+					throw new NoSuchElementException();
+				return (Transition<L, S>) snapshot[i++];
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,40 @@
+
+package de.breakpointsec.pushdown.fsm;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.weights.Semiring;
+
+/**
+ * Notified whenever a weight is added to a transition of a {@link WeightedAutomaton} through {@link WeightedAutomaton#addTransition(Transition)},
+ * {@link WeightedAutomaton#addTransition(Transition, Semiring)} or {@link WeightedAutomaton#combineWeightForTransition(Transition, Semiring)}, even if
+ * the weight of the transition does not change.
+ *
+ * Weights set by saturation ({@link WeightedAutomaton#setWeightForTransition(Transition, Semiring)}) are not reported.
+ *
+ * @param <L>
+ * @param <S>
+ * @param <W>
+ */
+public interface TransitionListener<L, S, W extends Semiring> {
+
+	/**
+	 * @param trans the added or changed transition
+	 * @param weight the weight that was set or combined into the transition
+	 */
+	void transitionAdded(Transition<L, S> trans, W weight);
+}
@@ -0,0 +1,43 @@
+
+package de.breakpointsec.pushdown.fsm;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.weights.Semiring;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Storage of the transition weights of a {@link WeightedAutomaton}. The default keeps them in a hash map, {@link LongWeightStore} in a primitive array.
+ *
+ * @param <L>
+ * @param <S>
+ * @param <W>
+ */
+public interface WeightStore<L, S, W extends Semiring> {
+
+	/**
+	 * @return the weight of {@code trans}, or null if it has none
+	 */
+	W get(Transition<L, S> trans);
+
+	void put(Transition<L, S> trans, W weight);
+
+	void remove(Transition<L, S> trans);
+
+	void forEach(BiConsumer<? super Transition<L, S>, ? super W> action);
+}
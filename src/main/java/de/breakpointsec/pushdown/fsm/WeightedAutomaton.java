@@ -20,6 +20,7 @@ package de.breakpointsec.pushdown.fsm;
 import com.google.common.base.Joiner;
 import com.google.common.collect.*;
 import de.breakpointsec.pushdown.IllegalTransitionException;
+import de.breakpointsec.pushdown.weights.LongSemiring;
 import de.breakpointsec.pushdown.weights.Semiring;
 
 import java.util.*;
@@ -36,20 +37,37 @@ import java.util.*;
  * @param <W>
  */
 public abstract class WeightedAutomaton<L, S, W extends Semiring> {
-	private Map<Transition<L, S>, W> transitionToWeights = new HashMap<>();
+	private final WeightStore<L, S, W> transitionToWeights;
 	private Set<Transition<L, S>> transitions = new HashSet<>();
+	private final Set<Transition<L, S>> transitionsView = Collections.unmodifiableSet(transitions);
 	private Set<S> finalState = new HashSet<>();
 	private final S initialState;
 	protected Set<S> states = new HashSet<>();
 	private final Multimap<S, Transition<L, S>> transitionsOutOf = HashMultimap.create();
 	private final Multimap<S, Transition<L, S>> transitionsInto = HashMultimap.create();
+	private final Table<S, L, TransitionBucket<L, S>> transitionsOutOfByLabel = HashBasedTable.create();
+	private final Table<S, L, TransitionBucket<L, S>> transitionsIntoByLabel = HashBasedTable.create();
 	private WeightedAutomaton<L, S, W> initialAutomaton;
 	private Set<S> unbalancedStates = new HashSet<>();
 	private Map<Transition<L, S>, W> transitionsToFinalWeights = new HashMap<>();
+	private final List<TransitionListener<L, S, W>> listeners = new ArrayList<>(1);
 
 	public WeightedAutomaton(S initialState) {
+		this(initialState, new MapWeightStore<>());
+	}
+
+	/**
+	 * Transitions already in {@code weights}, for example of a reopened {@link MappedWeightStore}, become part of the automaton. Final states are not
+	 * stored and have to be added again.
+	 *
+	 * @param initialState
+	 * @param weights storage for the transition weights, for example a {@link LongWeightStore}
+	 */
+	public WeightedAutomaton(S initialState, WeightStore<L, S, W> weights) {
 		this.initialState = initialState;
+		this.transitionToWeights = weights;
 		this.unbalancedStates.add(initialState);
+		weights.forEach((t, w) -> indexTransition(t));
 	}
 
 	/**
@@ -76,23 +94,103 @@ public abstract class WeightedAutomaton<L, S, W extends Semiring> {
 	 */
 	public abstract L epsilon();
 
+	/**
+	 * Returns a read-only live view of all transitions of this automaton. Copy it before adding transitions while iterating over it.
+	 *
+	 * @return
+	 */
 	public Collection<Transition<L, S>> getTransitions() {
-		return Sets.newHashSet(transitions);
+		return transitionsView;
+	}
+
+	/**
+	 * Checks whether {@code trans} is part of this automaton without copying the transition set.
+	 *
+	 * @param trans
+	 * @return
+	 */
+	public boolean containsTransition(Transition<L, S> trans) {
+		return transitions.contains(trans);
 	}
 
 	public void addTransition(Transition<L, S> trans, W weight) {
-		transitionsOutOf.get(trans.getStart()).add(trans);
-		transitionsInto.get(trans.getTarget()).add(trans);
+		indexTransition(trans);
+		transitionToWeights.put(trans, weight);
+		notifyListeners(trans, weight);
+	}
+
+	/**
+	 * Removes {@code trans} and its weight. Collections returned by {@link #getTransitionsOutOf(Object, Object)} and
+	 * {@link #getTransitionsInto(Object, Object)} that are being iterated are not affected.
+	 *
+	 * @param trans
+	 * @return false if {@code trans} was not part of the automaton
+	 */
+	public boolean removeTransition(Transition<L, S> trans) {
+		if (!transitions.remove(trans))
+			return false;
+		transitionToWeights.remove(trans);
+		transitionsOutOf.remove(trans.getStart(), trans);
+		transitionsInto.remove(trans.getTarget(), trans);
+		transitionsOutOfByLabel.get(trans.getStart(), trans.getLabel()).removeTransition(trans);
+		transitionsIntoByLabel.get(trans.getTarget(), trans.getLabel()).removeTransition(trans);
+		return true;
+	}
+
+	public void addTransitionListener(TransitionListener<L, S, W> listener) {
+		listeners.add(listener);
+	}
+
+	public boolean removeTransitionListener(TransitionListener<L, S, W> listener) {
+		return listeners.remove(listener);
+	}
+
+	private void notifyListeners(Transition<L, S> trans, W weight) {
+		for (int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).transitionAdded(trans, weight);
+		}
+	}
+
+	/**
+	 * Returns the weight of {@code trans}. If the automaton does not contain {@code trans} yet, it is added without a weight and {@code null} is returned.
+	 *
+	 * This replaces the sequence of {@link #containsTransition(Transition)}, {@link #addTransition(Transition, Semiring)} and {@link #getWeightFor(Transition)}.
+	 *
+	 * @param trans
+	 * @return the current weight of {@code trans}, or {@code null} if it has just been added
+	 */
+	public W getOrInsertWeight(Transition<L, S> trans) {
+		if (indexTransition(trans)) {
+			return null;
+		}
+		return transitionToWeights.get(trans);
+	}
+
+	private boolean indexTransition(Transition<L, S> trans) {
+		if (!transitions.add(trans))
+			return false;
+		transitionsOutOf.put(trans.getStart(), trans);
+		transitionsInto.put(trans.getTarget(), trans);
+		bucket(transitionsOutOfByLabel, trans.getStart(), trans.getLabel()).append(trans);
+		bucket(transitionsIntoByLabel, trans.getTarget(), trans.getLabel()).append(trans);
 		states.add(trans.getTarget());
 		states.add(trans.getStart());
-		boolean added = transitions.add(trans);
-		transitionToWeights.put(trans, weight);
+		return true;
 	}
 
 	public boolean addTransition(Transition<L, S> trans) {
 		return combineWeightForTransition(trans, getOne());
 	}
 
+	private TransitionBucket<L, S> bucket(Table<S, L, TransitionBucket<L, S>> index, S s, L label) {
+		TransitionBucket<L, S> bucket = index.get(s, label);
+		if (bucket == null) {
+			bucket = new TransitionBucket<>();
+			index.put(s, label, bucket);
+		}
+		return bucket;
+	}
+
 	public S getInitialState() {
 		return initialState;
 	}
@@ -106,7 +204,9 @@ public abstract class WeightedAutomaton<L, S, W extends Semiring> {
 		s += "\tInitialStates:" + initialState + "\n";
 		s += "\tFinalStates:" + finalState + "\n";
 		s += "\tWeightToTransitions:\n\t\t";
-		s += Joiner.on("\n\t\t").join(transitionToWeights.entrySet());
+		List<String> weights = new ArrayList<>();
+		transitionToWeights.forEach((t, w) -> weights.add(t + "=" + w));
+		s += Joiner.on("\n\t\t").join(weights);
 
 		return s;
 	}
@@ -225,11 +325,7 @@ public abstract class WeightedAutomaton<L, S, W extends Semiring> {
 		if (trans.getStart().equals(trans.getTarget()) && trans.getLabel().equals(epsilon())) {
 			throw new IllegalTransitionException("Epsilon loop in state " + trans.getStart().toString());
 		}
-		transitionsOutOf.get(trans.getStart()).add(trans);
-		transitionsInto.get(trans.getTarget()).add(trans);
-		states.add(trans.getTarget());
-		states.add(trans.getStart());
-		boolean added = transitions.add(trans);
+		indexTransition(trans);
 		transitionToWeights.put(trans, weight);
 	}
 
@@ -239,21 +335,88 @@ public abstract class WeightedAutomaton<L, S, W extends Semiring> {
 		if (trans.getStart().equals(trans.getTarget()) && trans.getLabel().equals(epsilon())) {
 			return false;
 		}
-		transitionsOutOf.get(trans.getStart()).add(trans);
-		transitionsInto.get(trans.getTarget()).add(trans);
-		states.add(trans.getTarget());
-		states.add(trans.getStart());
-		boolean added = transitions.add(trans);
-		W oldWeight = transitionToWeights.get(trans);
-		W newWeight = (W) (oldWeight == null ? weight : oldWeight.combineWith(weight));
-		if (!newWeight.equals(oldWeight)) {
-			transitionToWeights.put(trans, newWeight);
+		boolean added = indexTransition(trans);
+		boolean changed = combine(trans, transitionToWeights.get(trans), weight);
+		notifyListeners(trans, weight);
+		return changed || added;
+	}
+
+	/**
+	 * Combines {@code weight} into the weight of {@code trans} and adds {@code trans} if it is new. Listeners are not notified.
+	 *
+	 * Nothing is allocated or compared if the current weight subsumes {@code weight} ({@link Semiring#leq(Semiring)}), and the current weight is updated in
+	 * place if it is an accumulator ({@link Semiring#accumulator()}).
+	 *
+	 * @param trans
+	 * @param weight
+	 * @return whether the weight of {@code trans} changed
+	 */
+	public boolean accumulateWeight(Transition<L, S> trans, W weight) throws IllegalTransitionException {
+		if (weight == null)
+			throw new IllegalArgumentException("Semiring must not be null!");
+		if (trans.getStart().equals(trans.getTarget()) && trans.getLabel().equals(epsilon())) {
+			throw new IllegalTransitionException("Epsilon loop in state " + trans.getStart().toString());
+		}
+		return combine(trans, getOrInsertWeight(trans), weight);
+	}
+
+	/**
+	 * {@link #accumulateWeight(Transition, Semiring)} on a plain value, for automata whose weights are kept in a {@link LongWeightStore}.
+	 *
+	 * @param trans
+	 * @param weight
+	 * @param semiring any weight of the semiring, provides combine on plain values
+	 * @return whether the weight of {@code trans} changed
+	 */
+	public boolean accumulateWeight(Transition<L, S> trans, long weight, LongSemiring semiring) throws IllegalTransitionException {
+		if (!(transitionToWeights instanceof LongWeightStore))
+			throw new IllegalStateException("Weights are not kept in a LongWeightStore");
+		if (trans.getStart().equals(trans.getTarget()) && trans.getLabel().equals(epsilon())) {
+			throw new IllegalTransitionException("Epsilon loop in state " + trans.getStart().toString());
+		}
+		indexTransition(trans);
+		return ((LongWeightStore<L, S, ?>) transitionToWeights).combineLong(trans, weight, semiring);
+	}
+
+	/**
+	 * The storage of the transition weights passed to the constructor.
+	 */
+	public WeightStore<L, S, W> getWeightStore() {
+		return transitionToWeights;
+	}
+
+	private boolean combine(Transition<L, S> trans, W oldWeight, W weight) {
+		if (oldWeight == null) {
+			W accumulator = (W) weight.accumulator();
+			transitionToWeights.put(trans, accumulator == null ? weight : accumulator);
 			return true;
 		}
-		return added;
+		if (weight == oldWeight || weight.leq(oldWeight))
+			return false;
+		if (oldWeight.isAccumulator())
+			return weight.combineInto(oldWeight);
+		W newWeight = (W) oldWeight.combineWith(weight);
+		if (newWeight.equals(oldWeight))
+			return false;
+		W accumulator = (W) newWeight.accumulator();
+		transitionToWeights.put(trans, accumulator == null ? newWeight : accumulator);
+		return true;
 	}
 
+	/**
+	 * The weight of {@code trans}, or null if it is not part of the automaton. Accumulators are returned as a {@link Semiring#snapshot()}, so the
+	 * result does not change when weights are combined later.
+	 */
 	public W getWeightFor(Transition<L, S> trans) {
+		W weight = transitionToWeights.get(trans);
+		return weight == null ? null : (W) weight.snapshot();
+	}
+
+	/**
+	 * The weight of {@code trans} as stored, which can be an accumulator that later combinations change in place. For saturation steps that use the
+	 * weight right away.
+	 */
+	public W getCurrentWeight(Transition<L, S> trans) {
 		return transitionToWeights.get(trans);
 	}
 
@@ -273,6 +436,32 @@ public abstract class WeightedAutomaton<L, S, W extends Semiring> {
 		return this.transitionsInto.get(s);
 	}
 
+	/**
+	 * Gets all transitions s~label~>q. The returned collection is read-only and may be iterated while transitions are added to the automaton, it then
+	 * covers the transitions present when iteration started.
+	 *
+	 * @param s
+	 * @param label
+	 * @return
+	 */
+	public Collection<Transition<L, S>> getTransitionsOutOf(S s, L label) {
+		TransitionBucket<L, S> bucket = transitionsOutOfByLabel.get(s, label);
+		return bucket == null ? Collections.emptyList() : bucket;
+	}
+
+	/**
+	 * Gets all transitions p~label~>s. The returned collection is read-only and may be iterated while transitions are added to the automaton, it then
+	 * covers the transitions present when iteration started.
+	 *
+	 * @param s
+	 * @param label
+	 * @return
+	 */
+	public Collection<Transition<L, S>> getTransitionsInto(S s, L label) {
+		TransitionBucket<L, S> bucket = transitionsIntoByLabel.get(s, label);
+		return bucket == null ? Collections.emptyList() : bucket;
+	}
+
 	/**
 	 * Gets targets q of the relation p~γ~>q.
 	 *
@@ -0,0 +1,35 @@
+
+package de.breakpointsec.pushdown.io;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads values of one type for {@link Snapshots}. A codec only sees each distinct value once per snapshot, so it does not need to share or
+ * deduplicate anything itself.
+ *
+ * @param <T>
+ */
+public interface Codec<T> {
+
+	void write(T value, DataOutput out) throws IOException;
+
+	T read(DataInput in) throws IOException;
+}
@@ -0,0 +1,86 @@
+
+package de.breakpointsec.pushdown.io;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.weights.LongSemiring;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.LongFunction;
+
+/**
+ * Codecs for common symbol and weight types.
+ */
+public final class Codecs {
+
+	private static final Codec<String> STRING = new Codec<String>() {
+		@Override
+		public void write(String value, DataOutput out) throws IOException {
+			out.writeUTF(value);
+		}
+
+		@Override
+		public String read(DataInput in) throws IOException {
+			return in.readUTF();
+		}
+	};
+
+	private static final Codec<Integer> INT = new Codec<Integer>() {
+		@Override
+		public void write(Integer value, DataOutput out) throws IOException {
+			out.writeInt(value);
+		}
+
+		@Override
+		public Integer read(DataInput in) throws IOException {
+			return in.readInt();
+		}
+	};
+
+	private Codecs() {
+	}
+
+	/**
+	 * Strings of up to 65535 bytes in modified UTF-8.
+	 */
+	public static Codec<String> strings() {
+		return STRING;
+	}
+
+	public static Codec<Integer> ints() {
+		return INT;
+	}
+
+	/**
+	 * Weights of a {@link LongSemiring}, for example {@code longSemiring(MinPlusSemiring::of)}.
+	 */
+	public static <W extends LongSemiring> Codec<W> longSemiring(LongFunction<W> valueOf) {
+		return new Codec<W>() {
+			@Override
+			public void write(W value, DataOutput out) throws IOException {
+				out.writeLong(value.longValue());
+			}
+
+			@Override
+			public W read(DataInput in) throws IOException {
+				return valueOf.apply(in.readLong());
+			}
+		};
+	}
+}
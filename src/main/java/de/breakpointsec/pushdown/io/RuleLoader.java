@@ -0,0 +1,284 @@
+
+package de.breakpointsec.pushdown.io;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.WPDS;
+import de.breakpointsec.pushdown.rules.NormalRule;
+import de.breakpointsec.pushdown.rules.PopRule;
+import de.breakpointsec.pushdown.rules.PushRule;
+import de.breakpointsec.pushdown.rules.Rule;
+import de.breakpointsec.pushdown.weights.Semiring;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * Loads rules from a UTF-8 text file with one rule per line:
+ *
+ * <pre>
+ * normal &lt;s1&gt; &lt;l1&gt; &lt;s2&gt; &lt;l2&gt; &lt;weight&gt;
+ * push &lt;s1&gt; &lt;l1&gt; &lt;s2&gt; &lt;l2&gt; &lt;callSite&gt; &lt;weight&gt;
+ * pop &lt;s1&gt; &lt;l1&gt; &lt;s2&gt; &lt;weight&gt;
+ * </pre>
+ *
+ * Tokens are separated by spaces or tabs. Empty lines and lines starting with {@code #} are skipped.
+ *
+ * The file is read in chunks of whole lines, which are parsed in parallel and added to the WPDS in file order with {@link WPDS#addRules(java.util.Collection)}.
+ * Every distinct token is converted to a state, location or weight only once, so equal symbols of different rules are the same object. Loading is not
+ * atomic: if a line is malformed, the rules of the chunks before it have already been added to the WPDS and stay there.
+ *
+ * @param <L> Control location
+ * @param <S> State
+ * @param <W> Semiring
+ */
+public class RuleLoader<L, S, W extends Semiring> {
+
+	private final Function<String, ? extends S> stateParser;
+	private final Function<String, ? extends L> locationParser;
+	private final Function<String, ? extends W> weightParser;
+
+	private final ConcurrentHashMap<String, S> states = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, L> locations = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, W> weights = new ConcurrentHashMap<>();
+
+	private int chunkSize = 1 << 22;
+	private int maxPendingChunks = 2 * Runtime.getRuntime().availableProcessors();
+
+	public RuleLoader(Function<String, ? extends S> stateParser, Function<String, ? extends L> locationParser, Function<String, ? extends W> weightParser) {
+		this.stateParser = stateParser;
+		this.locationParser = locationParser;
+		this.weightParser = weightParser;
+	}
+
+	/**
+	 * Bytes read per chunk, 4 MB by default. Lines longer than a chunk are supported.
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("Chunk size must be positive");
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Chunks that are read ahead while earlier ones are parsed or added, twice the number of processors by default.
+	 */
+	public void setMaxPendingChunks(int maxPendingChunks) {
+		if (maxPendingChunks < 1)
+			throw new IllegalArgumentException("At least one chunk must be pending");
+		this.maxPendingChunks = maxPendingChunks;
+	}
+
+	/**
+	 * Loads {@code file} into {@code pds}, parsing in the common fork/join pool.
+	 *
+	 * @return the number of rules that were new
+	 */
+	public int load(Path file, WPDS<L, S, W> pds) throws IOException {
+		return load(file, pds, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Loads {@code file} into {@code pds}, parsing on {@code executor}.
+	 *
+	 * @return the number of rules that were new
+	 * @throws IOException if the file cannot be read or contains a malformed line, including lines the parsers reject with a RuntimeException. Chunks
+	 *         already added to {@code pds} stay there.
+	 */
+	public int load(Path file, WPDS<L, S, W> pds, Executor executor) throws IOException {
+		Deque<CompletableFuture<List<Rule<L, S, W>>>> pending = new ArrayDeque<>();
+		try {
+			int added = readChunks(file, pds, executor, pending);
+			while (!pending.isEmpty()) {
+				added += pds.addRules(join(pending.poll()));
+			}
+			return added;
+		} finally {
+			// After a failure, chunks that have not started parsing are skipped
+			for (CompletableFuture<List<Rule<L, S, W>>> future : pending) {
+				future.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Reads {@code file} into chunks that are parsed on {@code executor}, adding the oldest chunk to {@code pds} whenever too many are pending.
+	 *
+	 * @return the number of rules that were new
+	 */
+	private int readChunks(Path file, WPDS<L, S, W> pds, Executor executor, Deque<CompletableFuture<List<Rule<L, S, W>>>> pending) throws IOException {
+		int added = 0;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(chunkSize);
+			int line = 1;
+			boolean eof = false;
+			while (!eof) {
+				eof = channel.read(buffer) < 0;
+				if (!eof && buffer.hasRemaining())
+					continue;
+				buffer.flip();
+				int end = eof ? buffer.limit() : lastLineEnd(buffer);
+				if (end == 0 && !eof) {
+					// No line ends in this chunk
+					buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer);
+					continue;
+				}
+				byte[] chunk = new byte[end];
+				buffer.get(chunk);
+				buffer.compact();
+				int firstLine = line;
+				line += countLines(chunk);
+				pending.add(CompletableFuture.supplyAsync(() -> parse(chunk, firstLine), executor));
+				if (pending.size() >= maxPendingChunks)
+					added += pds.addRules(join(pending.poll()));
+			}
+		}
+		return added;
+	}
+
+	private static int lastLineEnd(ByteBuffer buffer) {
+		for (int i = buffer.limit() - 1; i >= 0; i--) {
+			if (buffer.get(i) == '\n')
+				return i + 1;
+		}
+		return 0;
+	}
+
+	private static int countLines(byte[] chunk) {
+		int lines = 0;
+		for (byte b : chunk) {
+			if (b == '\n')
+				lines++;
+		}
+		return lines;
+	}
+
+	private static <T> T join(CompletableFuture<T> future) throws IOException {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof UncheckedIOException)
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * Parses the lines of a chunk.
+	 *
+	 * @param firstLine number of the first line in the file, for error messages
+	 */
+	private List<Rule<L, S, W>> parse(byte[] chunk, int firstLine) {
+		String text = new String(chunk, StandardCharsets.UTF_8);
+		List<Rule<L, S, W>> rules = new ArrayList<>();
+		String[] tokens = new String[8];
+		int line = firstLine;
+		int start = 0;
+		while (start < text.length()) {
+			int end = text.indexOf('\n', start);
+			if (end < 0)
+				end = text.length();
+			int n = tokenize(text, start, end, tokens);
+			if (n > 0 && tokens[0].charAt(0) != '#') {
+				try {
+					rules.add(rule(tokens, n, line));
+				} catch (UncheckedIOException e) {
+					throw e;
+				} catch (RuntimeException e) {
+					// Thrown by the state, location or weight parser
+					throw new UncheckedIOException(new IOException("Line " + line + ": " + e, e));
+				}
+			}
+			start = end + 1;
+			line++;
+		}
+		return rules;
+	}
+
+	/**
+	 * Splits {@code text[start, end)} at spaces and tabs, ignoring a trailing carriage return.
+	 *
+	 * @return the number of tokens, at most {@code tokens.length + 1} to detect lines that are too long
+	 */
+	private static int tokenize(String text, int start, int end, String[] tokens) {
+		int n = 0;
+		int i = start;
+		while (i < end) {
+			char c = text.charAt(i);
+			if (c == ' ' || c == '\t' || c == '\r') {
+				i++;
+				continue;
+			}
+			int tokenStart = i;
+			while (i < end && (c = text.charAt(i)) != ' ' && c != '\t' && c != '\r') {
+				i++;
+			}
+			if (n == tokens.length)
+				return n + 1;
+			tokens[n++] = text.substring(tokenStart, i);
+		}
+		return n;
+	}
+
+	private Rule<L, S, W> rule(String[] tokens, int n, int line) {
+		switch (tokens[0]) {
+		case "normal":
+			expect(n, 6, line);
+			return new NormalRule<>(state(tokens[1]), location(tokens[2]), state(tokens[3]), location(tokens[4]), weight(tokens[5]));
+		case "push":
+			expect(n, 7, line);
+			return new PushRule<>(state(tokens[1]), location(tokens[2]), state(tokens[3]), location(tokens[4]), location(tokens[5]), weight(tokens[6]));
+		case "pop":
+			expect(n, 5, line);
+			return new PopRule<>(state(tokens[1]), location(tokens[2]), state(tokens[3]), weight(tokens[4]));
+		default:
+			throw new UncheckedIOException(new IOException("Line " + line + ": unknown rule kind " + tokens[0]));
+		}
+	}
+
+	private static void expect(int n, int expected, int line) {
+		if (n != expected)
+			throw new UncheckedIOException(new IOException("Line " + line + ": expected " + (expected - 1) + " arguments"));
+	}
+
+	private S state(String token) {
+		return states.computeIfAbsent(token, stateParser);
+	}
+
+	private L location(String token) {
+		return locations.computeIfAbsent(token, locationParser);
+	}
+
+	private W weight(String token) {
+		return weights.computeIfAbsent(token, weightParser);
+	}
+}
@@ -0,0 +1,275 @@
+
+package de.breakpointsec.pushdown.io;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.WPDS;
+import de.breakpointsec.pushdown.fsm.SymbolTable;
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.rules.NormalRule;
+import de.breakpointsec.pushdown.rules.PopRule;
+import de.breakpointsec.pushdown.rules.PushRule;
+import de.breakpointsec.pushdown.rules.Rule;
+import de.breakpointsec.pushdown.weights.Semiring;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Binary snapshots of the rules of a {@link WPDS} and of (saturated) {@link WeightedAutomaton}s, to skip adding rules and saturating again on startup.
+ *
+ * A snapshot starts with a magic number and a format version, followed by symbol tables of the states, labels and weights, each distinct value written
+ * once by its {@link Codec}. Rules and transitions are then written as variable length integer ids into these tables. Reading streams the data and
+ * builds the objects directly.
+ *
+ * Snapshots are written to a {@link DataOutput} and read from a {@link DataInput}, which are neither buffered nor closed here. Wrap a buffered stream,
+ * for example {@code new DataInputStream(new BufferedInputStream(in))}. Reading consumes exactly one snapshot, so several snapshots, or other data,
+ * can follow each other in one stream. A snapshot that refers to symbols it does not contain is rejected with an {@link IOException}.
+ */
+public final class Snapshots {
+
+	private static final int RULES_MAGIC = 0x57504453;
+	private static final int AUTOMATON_MAGIC = 0x57464131;
+	private static final int VERSION = 1;
+
+	private Snapshots() {
+	}
+
+	/**
+	 * Writes the rules returned by {@link WPDS#getAllRules()}, the added rules without the ones of a rule provider, as {@link WPDS#compile()} does.
+	 */
+	public static <L, S, W extends Semiring> void writeRules(WPDS<L, S, W> pds, DataOutput data, Codec<? super S> stateCodec, Codec<? super L> labelCodec,
+			Codec<? super W> weightCodec) throws IOException {
+		SymbolTable<S> states = new SymbolTable<>();
+		SymbolTable<L> labels = new SymbolTable<>();
+		SymbolTable<W> weights = new SymbolTable<>();
+		List<NormalRule<L, S, W>> normalRules = new ArrayList<>();
+		List<PopRule<L, S, W>> popRules = new ArrayList<>();
+		List<PushRule<L, S, W>> pushRules = new ArrayList<>();
+		for (Rule<L, S, W> r : pds.getAllRules()) {
+			if (r instanceof PushRule)
+				pushRules.add((PushRule<L, S, W>) r);
+			else if (r instanceof PopRule)
+				popRules.add((PopRule<L, S, W>) r);
+			else
+				normalRules.add((NormalRule<L, S, W>) r);
+		}
+		int[] normal = new int[5 * normalRules.size()];
+		int i = 0;
+		for (NormalRule<L, S, W> r : normalRules) {
+			normal[i++] = states.intern(r.getS1());
+			normal[i++] = labels.intern(r.getL1());
+			normal[i++] = states.intern(r.getS2());
+			normal[i++] = labels.intern(r.getL2());
+			normal[i++] = weights.intern(r.getWeight());
+		}
+		int[] pop = new int[4 * popRules.size()];
+		i = 0;
+		for (PopRule<L, S, W> r : popRules) {
+			pop[i++] = states.intern(r.getS1());
+			pop[i++] = labels.intern(r.getL1());
+			pop[i++] = states.intern(r.getS2());
+			pop[i++] = weights.intern(r.getWeight());
+		}
+		int[] push = new int[6 * pushRules.size()];
+		i = 0;
+		for (PushRule<L, S, W> r : pushRules) {
+			push[i++] = states.intern(r.getS1());
+			push[i++] = labels.intern(r.getL1());
+			push[i++] = states.intern(r.getS2());
+			push[i++] = labels.intern(r.getL2());
+			push[i++] = labels.intern(r.getCallSite());
+			push[i++] = weights.intern(r.getWeight());
+		}
+
+		data.writeInt(RULES_MAGIC);
+		data.writeInt(VERSION);
+		writeSymbols(data, states, stateCodec);
+		writeSymbols(data, labels, labelCodec);
+		writeSymbols(data, weights, weightCodec);
+		writeIds(data, normal);
+		writeIds(data, pop);
+		writeIds(data, push);
+	}
+
+	/**
+	 * Adds the rules of a snapshot written by {@link #writeRules(WPDS, DataOutput, Codec, Codec, Codec)} to {@code pds}, all at once with
+	 * {@link WPDS#addRules(java.util.Collection)}.
+	 *
+	 * @return {@code pds}
+	 */
+	public static <L, S, W extends Semiring, P extends WPDS<L, S, W>> P readRules(DataInput data, P pds, Codec<? extends S> stateCodec,
+			Codec<? extends L> labelCodec, Codec<? extends W> weightCodec) throws IOException {
+		checkHeader(data, RULES_MAGIC);
+		List<S> states = readSymbols(data, stateCodec);
+		List<L> labels = readSymbols(data, labelCodec);
+		List<W> weights = readSymbols(data, weightCodec);
+		int[] normal = readIds(data, 5);
+		int[] pop = readIds(data, 4);
+		int[] push = readIds(data, 6);
+		List<Rule<L, S, W>> rules = new ArrayList<>(normal.length / 5 + pop.length / 4 + push.length / 6);
+		for (int i = 0; i < normal.length; i += 5) {
+			rules.add(new NormalRule<>(symbol(states, normal[i]), symbol(labels, normal[i + 1]), symbol(states, normal[i + 2]), symbol(labels, normal[i + 3]),
+					symbol(weights, normal[i + 4])));
+		}
+		for (int i = 0; i < pop.length; i += 4) {
+			rules.add(new PopRule<>(symbol(states, pop[i]), symbol(labels, pop[i + 1]), symbol(states, pop[i + 2]), symbol(weights, pop[i + 3])));
+		}
+		for (int i = 0; i < push.length; i += 6) {
+			rules.add(new PushRule<>(symbol(states, push[i]), symbol(labels, push[i + 1]), symbol(states, push[i + 2]), symbol(labels, push[i + 3]),
+					symbol(labels, push[i + 4]), symbol(weights, push[i + 5])));
+		}
+		pds.addRules(rules);
+		return pds;
+	}
+
+	/**
+	 * Writes the transitions, weights, initial and final states of {@code fa}.
+	 */
+	public static <L, S, W extends Semiring> void writeAutomaton(WeightedAutomaton<L, S, W> fa, DataOutput data, Codec<? super S> stateCodec,
+			Codec<? super L> labelCodec, Codec<? super W> weightCodec) throws IOException {
+		SymbolTable<S> states = new SymbolTable<>();
+		SymbolTable<L> labels = new SymbolTable<>();
+		SymbolTable<W> weights = new SymbolTable<>();
+		int initial = states.intern(fa.getInitialState());
+		int[] finals = new int[fa.getFinalState().size()];
+		int i = 0;
+		for (S s : fa.getFinalState()) {
+			finals[i++] = states.intern(s);
+		}
+		int[] transitions = new int[4 * fa.getTransitions().size()];
+		i = 0;
+		for (Transition<L, S> t : fa.getTransitions()) {
+			transitions[i++] = states.intern(t.getStart());
+			transitions[i++] = labels.intern(t.getLabel());
+			transitions[i++] = states.intern(t.getTarget());
+			transitions[i++] = weights.intern(fa.getWeightFor(t));
+		}
+
+		data.writeInt(AUTOMATON_MAGIC);
+		data.writeInt(VERSION);
+		writeSymbols(data, states, stateCodec);
+		writeSymbols(data, labels, labelCodec);
+		writeSymbols(data, weights, weightCodec);
+		writeVarInt(data, initial);
+		writeIds(data, finals);
+		writeIds(data, transitions);
+	}
+
+	/**
+	 * Reads a snapshot written by {@link #writeAutomaton(WeightedAutomaton, DataOutput, Codec, Codec, Codec)}.
+	 *
+	 * @param factory creates an empty automaton with the given initial state
+	 */
+	public static <L, S, W extends Semiring, A extends WeightedAutomaton<L, S, W>> A readAutomaton(DataInput data, Function<? super S, A> factory,
+			Codec<? extends S> stateCodec, Codec<? extends L> labelCodec, Codec<? extends W> weightCodec) throws IOException {
+		checkHeader(data, AUTOMATON_MAGIC);
+		List<S> states = readSymbols(data, stateCodec);
+		List<L> labels = readSymbols(data, labelCodec);
+		List<W> weights = readSymbols(data, weightCodec);
+		A fa = factory.apply(symbol(states, readVarInt(data)));
+		for (int s : readIds(data, 1)) {
+			fa.addFinalState(symbol(states, s));
+		}
+		int[] transitions = readIds(data, 4);
+		for (int i = 0; i < transitions.length; i += 4) {
+			fa.addTransition(new Transition<>(symbol(states, transitions[i]), symbol(labels, transitions[i + 1]), symbol(states, transitions[i + 2])),
+					symbol(weights, transitions[i + 3]));
+		}
+		return fa;
+	}
+
+	private static void checkHeader(DataInput in, int magic) throws IOException {
+		if (in.readInt() != magic)
+			throw new IOException("Not a snapshot of the expected kind");
+		int version = in.readInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported snapshot version " + version);
+	}
+
+	private static <T> void writeSymbols(DataOutput out, SymbolTable<T> symbols, Codec<? super T> codec) throws IOException {
+		writeVarInt(out, symbols.size());
+		for (T symbol : symbols.symbols()) {
+			codec.write(symbol, out);
+		}
+	}
+
+	private static <T> List<T> readSymbols(DataInput in, Codec<? extends T> codec) throws IOException {
+		int n = readVarInt(in);
+		if (n < 0)
+			throw new IOException("Corrupt snapshot: " + n + " symbols");
+		List<T> symbols = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			symbols.add(codec.read(in));
+		}
+		return symbols;
+	}
+
+	private static void writeIds(DataOutput out, int[] ids) throws IOException {
+		writeVarInt(out, ids.length);
+		for (int id : ids) {
+			writeVarInt(out, id);
+		}
+	}
+
+	/**
+	 * Reads ids that come in groups of {@code group}, one group per rule or transition.
+	 */
+	private static int[] readIds(DataInput in, int group) throws IOException {
+		int n = readVarInt(in);
+		if (n < 0 || n % group != 0)
+			throw new IOException("Corrupt snapshot: " + n + " ids in groups of " + group);
+		int[] ids = new int[n];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = readVarInt(in);
+		}
+		return ids;
+	}
+
+	private static <T> T symbol(List<T> symbols, int id) throws IOException {
+		if (id < 0 || id >= symbols.size())
+			throw new IOException("Corrupt snapshot: no symbol " + id + " of " + symbols.size());
+		return symbols.get(id);
+	}
+
+	/*
+	 * Unsigned LEB128: seven bits per byte, the high bit marks that more bytes follow.
+	 */
+	private static void writeVarInt(DataOutput out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(DataInput in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.readByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed variable length integer");
+	}
+}
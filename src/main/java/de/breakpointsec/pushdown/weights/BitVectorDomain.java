@@ -0,0 +1,108 @@
+
+package de.breakpointsec.pushdown.weights;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.util.BitSet;
+
+/**
+ * A set of dataflow facts numbered 0 to size - 1, and the factory for the {@link GenKillSemiring} weights over it.
+ *
+ * All weights are interned, so equal weights of a domain are usually the same object and a pushdown system with many rules shares few of them.
+ */
+public final class BitVectorDomain {
+
+	private final int size;
+	private final int words;
+	private final Interner<GenKillSemiring> interner = Interners.newWeakInterner();
+	private final GenKillSemiring one;
+	private final GenKillSemiring zero;
+
+	public BitVectorDomain(int size) {
+		if (size < 0)
+			throw new IllegalArgumentException("Negative size " + size);
+		this.size = size;
+		this.words = (size + 63) >>> 6;
+		this.one = intern(new long[2 * words]);
+		this.zero = new GenKillSemiring(this, new long[0]);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	int words() {
+		return words;
+	}
+
+	/**
+	 * The identity function.
+	 */
+	public GenKillSemiring one() {
+		return one;
+	}
+
+	/**
+	 * No path, annihilates {@link GenKillSemiring#extendWith(Semiring)}.
+	 */
+	public GenKillSemiring zero() {
+		return zero;
+	}
+
+	/**
+	 * The function x -> (x \ kill) u gen.
+	 *
+	 * @param gen
+	 * @param kill
+	 * @return
+	 */
+	public GenKillSemiring genKill(BitSet gen, BitSet kill) {
+		if (gen.length() > size || kill.length() > size)
+			throw new IllegalArgumentException("Fact out of range, domain size is " + size);
+		long[] bits = new long[2 * words];
+		long[] g = gen.toLongArray();
+		long[] k = kill.toLongArray();
+		System.arraycopy(g, 0, bits, 0, g.length);
+		for (int i = 0; i < k.length; i++) {
+			bits[words + i] = k[i] & ~bits[i];
+		}
+		return intern(bits);
+	}
+
+	public GenKillSemiring gen(int... facts) {
+		return genKill(toBitSet(facts), new BitSet());
+	}
+
+	public GenKillSemiring kill(int... facts) {
+		return genKill(new BitSet(), toBitSet(facts));
+	}
+
+	private static BitSet toBitSet(int... facts) {
+		BitSet set = new BitSet();
+		for (int fact : facts) {
+			set.set(fact);
+		}
+		return set;
+	}
+
+	GenKillSemiring intern(long[] bits) {
+		return interner.intern(new GenKillSemiring(this, bits));
+	}
+}
@@ -0,0 +1,114 @@
+
+package de.breakpointsec.pushdown.weights;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+/**
+ * Counts events along a path up to a bound and keeps the smallest count: (min, +) truncated at {@code bound}. Zero (no path) is represented by
+ * {@code Long.MAX_VALUE} and one is 0.
+ *
+ * Every weight lies in [0, bound] or is zero, so saturation always terminates, also on cycles. Weights with different bounds must not be mixed.
+ */
+public final class BoundedCountingSemiring extends LongSemiring {
+
+	public static final long NONE = Long.MAX_VALUE;
+
+	private final long bound;
+
+	private BoundedCountingSemiring(long value, long bound) {
+		super(value);
+		this.bound = bound;
+	}
+
+	/**
+	 * @param value count, values above {@code bound} are cut to {@code bound}
+	 * @param bound non-negative, smaller than {@link #NONE}
+	 */
+	public static BoundedCountingSemiring of(long value, long bound) {
+		if (bound < 0 || bound >= NONE)
+			throw new IllegalArgumentException("Bound out of range: " + bound);
+		return new BoundedCountingSemiring(value == NONE ? NONE : Math.min(value, bound), bound);
+	}
+
+	public static BoundedCountingSemiring one(long bound) {
+		return of(0, bound);
+	}
+
+	public static BoundedCountingSemiring zero(long bound) {
+		return of(NONE, bound);
+	}
+
+	public static long extend(long a, long b, long bound) {
+		if (a == NONE || b == NONE)
+			return NONE;
+		return Math.min(saturatedAdd(a, b), bound);
+	}
+
+	public static long combine(long a, long b) {
+		return Math.min(a, b);
+	}
+
+	public long getBound() {
+		return bound;
+	}
+
+	@Override
+	public long extendValues(long a, long b) {
+		return extend(a, b, bound);
+	}
+
+	@Override
+	public long combineValues(long a, long b) {
+		return combine(a, b);
+	}
+
+	@Override
+	public Semiring extendWith(Semiring other) {
+		BoundedCountingSemiring o = (BoundedCountingSemiring) other;
+		if (o.value == 0 || value == NONE || value == bound && o.value != NONE)
+			return this;
+		if (value == 0 || o.value == NONE)
+			return o;
+		return new BoundedCountingSemiring(extend(value, o.value, bound), bound);
+	}
+
+	@Override
+	public Semiring combineWith(Semiring other) {
+		BoundedCountingSemiring o = (BoundedCountingSemiring) other;
+		return o.value < value ? o : this;
+	}
+
+	@Override
+	public boolean leq(Semiring other) {
+		return ((BoundedCountingSemiring) other).value <= value;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * super.hashCode() + Long.hashCode(bound);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return super.equals(obj) && ((BoundedCountingSemiring) obj).bound == bound;
+	}
+
+	@Override
+	public String toString() {
+		return value == NONE ? "<NONE>" : value == bound ? ">=" + bound : Long.toString(value);
+	}
+}
@@ -17,58 +17,74 @@ package de.breakpointsec.pushdown.weights;
  * #L%
  */
 
-import java.util.HashSet;
-import java.util.Set;
-
+/**
+ * Collects the statements along a data-flow path. The statement sets are {@link PersistentSet}s, so extending a path shares the sets of both operands and
+ * comparing weights that share their sets is a pointer check.
+ *
+ * An {@link #accumulator()} replaces its sets when a weight is combined into it, instead of allocating a new weight.
+ *
+ * @param <Statement>
+ */
 public class DataFlowPathSemiring<Statement> extends Semiring<String> {
 
-	private static DataFlowPathSemiring one;
-	private static DataFlowPathSemiring zero;
+	private static final DataFlowPathSemiring one = new DataFlowPathSemiring("<ONE>");
+	private static final DataFlowPathSemiring zero = new DataFlowPathSemiring("<ZERO>");
 
 	/**
 	 * This set keeps track of all statement that use an alias from source to sink.
 	 */
-	private Set<Statement> allStatements;
+	private PersistentSet<Statement> allStatements;
 
 	/**
 	 * A subset of {@link #allStatements} that lists only the last usage of a variable. When data-flow at branches is joined, the set can contain multiple statement that
 	 * use the variable
 	 */
-	private Set<Statement> lastStatements;
+	private PersistentSet<Statement> lastStatements;
 
 	private String rep;
 
+	private final boolean accumulator;
+
 	private DataFlowPathSemiring(String rep) {
 		this.rep = rep;
+		this.accumulator = false;
 	}
 
-	private DataFlowPathSemiring(Set<Statement> allStatement, Set<Statement> lastStatements) {
+	private DataFlowPathSemiring(PersistentSet<Statement> allStatement, PersistentSet<Statement> lastStatements) {
+		this(allStatement, lastStatements, false);
+	}
+
+	private DataFlowPathSemiring(PersistentSet<Statement> allStatement, PersistentSet<Statement> lastStatements, boolean accumulator) {
 		this.allStatements = allStatement;
 		this.lastStatements = lastStatements;
+		this.accumulator = accumulator;
 	}
 
 	public DataFlowPathSemiring(Statement relevantStatement) {
-		allStatements = new HashSet<>();
-		lastStatements = new HashSet<>();
-		allStatements.add(relevantStatement);
-		lastStatements.add(relevantStatement);
+		allStatements = PersistentSet.of(relevantStatement);
+		lastStatements = allStatements;
+		accumulator = false;
 	}
 
 	@Override
 	public Semiring extendWith(Semiring o) {
 		if (!(o instanceof DataFlowPathSemiring))
 			throw new RuntimeException("Cannot extend to different types of weight!");
-		DataFlowPathSemiring other = (DataFlowPathSemiring) o;
-		if (other.equals(one()))
+		if (accumulator)
+			return snapshot().extendWith(o);
+		DataFlowPathSemiring other = ((DataFlowPathSemiring) o).snapshot();
+		if (other == one())
 			return this;
-		if (this.equals(one()))
+		if (this == one())
 			return other;
-		if (other.equals(zero()) || this.equals(zero())) {
+		if (other == zero() || this == zero()) {
 			return zero();
 		}
-		Set<Statement> newAllStatements = new HashSet<>();
-		newAllStatements.addAll(allStatements);
-		newAllStatements.addAll(other.allStatements);
+		PersistentSet<Statement> newAllStatements = allStatements.union(other.allStatements);
+		if (newAllStatements == other.allStatements)
+			return other;
+		if (newAllStatements == allStatements && other.lastStatements.equals(lastStatements))
+			return this;
 		return new DataFlowPathSemiring(newAllStatements, other.lastStatements);
 	}
 
@@ -77,20 +93,85 @@ public class DataFlowPathSemiring<Statement> extends Semiring<String> {
 		return extendWith(other);
 	}
 
+	/**
+	 * True if this is one, {@code other} is zero, or {@code other} contains all statements of this path and ends with the same statements. Combine keeps the
+	 * last statements of its argument, so the check holds for both orders of combination.
+	 */
+	@Override
+	public boolean leq(Semiring o) {
+		DataFlowPathSemiring other = (DataFlowPathSemiring) o;
+		if (isOne())
+			return true;
+		if (other.isOne())
+			return false;
+		if (isZero() || other.isZero())
+			return other.isZero();
+		return (allStatements == other.allStatements
+				|| allStatements.size() <= other.allStatements.size() && other.allStatements.containsAll(allStatements))
+				&& lastStatements.equals(other.lastStatements);
+	}
+
+	/**
+	 * A copy that shares the statement sets, or null for one and zero.
+	 */
+	@Override
+	public Semiring accumulator() {
+		return rep != null ? null : new DataFlowPathSemiring(allStatements, lastStatements, true);
+	}
+
+	@Override
+	public boolean isAccumulator() {
+		return accumulator;
+	}
+
+	@Override
+	public boolean combineInto(Semiring t) {
+		DataFlowPathSemiring target = (DataFlowPathSemiring) t;
+		if (isOne() || target.isZero())
+			return false;
+		if (isZero()) {
+			target.allStatements = null;
+			target.lastStatements = null;
+			target.rep = rep;
+			return true;
+		}
+		PersistentSet<Statement> newAllStatements = target.allStatements.union(allStatements);
+		boolean changed = newAllStatements != target.allStatements || !lastStatements.equals(target.lastStatements);
+		target.allStatements = newAllStatements;
+		target.lastStatements = lastStatements;
+		return changed;
+	}
+
+	private boolean isOne() {
+		return one.rep.equals(rep);
+	}
+
+	private boolean isZero() {
+		return zero.rep.equals(rep);
+	}
+
+	/**
+	 * A weight with the current value of an accumulator, this weight otherwise.
+	 */
+	@Override
+	public DataFlowPathSemiring snapshot() {
+		if (!accumulator)
+			return this;
+		if (isZero())
+			return zero();
+		return new DataFlowPathSemiring(allStatements, lastStatements);
+	}
+
 	@Override
 	public String value() {
 		return this.rep;
 	}
 
 	public static DataFlowPathSemiring one() {
-		if (one == null)
-			one = new DataFlowPathSemiring("<ONE>");
 		return one;
 	}
 
 	public static DataFlowPathSemiring zero() {
-		if (zero == null)
-			zero = new DataFlowPathSemiring("<ZERO>");
 		return zero;
 	}
 
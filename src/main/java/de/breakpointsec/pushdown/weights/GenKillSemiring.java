@@ -0,0 +1,223 @@
+
+package de.breakpointsec.pushdown.weights;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Gen/kill functions x -> (x \ kill) u gen over the facts of a {@link BitVectorDomain}, for bit-vector dataflow problems such as reaching definitions or
+ * taint. Extend composes two functions (this one first), combine is their pointwise union.
+ *
+ * The gen and kill sets are stored as words of one {@code long[]} and all operations work word by word. When the result equals one of the operands, that
+ * operand is returned without allocating, other results are interned by the domain. Weights of different domains must not be mixed.
+ *
+ * An {@link #accumulator()} owns a copy of the words and combines into them in place.
+ */
+public final class GenKillSemiring extends Semiring<BitSet> {
+
+	private final BitVectorDomain domain;
+
+	/*
+	 * The gen words followed by the kill words. Kill never contains a fact of gen, so equal functions have equal bits. Empty for zero.
+	 */
+	private final long[] bits;
+	private final int hash;
+	private final boolean accumulator;
+
+	GenKillSemiring(BitVectorDomain domain, long[] bits) {
+		this(domain, bits, false);
+	}
+
+	private GenKillSemiring(BitVectorDomain domain, long[] bits, boolean accumulator) {
+		this.domain = domain;
+		this.bits = bits;
+		this.hash = accumulator ? 0 : Arrays.hashCode(bits);
+		this.accumulator = accumulator;
+	}
+
+	public BitVectorDomain getDomain() {
+		return domain;
+	}
+
+	@Override
+	public Semiring extendWith(Semiring o) {
+		GenKillSemiring other = (GenKillSemiring) o;
+		GenKillSemiring zero = domain.zero();
+		if (this == zero || other == zero)
+			return zero;
+		int words = domain.words();
+		long diffThis = 0;
+		long diffOther = 0;
+		for (int i = 0; i < words; i++) {
+			long gen = bits[i] & ~other.bits[words + i] | other.bits[i];
+			long kill = (bits[words + i] | other.bits[words + i]) & ~gen;
+			diffThis |= (gen ^ bits[i]) | (kill ^ bits[words + i]);
+			diffOther |= (gen ^ other.bits[i]) | (kill ^ other.bits[words + i]);
+		}
+		if (diffThis == 0)
+			return snapshot();
+		if (diffOther == 0)
+			return other.snapshot();
+		long[] result = new long[2 * words];
+		for (int i = 0; i < words; i++) {
+			long gen = bits[i] & ~other.bits[words + i] | other.bits[i];
+			result[i] = gen;
+			result[words + i] = (bits[words + i] | other.bits[words + i]) & ~gen;
+		}
+		return domain.intern(result);
+	}
+
+	@Override
+	public Semiring combineWith(Semiring o) {
+		GenKillSemiring other = (GenKillSemiring) o;
+		GenKillSemiring zero = domain.zero();
+		if (other == zero)
+			return snapshot();
+		if (this == zero)
+			return other.snapshot();
+		int words = domain.words();
+		long diffThis = 0;
+		long diffOther = 0;
+		for (int i = 0; i < words; i++) {
+			long gen = bits[i] | other.bits[i];
+			long kill = bits[words + i] & other.bits[words + i];
+			diffThis |= (gen ^ bits[i]) | (kill ^ bits[words + i]);
+			diffOther |= (gen ^ other.bits[i]) | (kill ^ other.bits[words + i]);
+		}
+		if (diffThis == 0)
+			return snapshot();
+		if (diffOther == 0)
+			return other.snapshot();
+		long[] result = new long[2 * words];
+		for (int i = 0; i < words; i++) {
+			result[i] = bits[i] | other.bits[i];
+			result[words + i] = bits[words + i] & other.bits[words + i];
+		}
+		return domain.intern(result);
+	}
+
+	/**
+	 * True if {@code other} generates at least the facts generated here and kills at most the facts killed here.
+	 */
+	@Override
+	public boolean leq(Semiring o) {
+		GenKillSemiring other = (GenKillSemiring) o;
+		if (this == other || bits.length == 0)
+			return true;
+		if (other.bits.length == 0)
+			return false;
+		int words = domain.words();
+		long missing = 0;
+		for (int i = 0; i < words; i++) {
+			missing |= (bits[i] & ~other.bits[i]) | (other.bits[words + i] & ~bits[words + i]);
+		}
+		return missing == 0;
+	}
+
+	/**
+	 * A copy of the words, or null for zero, which is never changed by a combination.
+	 */
+	@Override
+	public Semiring accumulator() {
+		return bits.length == 0 ? null : new GenKillSemiring(domain, bits.clone(), true);
+	}
+
+	@Override
+	public boolean isAccumulator() {
+		return accumulator;
+	}
+
+	@Override
+	public boolean combineInto(Semiring t) {
+		GenKillSemiring target = (GenKillSemiring) t;
+		if (bits.length == 0)
+			return false;
+		int words = domain.words();
+		long diff = 0;
+		for (int i = 0; i < words; i++) {
+			long gen = target.bits[i] | bits[i];
+			long kill = target.bits[words + i] & bits[words + i];
+			diff |= (gen ^ target.bits[i]) | (kill ^ target.bits[words + i]);
+			target.bits[i] = gen;
+			target.bits[words + i] = kill;
+		}
+		return diff != 0;
+	}
+
+	/**
+	 * The interned weight with the current value of an accumulator, this weight otherwise.
+	 */
+	@Override
+	public GenKillSemiring snapshot() {
+		return accumulator ? domain.intern(bits.clone()) : this;
+	}
+
+	/**
+	 * Applies the function to a set of facts given as words, as returned by {@link BitSet#toLongArray()}.
+	 *
+	 * @param facts
+	 * @return a new array
+	 */
+	public long[] apply(long[] facts) {
+		int words = domain.words();
+		long[] result = new long[words];
+		if (bits.length == 0)
+			return result;
+		for (int i = 0; i < words; i++) {
+			long in = i < facts.length ? facts[i] : 0L;
+			result[i] = in & ~bits[words + i] | bits[i];
+		}
+		return result;
+	}
+
+	public BitSet apply(BitSet facts) {
+		return BitSet.valueOf(apply(facts.toLongArray()));
+	}
+
+	/**
+	 * The facts that hold after the function, if none held before.
+	 */
+	@Override
+	public BitSet value() {
+		return bits.length == 0 ? new BitSet() : BitSet.valueOf(Arrays.copyOf(bits, domain.words()));
+	}
+
+	@Override
+	public int hashCode() {
+		return accumulator ? Arrays.hashCode(bits) : hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof GenKillSemiring))
+			return false;
+		GenKillSemiring other = (GenKillSemiring) obj;
+		return domain == other.domain && hashCode() == other.hashCode() && Arrays.equals(bits, other.bits);
+	}
+
+	@Override
+	public String toString() {
+		if (bits.length == 0)
+			return "<ZERO>";
+		int words = domain.words();
+		return "gen " + BitSet.valueOf(Arrays.copyOf(bits, words)) + " kill " + BitSet.valueOf(Arrays.copyOfRange(bits, words, 2 * words));
+	}
+}
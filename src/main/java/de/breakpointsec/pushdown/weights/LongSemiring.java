@@ -0,0 +1,77 @@
+
+package de.breakpointsec.pushdown.weights;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+/**
+ * Base of the semirings whose weights are plain {@code long}s.
+ *
+ * Each subclass offers its operations as static methods on {@code long}, for code that keeps weights unboxed (see
+ * {@link de.breakpointsec.pushdown.fsm.LongWeightStore}). {@link #combineWith(Semiring)} always returns one of its operands and
+ * {@link #extendWith(Semiring)} returns an operand or a constant whenever the result allows it, so neither allocates in the common case.
+ */
+public abstract class LongSemiring extends Semiring<Long> {
+
+	protected final long value;
+
+	protected LongSemiring(long value) {
+		this.value = value;
+	}
+
+	public final long longValue() {
+		return value;
+	}
+
+	/**
+	 * {@link #extendWith(Semiring)} on plain values of this semiring: {@code a} extended with {@code b}.
+	 */
+	public abstract long extendValues(long a, long b);
+
+	/**
+	 * {@link #combineWith(Semiring)} on plain values of this semiring. Returns {@code a} if the combination equals {@code a}.
+	 */
+	public abstract long combineValues(long a, long b);
+
+	@Override
+	public Long value() {
+		return value;
+	}
+
+	/**
+	 * Addition that sticks to {@code Long.MAX_VALUE} and {@code Long.MIN_VALUE} instead of overflowing.
+	 */
+	protected static long saturatedAdd(long a, long b) {
+		long r = a + b;
+		if (((a ^ r) & (b ^ r)) < 0)
+			return a < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+		return r;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(value);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null || getClass() != obj.getClass())
+			return false;
+		return value == ((LongSemiring) obj).value;
+	}
+}
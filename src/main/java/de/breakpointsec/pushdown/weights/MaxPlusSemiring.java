@@ -0,0 +1,88 @@
+
+package de.breakpointsec.pushdown.weights;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+/**
+ * Semiring (max, +) over {@code long}, for longest paths. Zero is minus infinity, represented by {@code Long.MIN_VALUE}, and one is 0.
+ *
+ * Saturation terminates if the pushdown system has no cycle of positive weight.
+ */
+public final class MaxPlusSemiring extends LongSemiring {
+
+	public static final long MINUS_INFINITY = Long.MIN_VALUE;
+	public static final MaxPlusSemiring ONE = new MaxPlusSemiring(0);
+	public static final MaxPlusSemiring ZERO = new MaxPlusSemiring(MINUS_INFINITY);
+
+	private MaxPlusSemiring(long value) {
+		super(value);
+	}
+
+	public static MaxPlusSemiring of(long value) {
+		if (value == 0)
+			return ONE;
+		if (value == MINUS_INFINITY)
+			return ZERO;
+		return new MaxPlusSemiring(value);
+	}
+
+	public static long extend(long a, long b) {
+		if (a == MINUS_INFINITY || b == MINUS_INFINITY)
+			return MINUS_INFINITY;
+		return Math.max(saturatedAdd(a, b), MINUS_INFINITY + 1);
+	}
+
+	public static long combine(long a, long b) {
+		return Math.max(a, b);
+	}
+
+	@Override
+	public long extendValues(long a, long b) {
+		return extend(a, b);
+	}
+
+	@Override
+	public long combineValues(long a, long b) {
+		return combine(a, b);
+	}
+
+	@Override
+	public Semiring extendWith(Semiring other) {
+		MaxPlusSemiring o = (MaxPlusSemiring) other;
+		if (o.value == 0 || value == MINUS_INFINITY)
+			return this;
+		if (value == 0 || o.value == MINUS_INFINITY)
+			return o;
+		return of(extend(value, o.value));
+	}
+
+	@Override
+	public Semiring combineWith(Semiring other) {
+		MaxPlusSemiring o = (MaxPlusSemiring) other;
+		return o.value > value ? o : this;
+	}
+
+	@Override
+	public boolean leq(Semiring other) {
+		return ((MaxPlusSemiring) other).value >= value;
+	}
+
+	@Override
+	public String toString() {
+		return value == MINUS_INFINITY ? "<-INF>" : Long.toString(value);
+	}
+}
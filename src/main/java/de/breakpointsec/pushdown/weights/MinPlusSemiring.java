@@ -0,0 +1,88 @@
+
+package de.breakpointsec.pushdown.weights;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+/**
+ * Tropical semiring (min, +) over {@code long}, for shortest paths. Zero is infinity, represented by {@code Long.MAX_VALUE}, and one is 0.
+ *
+ * Saturation terminates if all weights are non-negative.
+ */
+public final class MinPlusSemiring extends LongSemiring {
+
+	public static final long INFINITY = Long.MAX_VALUE;
+	public static final MinPlusSemiring ONE = new MinPlusSemiring(0);
+	public static final MinPlusSemiring ZERO = new MinPlusSemiring(INFINITY);
+
+	private MinPlusSemiring(long value) {
+		super(value);
+	}
+
+	public static MinPlusSemiring of(long value) {
+		if (value == 0)
+			return ONE;
+		if (value == INFINITY)
+			return ZERO;
+		return new MinPlusSemiring(value);
+	}
+
+	public static long extend(long a, long b) {
+		if (a == INFINITY || b == INFINITY)
+			return INFINITY;
+		return saturatedAdd(a, b);
+	}
+
+	public static long combine(long a, long b) {
+		return Math.min(a, b);
+	}
+
+	@Override
+	public long extendValues(long a, long b) {
+		return extend(a, b);
+	}
+
+	@Override
+	public long combineValues(long a, long b) {
+		return combine(a, b);
+	}
+
+	@Override
+	public Semiring extendWith(Semiring other) {
+		MinPlusSemiring o = (MinPlusSemiring) other;
+		if (o.value == 0 || value == INFINITY)
+			return this;
+		if (value == 0 || o.value == INFINITY)
+			return o;
+		return of(extend(value, o.value));
+	}
+
+	@Override
+	public Semiring combineWith(Semiring other) {
+		MinPlusSemiring o = (MinPlusSemiring) other;
+		return o.value < value ? o : this;
+	}
+
+	@Override
+	public boolean leq(Semiring other) {
+		return ((MinPlusSemiring) other).value <= value;
+	}
+
+	@Override
+	public String toString() {
+		return value == INFINITY ? "<INF>" : Long.toString(value);
+	}
+}
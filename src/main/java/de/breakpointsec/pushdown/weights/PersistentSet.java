@@ -0,0 +1,363 @@
+
+package de.breakpointsec.pushdown.weights;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable hash set stored as a hash array mapped trie. Adding an element or building the union of two sets copies only the nodes that change and shares
+ * all others, and returns an operand itself when the result contains nothing new.
+ *
+ * Every node caches its size and hash code, so {@link #hashCode()} takes constant time and {@link #equals(Object)} skips shared subtrees by identity.
+ * Null elements are not supported.
+ *
+ * @param <E>
+ */
+final class PersistentSet<E> extends AbstractSet<E> {
+
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+	private static final PersistentSet<?> EMPTY = new PersistentSet<>(new BitmapNode(0, new Object[0]));
+
+	private final Node root;
+
+	private PersistentSet(Node root) {
+		this.root = root;
+	}
+
+	@SuppressWarnings("unchecked")
+	static <E> PersistentSet<E> empty() {
+		return (PersistentSet<E>) EMPTY;
+	}
+
+	static <E> PersistentSet<E> of(E element) {
+		return PersistentSet.<E> empty().plus(element);
+	}
+
+	PersistentSet<E> plus(E element) {
+		Node result = root.plus(element, spread(element), 0);
+		return result == root ? this : new PersistentSet<>(result);
+	}
+
+	PersistentSet<E> union(PersistentSet<E> other) {
+		Node result = root.union(other.root, 0);
+		if (result.size == root.size)
+			return this;
+		if (result.size == other.root.size)
+			return other;
+		return new PersistentSet<>(result);
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return o != null && root.contains(o, spread(o), 0);
+	}
+
+	@Override
+	public int size() {
+		return root.size;
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return new TrieIterator<>(root);
+	}
+
+	@Override
+	public int hashCode() {
+		return root.hash;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (o instanceof PersistentSet)
+			return root.sameElements(((PersistentSet<?>) o).root);
+		return super.equals(o);
+	}
+
+	private static int spread(Object element) {
+		int h = element.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * A trie node for two distinct elements below the given shift.
+	 */
+	private static Node pair(Object a, int ha, Object b, int hb, int shift) {
+		if (shift >= Integer.SIZE)
+			return new CollisionNode(new Object[] { a, b });
+		int fa = (ha >>> shift) & MASK;
+		int fb = (hb >>> shift) & MASK;
+		if (fa == fb)
+			return new BitmapNode(1 << fa, new Object[] { pair(a, ha, b, hb, shift + BITS) });
+		return new BitmapNode((1 << fa) | (1 << fb), fa < fb ? new Object[] { a, b } : new Object[] { b, a });
+	}
+
+	/**
+	 * Entries are either elements or child nodes. A child node always holds at least two elements, so the shape of a trie only depends on its elements.
+	 */
+	private abstract static class Node {
+		final Object[] entries;
+		final int size;
+		final int hash;
+
+		Node(Object[] entries) {
+			this.entries = entries;
+			int size = 0;
+			int hash = 0;
+			for (Object entry : entries) {
+				if (entry instanceof Node) {
+					size += ((Node) entry).size;
+					hash += ((Node) entry).hash;
+				} else {
+					size++;
+					hash += entry.hashCode();
+				}
+			}
+			this.size = size;
+			this.hash = hash;
+		}
+
+		abstract boolean contains(Object element, int h, int shift);
+
+		abstract Node plus(Object element, int h, int shift);
+
+		abstract Node union(Node other, int shift);
+
+		abstract boolean sameElements(Node other);
+	}
+
+	private static final class BitmapNode extends Node {
+		private final int bitmap;
+
+		BitmapNode(int bitmap, Object[] entries) {
+			super(entries);
+			this.bitmap = bitmap;
+		}
+
+		private Object entryFor(int bit) {
+			return (bitmap & bit) == 0 ? null : entries[Integer.bitCount(bitmap & (bit - 1))];
+		}
+
+		@Override
+		boolean contains(Object element, int h, int shift) {
+			Object entry = entryFor(1 << ((h >>> shift) & MASK));
+			if (entry instanceof Node)
+				return ((Node) entry).contains(element, h, shift + BITS);
+			return entry != null && entry.equals(element);
+		}
+
+		@Override
+		Node plus(Object element, int h, int shift) {
+			int bit = 1 << ((h >>> shift) & MASK);
+			int index = Integer.bitCount(bitmap & (bit - 1));
+			if ((bitmap & bit) == 0) {
+				Object[] copy = new Object[entries.length + 1];
+				System.arraycopy(entries, 0, copy, 0, index);
+				copy[index] = element;
+				System.arraycopy(entries, index, copy, index + 1, entries.length - index);
+				return new BitmapNode(bitmap | bit, copy);
+			}
+			Object entry = entries[index];
+			Object replacement;
+			if (entry instanceof Node) {
+				replacement = ((Node) entry).plus(element, h, shift + BITS);
+			} else if (entry.equals(element)) {
+				return this;
+			} else {
+				replacement = pair(entry, spread(entry), element, h, shift + BITS);
+			}
+			if (replacement == entry)
+				return this;
+			Object[] copy = entries.clone();
+			copy[index] = replacement;
+			return new BitmapNode(bitmap, copy);
+		}
+
+		@Override
+		Node union(Node other, int shift) {
+			if (other == this || other.size == 0)
+				return this;
+			if (size == 0)
+				return other;
+			BitmapNode o = (BitmapNode) other;
+			int merged = bitmap | o.bitmap;
+			boolean sameAsThis = merged == bitmap;
+			boolean sameAsOther = merged == o.bitmap;
+			Object[] result = new Object[Integer.bitCount(merged)];
+			int i = 0;
+			for (int rest = merged; rest != 0; rest &= rest - 1) {
+				int bit = rest & -rest;
+				Object a = entryFor(bit);
+				Object b = o.entryFor(bit);
+				Object r = a == null ? b : b == null ? a : unionEntries(a, b, shift + BITS);
+				// The union contains both entries, so it equals one of them if the sizes match.
+				sameAsThis &= entrySize(r) == entrySize(a);
+				sameAsOther &= entrySize(r) == entrySize(b);
+				result[i++] = r;
+			}
+			if (sameAsThis)
+				return this;
+			if (sameAsOther)
+				return o;
+			return new BitmapNode(merged, result);
+		}
+
+		private static int entrySize(Object entry) {
+			if (entry == null)
+				return 0;
+			return entry instanceof Node ? ((Node) entry).size : 1;
+		}
+
+		private static Object unionEntries(Object a, Object b, int shift) {
+			if (a == b)
+				return a;
+			if (a instanceof Node) {
+				if (b instanceof Node)
+					return ((Node) a).union((Node) b, shift);
+				return ((Node) a).plus(b, spread(b), shift);
+			}
+			if (b instanceof Node)
+				return ((Node) b).plus(a, spread(a), shift);
+			if (a.equals(b))
+				return a;
+			return pair(a, spread(a), b, spread(b), shift);
+		}
+
+		@Override
+		boolean sameElements(Node other) {
+			if (other == this)
+				return true;
+			if (other.size != size || other.hash != hash || ((BitmapNode) other).bitmap != bitmap)
+				return false;
+			for (int i = 0; i < entries.length; i++) {
+				Object a = entries[i];
+				Object b = other.entries[i];
+				if (a instanceof Node) {
+					if (!(b instanceof Node) || !((Node) a).sameElements((Node) b))
+						return false;
+				} else if (b instanceof Node || !a.equals(b)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Elements with equal hash codes, below all levels of the trie.
+	 */
+	private static final class CollisionNode extends Node {
+
+		CollisionNode(Object[] entries) {
+			super(entries);
+		}
+
+		@Override
+		boolean contains(Object element, int h, int shift) {
+			for (Object entry : entries) {
+				if (entry.equals(element))
+					return true;
+			}
+			return false;
+		}
+
+		@Override
+		Node plus(Object element, int h, int shift) {
+			if (contains(element, h, shift))
+				return this;
+			Object[] copy = new Object[entries.length + 1];
+			System.arraycopy(entries, 0, copy, 0, entries.length);
+			copy[entries.length] = element;
+			return new CollisionNode(copy);
+		}
+
+		@Override
+		Node union(Node other, int shift) {
+			Node result = this;
+			for (Object entry : other.entries) {
+				result = result.plus(entry, 0, shift);
+			}
+			return result;
+		}
+
+		@Override
+		boolean sameElements(Node other) {
+			if (other == this)
+				return true;
+			if (other.size != size || other.hash != hash)
+				return false;
+			for (Object entry : other.entries) {
+				if (!contains(entry, 0, 0))
+					return false;
+			}
+			return true;
+		}
+	}
+
+	private static final class TrieIterator<E> implements Iterator<E> {
+		/* One level per 5 bits of the hash, plus the collision level. */
+		private final Object[][] stack = new Object[(Integer.SIZE + BITS - 1) / BITS + 1][];
+		private final int[] index = new int[stack.length];
+		private int depth;
+		private Object next;
+
+		TrieIterator(Node root) {
+			stack[0] = root.entries;
+			advance();
+		}
+
+		private void advance() {
+			next = null;
+			while (depth >= 0) {
+				if (index[depth] == stack[depth].length) {
+					depth--;
+					continue;
+				}
+				Object entry = stack[depth][index[depth]++];
+				if (entry instanceof Node) {
+					depth++;
+					stack[depth] = ((Node) entry).entries;
+					index[depth] = 0;
+				} else {
+					next = entry;
+					return;
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public E next() {
+			if (next == null)
+				throw new NoSuchElementException();
+			E result = (E) next;
+			advance();
+			return result;
+		}
+	}
+}
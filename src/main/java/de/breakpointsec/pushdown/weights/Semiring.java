@@ -28,4 +28,52 @@ public abstract class Semiring<T> {
 
 	public abstract T value();
 
+	/**
+	 * Whether combining this weight with {@code other} yields {@code other}, that is, {@code other} already subsumes this weight. Saturation uses it to skip
+	 * updates without building the combination. Implementations may return false when the check is not cheap, the default always does.
+	 *
+	 * @param other
+	 * @return true only if {@code this.combineWith(other)} equals {@code other}
+	 */
+	public boolean leq(Semiring other) {
+		return false;
+	}
+
+	/**
+	 * Returns a new mutable copy of this weight that {@link #combineInto(Semiring)} can update in place, or null if the semiring does not support
+	 * accumulation (the default).
+	 *
+	 * An accumulator is owned by a single transition of a {@link de.breakpointsec.pushdown.fsm.WeightedAutomaton}. {@link #extendWith(Semiring)} and
+	 * {@link #combineWith(Semiring)} never return an accumulator, and accumulators must not be used with a {@link WeightCache}.
+	 */
+	public Semiring accumulator() {
+		return null;
+	}
+
+	/**
+	 * Whether this weight was created by {@link #accumulator()}.
+	 */
+	public boolean isAccumulator() {
+		return false;
+	}
+
+	/**
+	 * An immutable weight with the current value of this accumulator, or this weight if it is not an accumulator (the default). Semirings that support
+	 * accumulation must override it.
+	 */
+	public Semiring snapshot() {
+		return this;
+	}
+
+	/**
+	 * Combines this weight into the accumulator {@code target}, replacing its value by {@code target.combineWith(this)}.
+	 *
+	 * @param target an accumulator of the same semiring
+	 * @return whether the value of {@code target} changed
+	 * @throws IllegalStateException if the semiring does not support accumulation (the default), semirings whose {@link #accumulator()} returns
+	 *         non-null must override it
+	 */
+	public boolean combineInto(Semiring target) {
+		throw new IllegalStateException(getClass().getSimpleName() + " does not support accumulation");
+	}
 }
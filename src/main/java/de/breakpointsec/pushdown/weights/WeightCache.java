@@ -0,0 +1,128 @@
+
+package de.breakpointsec.pushdown.weights;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * Shares equal weights and remembers the results of recent extend and combine operations.
+ *
+ * Results are interned, so equal weights computed through the cache are the same object. The memo tables are keyed by the identity of the operands,
+ * which makes a lookup a hash of two references, and evict the least recently used pairs beyond their maximum size. The cache is thread-safe.
+ *
+ * @param <W>
+ */
+public final class WeightCache<W extends Semiring> {
+
+	private final Interner<W> interner = Interners.newWeakInterner();
+	private final Cache<OperandPair, W> extensions;
+	private final Cache<OperandPair, W> combinations;
+
+	/**
+	 * @param maximumSize maximum number of remembered results for each of extend and combine
+	 */
+	public WeightCache(long maximumSize) {
+		this.extensions = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+		this.combinations = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+	}
+
+	/**
+	 * Returns the shared instance equal to {@code weight}.
+	 */
+	public W intern(W weight) {
+		return interner.intern(weight);
+	}
+
+	public W extend(W a, W b) {
+		OperandPair key = new OperandPair(a, b);
+		W result = extensions.getIfPresent(key);
+		if (result == null) {
+			result = intern((W) a.extendWith(b));
+			extensions.put(key, result);
+		}
+		return result;
+	}
+
+	public W combine(W a, W b) {
+		if (a == b)
+			return a;
+		OperandPair key = new OperandPair(a, b);
+		W result = combinations.getIfPresent(key);
+		if (result == null) {
+			result = intern((W) a.combineWith(b));
+			combinations.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Hits, misses and evictions of {@link #extend(Semiring, Semiring)}.
+	 */
+	public CacheStats extendStats() {
+		return extensions.stats();
+	}
+
+	/**
+	 * Hits, misses and evictions of {@link #combine(Semiring, Semiring)}.
+	 */
+	public CacheStats combineStats() {
+		return combinations.stats();
+	}
+
+	/**
+	 * Forgets all remembered results. Interned weights stay shared while they are in use.
+	 */
+	public void invalidateAll() {
+		extensions.invalidateAll();
+		combinations.invalidateAll();
+	}
+
+	@Override
+	public String toString() {
+		return "WeightCache extend " + extendStats() + " combine " + combineStats();
+	}
+
+	private static final class OperandPair {
+		private final Object a;
+		private final Object b;
+		private final int hash;
+
+		OperandPair(Object a, Object b) {
+			this.a = a;
+			this.b = b;
+			this.hash = 31 * System.identityHashCode(a) + System.identityHashCode(b);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof OperandPair))
+				return false;
+			OperandPair other = (OperandPair) obj;
+			return a == other.a && b == other.b;
+		}
+	}
+}
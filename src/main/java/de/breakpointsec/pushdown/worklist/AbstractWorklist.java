@@ -0,0 +1,98 @@
+
+package de.breakpointsec.pushdown.worklist;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.Transition;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Base class for worklists that keeps track of pending transitions and counts queue operations. Subclasses only provide the ordering.
+ *
+ * @param <L>
+ * @param <S>
+ */
+public abstract class AbstractWorklist<L, S> implements Worklist<L, S> {
+
+	private final Set<Transition<L, S>> queued = new HashSet<>();
+	private long enqueued;
+	private long dequeued;
+
+	@Override
+	public boolean add(Transition<L, S> t) {
+		if (!queued.add(t)) {
+			requeue(t);
+			return false;
+		}
+		enqueued++;
+		offer(t);
+		return true;
+	}
+
+	@Override
+	public Transition<L, S> poll() {
+		Transition<L, S> t = take();
+		if (t != null) {
+			queued.remove(t);
+			dequeued++;
+		}
+		return t;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return queued.isEmpty();
+	}
+
+	@Override
+	public int size() {
+		return queued.size();
+	}
+
+	@Override
+	public long getEnqueueCount() {
+		return enqueued;
+	}
+
+	@Override
+	public long getDequeueCount() {
+		return dequeued;
+	}
+
+	/**
+	 * Stores a transition that is not pending yet.
+	 */
+	protected abstract void offer(Transition<L, S> t);
+
+	/**
+	 * Removes the next transition, or returns {@code null} if none is stored.
+	 */
+	protected abstract Transition<L, S> take();
+
+	/**
+	 * Called when a pending transition is added again, e.g. because its weight changed. Ordered worklists may move it, the default does nothing.
+	 */
+	protected void requeue(Transition<L, S> t) {
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + " (pending: " + size() + ", enqueued: " + enqueued + ", dequeued: " + dequeued + ")";
+	}
+}
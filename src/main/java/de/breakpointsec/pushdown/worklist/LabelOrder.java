@@ -0,0 +1,133 @@
+
+package de.breakpointsec.pushdown.worklist;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+import de.breakpointsec.pushdown.WPDS;
+import de.breakpointsec.pushdown.rules.NormalRule;
+import de.breakpointsec.pushdown.rules.PushRule;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Topological order of the strongly connected components of the label graph of a WPDS.
+ *
+ * The graph has an edge l1 -> l2 for every normal rule. Every push rule contributes its call edge l1 -> l2 and the edge l1 -> callSite to the
+ * return site. Labels in the same component share a rank, a component gets a smaller rank than all components reachable from it.
+ *
+ * @param <L>
+ */
+class LabelOrder<L> {
+
+	private final Map<L, Integer> rank = new HashMap<>();
+	private int components;
+
+	LabelOrder(WPDS<L, ?, ?> pds) {
+		SetMultimap<L, L> successors = HashMultimap.create();
+		for (NormalRule<L, ?, ?> r : pds.getNormalRules()) {
+			successors.put(r.getL1(), r.getL2());
+		}
+		for (PushRule<L, ?, ?> r : pds.getPushRules()) {
+			successors.put(r.getL1(), r.getL2());
+			successors.put(r.getL1(), r.getCallSite());
+		}
+		computeComponents(successors);
+	}
+
+	/**
+	 * Returns the rank of {@code label}. Labels that do not occur in the graph, like epsilon, get rank -1.
+	 */
+	int rank(L label) {
+		Integer r = rank.get(label);
+		return r == null ? -1 : r;
+	}
+
+	int components() {
+		return components;
+	}
+
+	/*
+	 * Iterative version of Tarjan's algorithm. Components are found in reverse topological order, ranks are flipped at the end.
+	 */
+	private void computeComponents(SetMultimap<L, L> successors) {
+		Map<L, Integer> index = new HashMap<>();
+		Map<L, Integer> lowLink = new HashMap<>();
+		ArrayDeque<L> stack = new ArrayDeque<>();
+		Set<L> onStack = new HashSet<>();
+		List<L> roots = new ArrayList<>(successors.keySet());
+		int next = 0;
+		for (L root : roots) {
+			if (index.containsKey(root))
+				continue;
+			ArrayDeque<L> callStack = new ArrayDeque<>();
+			ArrayDeque<Iterator<L>> iterators = new ArrayDeque<>();
+			index.put(root, next);
+			lowLink.put(root, next);
+			next++;
+			stack.push(root);
+			onStack.add(root);
+			callStack.push(root);
+			iterators.push(successors.get(root).iterator());
+			while (!callStack.isEmpty()) {
+				L v = callStack.peek();
+				Iterator<L> it = iterators.peek();
+				if (it.hasNext()) {
+					L w = it.next();
+					if (!index.containsKey(w)) {
+						index.put(w, next);
+						lowLink.put(w, next);
+						next++;
+						stack.push(w);
+						onStack.add(w);
+						callStack.push(w);
+						iterators.push(successors.get(w).iterator());
+					} else if (onStack.contains(w)) {
+						lowLink.put(v, Math.min(lowLink.get(v), index.get(w)));
+					}
+					continue;
+				}
+				callStack.pop();
+				iterators.pop();
+				if (lowLink.get(v).equals(index.get(v))) {
+					L w;
+					do {
+						w = stack.pop();
+						onStack.remove(w);
+						rank.put(w, components);
+					} while (!w.equals(v));
+					components++;
+				}
+				if (!callStack.isEmpty()) {
+					L parent = callStack.peek();
+					lowLink.put(parent, Math.min(lowLink.get(parent), lowLink.get(v)));
+				}
+			}
+		}
+		for (Map.Entry<L, Integer> e : rank.entrySet()) {
+			e.setValue(components - 1 - e.getValue());
+		}
+	}
+}
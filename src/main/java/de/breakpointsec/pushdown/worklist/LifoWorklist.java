@@ -0,0 +1,43 @@
+
+package de.breakpointsec.pushdown.worklist;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.Transition;
+
+import java.util.ArrayDeque;
+
+/**
+ * Last-in first-out worklist, i.e. depth-first saturation.
+ *
+ * @param <L>
+ * @param <S>
+ */
+public class LifoWorklist<L, S> extends AbstractWorklist<L, S> {
+
+	private final ArrayDeque<Transition<L, S>> stack = new ArrayDeque<>();
+
+	@Override
+	protected void offer(Transition<L, S> t) {
+		stack.addLast(t);
+	}
+
+	@Override
+	protected Transition<L, S> take() {
+		return stack.pollLast();
+	}
+}
@@ -0,0 +1,97 @@
+
+package de.breakpointsec.pushdown.worklist;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.Transition;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/**
+ * Worklist that processes transitions in ascending order of a key computed when they are queued. Ties are broken first-in first-out.
+ *
+ * If a pending transition is added again and its key has become smaller, it is moved forward. The stale entry stays in the heap and is skipped when
+ * it comes up. Keys stay in the heap while their transition is pending, so they must not change afterwards.
+ *
+ * @param <L>
+ * @param <S>
+ * @param <K> Key type
+ */
+public class PriorityWorklist<L, S, K> extends AbstractWorklist<L, S> {
+
+	private final Function<Transition<L, S>, K> key;
+	private final Comparator<? super K> order;
+	private final PriorityQueue<Entry<L, S, K>> heap;
+	private final Map<Transition<L, S>, Entry<L, S, K>> current = new HashMap<>();
+	private long sequence;
+
+	public PriorityWorklist(Function<Transition<L, S>, K> key, Comparator<? super K> order) {
+		this.key = key;
+		this.order = order;
+		this.heap = new PriorityQueue<>((a, b) -> {
+			int c = order.compare(a.key, b.key);
+			return c != 0 ? c : Long.compare(a.sequence, b.sequence);
+		});
+	}
+
+	@Override
+	protected void offer(Transition<L, S> t) {
+		push(t, key.apply(t));
+	}
+
+	@Override
+	protected void requeue(Transition<L, S> t) {
+		K newKey = key.apply(t);
+		if (order.compare(newKey, current.get(t).key) < 0) {
+			push(t, newKey);
+		}
+	}
+
+	private void push(Transition<L, S> t, K k) {
+		Entry<L, S, K> entry = new Entry<>(t, k, sequence++);
+		current.put(t, entry);
+		heap.add(entry);
+	}
+
+	@Override
+	protected Transition<L, S> take() {
+		Entry<L, S, K> entry;
+		while ((entry = heap.poll()) != null) {
+			if (current.get(entry.transition) == entry) {
+				current.remove(entry.transition);
+				return entry.transition;
+			}
+		}
+		return null;
+	}
+
+	private static class Entry<L, S, K> {
+		final Transition<L, S> transition;
+		final K key;
+		final long sequence;
+
+		Entry(Transition<L, S> transition, K key, long sequence) {
+			this.transition = transition;
+			this.key = key;
+			this.sequence = sequence;
+		}
+	}
+}
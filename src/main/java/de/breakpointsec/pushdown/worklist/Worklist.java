@@ -0,0 +1,62 @@
+
+package de.breakpointsec.pushdown.worklist;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.Transition;
+
+/**
+ * Worklist of transitions pending during post* or pre* saturation.
+ *
+ * Implementations decide the order in which transitions are processed. A transition that is already pending is not queued a second time, since
+ * processing it always reads its current weight.
+ *
+ * @param <L>
+ * @param <S>
+ */
+public interface Worklist<L, S> {
+
+	/**
+	 * Queues {@code t} unless it is already pending.
+	 *
+	 * @param t
+	 * @return true if {@code t} has been queued
+	 */
+	boolean add(Transition<L, S> t);
+
+	/**
+	 * Removes the next transition to process.
+	 *
+	 * @return the next transition, or {@code null} if the worklist is empty
+	 */
+	Transition<L, S> poll();
+
+	boolean isEmpty();
+
+	int size();
+
+	/**
+	 * @return number of transitions queued so far, not counting rejected duplicates
+	 */
+	long getEnqueueCount();
+
+	/**
+	 * @return number of transitions polled so far
+	 */
+	long getDequeueCount();
+
+}
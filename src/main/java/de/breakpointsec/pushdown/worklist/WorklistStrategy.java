@@ -0,0 +1,88 @@
+
+package de.breakpointsec.pushdown.worklist;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.WPDS;
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.weights.Semiring;
+
+import java.util.Comparator;
+
+/**
+ * Creates the worklist for a single post* or pre* run, and thereby decides the order in which transitions are processed.
+ *
+ * The order does not change the result for idempotent semirings, but it changes how often weights are recomputed before they stabilize.
+ *
+ * @param <L>
+ * @param <S>
+ * @param <W>
+ */
+@FunctionalInterface
+public interface WorklistStrategy<L, S, W extends Semiring> {
+
+	Worklist<L, S> createWorklist(WPDS<L, S, W> pds, WeightedAutomaton<L, S, W> fa);
+
+	/**
+	 * Breadth-first order. This is the default.
+	 */
+	static <L, S, W extends Semiring> WorklistStrategy<L, S, W> fifo() {
+		return (pds, fa) -> new FifoWorklist<>();
+	}
+
+	/**
+	 * Depth-first order.
+	 */
+	static <L, S, W extends Semiring> WorklistStrategy<L, S, W> lifo() {
+		return (pds, fa) -> new LifoWorklist<>();
+	}
+
+	/**
+	 * Processes the transition with the smallest weight according to {@code order} first. Transitions are moved forward when their weight decreases
+	 * while they are pending. The keys are {@link WeightedAutomaton#getWeightFor(Transition) snapshots} of the weights.
+	 *
+	 * @param order
+	 */
+	static <L, S, W extends Semiring> WorklistStrategy<L, S, W> byWeight(Comparator<? super W> order) {
+		return (pds, fa) -> new PriorityWorklist<L, S, W>(fa::getWeightFor, Comparator.nullsLast(order));
+	}
+
+	/**
+	 * Processes transitions in topological order of the strongly connected components of the label graph, see {@link LabelOrder}. Labels closer to the
+	 * entry points come first, which suits post*. Transitions with labels that do not occur in any rule, like epsilon, come before all others.
+	 */
+	static <L, S, W extends Semiring> WorklistStrategy<L, S, W> topological() {
+		return (pds, fa) -> {
+			LabelOrder<L> order = new LabelOrder<>(pds);
+			return new PriorityWorklist<L, S, Integer>((Transition<L, S> t) -> order.rank(t.getLabel()), Comparator.naturalOrder());
+		};
+	}
+
+	/**
+	 * Reverse of {@link #topological()}, labels further from the entry points come first, which suits pre*.
+	 */
+	static <L, S, W extends Semiring> WorklistStrategy<L, S, W> reverseTopological() {
+		return (pds, fa) -> {
+			LabelOrder<L> order = new LabelOrder<>(pds);
+			return new PriorityWorklist<L, S, Integer>((Transition<L, S> t) -> {
+				int rank = order.rank(t.getLabel());
+				return rank < 0 ? rank : order.components() - 1 - rank;
+			}, Comparator.naturalOrder());
+		};
+	}
+}
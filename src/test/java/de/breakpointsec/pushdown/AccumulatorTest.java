@@ -0,0 +1,238 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.rules.NormalRule;
+import de.breakpointsec.pushdown.rules.PopRule;
+import de.breakpointsec.pushdown.rules.PushRule;
+import de.breakpointsec.pushdown.rules.Rule;
+import de.breakpointsec.pushdown.weights.MinPlusSemiring;
+import de.breakpointsec.pushdown.weights.Semiring;
+import de.breakpointsec.pushdown.weights.WeightCache;
+import de.breakpointsec.pushdown.worklist.WorklistStrategy;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static de.breakpointsec.pushdown.ParallelSaturationTest.pds;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.randomRules;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AccumulatorTest extends GenericPDSTest {
+
+	@Test
+	public void combineInPlace() throws IllegalTransitionException {
+		WeightedAutomaton<StackSymbol, Configuration, Semiring> fa = unionAccepts(1, "a", true);
+		Transition<StackSymbol, Configuration> t = t(1, "a", 2);
+		Union x = Union.of(true, "x");
+		assertTrue(fa.accumulateWeight(t, x));
+		Semiring stored = fa.getCurrentWeight(t);
+		assertNotSame(x, stored);
+		assertTrue(stored.isAccumulator());
+		Semiring snapshot = fa.getWeightFor(t);
+		assertFalse(snapshot.isAccumulator());
+		assertFalse(fa.accumulateWeight(t, Union.of(true, "x")));
+		assertTrue(fa.accumulateWeight(t, Union.of(true, "y")));
+		assertSame(stored, fa.getCurrentWeight(t));
+		assertEquals(Union.of(false, "x", "y").value(), stored.value());
+		assertEquals(Collections.singleton("x"), x.value());
+		assertEquals(Collections.singleton("x"), snapshot.value());
+	}
+
+	@Test
+	public void poststarMatchesImmutable() throws IllegalTransitionException {
+		for (int seed = 0; seed < 50; seed++) {
+			WPDS<StackSymbol, Configuration, Semiring> immutable = pds();
+			WPDS<StackSymbol, Configuration, Semiring> accumulating = pds();
+			for (Rule<StackSymbol, Configuration, Semiring> rule : randomRules(new Random(seed))) {
+				immutable.addRule(toUnion(rule, false));
+				accumulating.addRule(toUnion(rule, true));
+			}
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> expected = unionAccepts(1, "l0", false);
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> actual = unionAccepts(1, "l0", true);
+			try {
+				immutable.poststar(expected);
+			} catch (IllegalTransitionException e) {
+				continue;
+			}
+			accumulating.poststar(actual);
+			// Keys of the priority worklist must not change while they are queued
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> byWeight = unionAccepts(1, "l0", true);
+			accumulating.poststar(byWeight, WorklistStrategy.byWeight(Comparator.comparingInt(w -> ((Union) w).labels.size())));
+			assertEquals("Seed " + seed, expected.getTransitions(), actual.getTransitions());
+			assertEquals("Seed " + seed, expected.getTransitions(), byWeight.getTransitions());
+			for (Transition<StackSymbol, Configuration> t : expected.getTransitions()) {
+				assertEquals("Seed " + seed, expected.getWeightFor(t).value(), actual.getWeightFor(t).value());
+				assertEquals("Seed " + seed, expected.getWeightFor(t).value(), byWeight.getWeightFor(t).value());
+			}
+		}
+	}
+
+	@Test
+	public void cachedPoststarCreatesNoAccumulators() throws IllegalTransitionException {
+		for (int seed = 0; seed < 50; seed++) {
+			WPDS<StackSymbol, Configuration, Semiring> immutable = pds();
+			WPDS<StackSymbol, Configuration, Semiring> cached = pds();
+			cached.setWeightCache(new WeightCache<>(100));
+			for (Rule<StackSymbol, Configuration, Semiring> rule : randomRules(new Random(seed))) {
+				immutable.addRule(toUnion(rule, false));
+				cached.addRule(toUnion(rule, true));
+			}
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> expected = unionAccepts(1, "l0", false);
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> actual = unionAccepts(1, "l0", true);
+			try {
+				immutable.poststar(expected);
+			} catch (IllegalTransitionException e) {
+				continue;
+			}
+			cached.poststar(actual);
+			assertEquals("Seed " + seed, expected.getTransitions(), actual.getTransitions());
+			for (Transition<StackSymbol, Configuration> t : expected.getTransitions()) {
+				assertEquals("Seed " + seed, expected.getWeightFor(t).value(), actual.getWeightFor(t).value());
+				// Only the initial transition was added without the cache
+				if (!t.equals(t(1, "l0", ACCEPT)))
+					assertFalse("Seed " + seed, actual.getCurrentWeight(t).isAccumulator());
+			}
+		}
+	}
+
+	private static Rule<StackSymbol, Configuration, Semiring> toUnion(Rule<StackSymbol, Configuration, Semiring> rule, boolean accumulating) {
+		Semiring w = Union.of(accumulating, "w" + ((MinPlusSemiring) rule.getWeight()).longValue());
+		if (rule instanceof PushRule)
+			return new PushRule<>(rule.getS1(), rule.getL1(), rule.getS2(), rule.getL2(), ((PushRule<StackSymbol, Configuration, Semiring>) rule).getCallSite(), w);
+		if (rule instanceof PopRule)
+			return new PopRule<>(rule.getS1(), rule.getL1(), rule.getS2(), w);
+		return new NormalRule<>(rule.getS1(), rule.getL1(), rule.getS2(), rule.getL2(), w);
+	}
+
+	/**
+	 * Collects the labels of all rules on a path. Zero is not needed by post* and not modelled.
+	 */
+	static class Union extends Semiring<Set<String>> {
+		private final Set<String> labels;
+		private final boolean accumulating;
+		private final boolean accumulator;
+
+		Union(Set<String> labels, boolean accumulating, boolean accumulator) {
+			this.labels = labels;
+			this.accumulating = accumulating;
+			this.accumulator = accumulator;
+		}
+
+		static Union of(boolean accumulating, String... labels) {
+			Set<String> set = new HashSet<>();
+			Collections.addAll(set, labels);
+			return new Union(set, accumulating, false);
+		}
+
+		@Override
+		public Semiring extendWith(Semiring other) {
+			return combineWith(other);
+		}
+
+		@Override
+		public Semiring combineWith(Semiring other) {
+			Set<String> union = new HashSet<>(labels);
+			union.addAll(((Union) other).labels);
+			return new Union(union, accumulating, false);
+		}
+
+		@Override
+		public boolean leq(Semiring other) {
+			return ((Union) other).labels.containsAll(labels);
+		}
+
+		@Override
+		public Semiring accumulator() {
+			return accumulating ? new Union(new HashSet<>(labels), true, true) : null;
+		}
+
+		@Override
+		public boolean isAccumulator() {
+			return accumulator;
+		}
+
+		@Override
+		public boolean combineInto(Semiring target) {
+			return ((Union) target).labels.addAll(labels);
+		}
+
+		@Override
+		public Semiring snapshot() {
+			return accumulator ? new Union(new HashSet<>(labels), accumulating, false) : this;
+		}
+
+		@Override
+		public Set<String> value() {
+			return labels;
+		}
+
+		@Override
+		public int hashCode() {
+			return labels.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Union && ((Union) obj).labels.equals(labels);
+		}
+	}
+
+	private static WeightedAutomaton<StackSymbol, Configuration, Semiring> unionAccepts(int a, String c, boolean accumulate) {
+		WeightedAutomaton<StackSymbol, Configuration, Semiring> aut = new WeightedAutomaton<StackSymbol, Configuration, Semiring>(a(a)) {
+
+			@Override
+			public Configuration createState(Configuration d, StackSymbol loc) {
+				return new Configuration(d, loc);
+			}
+
+			@Override
+			public StackSymbol epsilon() {
+				return s("EPS");
+			}
+
+			@Override
+			public Semiring getOne() {
+				return Union.of(accumulate);
+			}
+
+			@Override
+			public Semiring getZero() {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public boolean isGeneratedState(Configuration d) {
+				return d.s != null;
+			}
+		};
+		aut.addFinalState(ACCEPT);
+		aut.addTransition(t(a, c, ACCEPT));
+		return aut;
+	}
+}
@@ -0,0 +1,112 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.weights.MinPlusSemiring;
+import de.breakpointsec.pushdown.weights.Semiring;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static de.breakpointsec.pushdown.ParallelSaturationTest.minPlusAccepts;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.pds;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.randomPDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BidirectionalQueryTest extends GenericPDSTest {
+
+	@Test
+	public void agreesWithPostStar() throws IllegalTransitionException {
+		for (int seed = 0; seed < 100; seed++) {
+			WPDS<StackSymbol, Configuration, Semiring> pds = randomPDS(new Random(seed));
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> post = minPlusAccepts(1, "l0");
+			try {
+				pds.poststar(post);
+			} catch (IllegalTransitionException e) {
+				continue;
+			}
+			Semiring expected = acceptanceWeight(post, a(2), s("l3"));
+			assertEquals("Seed " + seed, expected, pds.reachable(minPlusAccepts(1, "l0"), minPlusAccepts(2, "l3")));
+			assertEquals("Seed " + seed, expected != null, pds.isReachable(minPlusAccepts(1, "l0"), minPlusAccepts(2, "l3")));
+		}
+	}
+
+	@Test
+	public void callAndReturn() throws IllegalTransitionException {
+		WPDS<StackSymbol, Configuration, Semiring> pds = pds();
+		pds.addRule(normal(1, "a", 1, "b", MinPlusSemiring.of(1)));
+		pds.addRule(push(1, "b", 2, "call", "d", MinPlusSemiring.of(2)));
+		pds.addRule(normal(2, "call", 2, "e", MinPlusSemiring.of(3)));
+		pds.addRule(pop(2, "e", 3, MinPlusSemiring.of(4)));
+		pds.addRule(normal(3, "d", 4, "f", MinPlusSemiring.of(5)));
+		assertEquals(MinPlusSemiring.of(15), pds.reachable(minPlusAccepts(1, "a"), minPlusAccepts(4, "f")));
+		assertTrue(pds.isReachable(minPlusAccepts(1, "a"), minPlusAccepts(4, "f")));
+		assertNull(pds.reachable(minPlusAccepts(1, "a"), minPlusAccepts(4, "d")));
+		assertFalse(pds.isReachable(minPlusAccepts(1, "a"), minPlusAccepts(4, "d")));
+	}
+
+	@Test
+	public void stopsBeforeDeepCallChainIsSaturated() throws IllegalTransitionException {
+		int depth = 1000;
+		WPDS<StackSymbol, Configuration, Semiring> pds = pds();
+		pds.addRule(normal(1, "a", 1, "b", MinPlusSemiring.of(1)));
+		pds.addRule(push(1, "b", 1, "c0", "r", MinPlusSemiring.of(1)));
+		for (int i = 0; i < depth; i++) {
+			pds.addRule(push(1, "c" + i, 1, "c" + (i + 1), "r", MinPlusSemiring.of(1)));
+		}
+		WeightedAutomaton<StackSymbol, Configuration, Semiring> full = minPlusAccepts(1, "a");
+		pds.poststar(full);
+		assertTrue(full.getTransitions().size() > 2 * depth);
+
+		WeightedAutomaton<StackSymbol, Configuration, Semiring> source = minPlusAccepts(1, "a");
+		assertTrue(pds.isReachable(source, minPlusAccepts(1, "b")));
+		assertTrue(source.getTransitions().size() < 10);
+
+		// pre* of <1, b> is complete after a few steps, post* of <1, a> does not have to be
+		source = minPlusAccepts(1, "a");
+		assertEquals(MinPlusSemiring.of(1), pds.reachable(source, minPlusAccepts(1, "b")));
+		assertTrue(source.getTransitions().size() < 10);
+	}
+
+	/**
+	 * Weight of the configuration <p, l> in a post* automaton, combined over the paths p~l~>f and p~eps~>q~l~>f into a final state f.
+	 */
+	private static Semiring acceptanceWeight(WeightedAutomaton<StackSymbol, Configuration, Semiring> fa, Configuration p, StackSymbol l) {
+		Semiring result = null;
+		for (Transition<StackSymbol, Configuration> t : fa.getTransitionsOutOf(p, l)) {
+			if (fa.getFinalState().contains(t.getTarget()))
+				result = combine(result, fa.getWeightFor(t));
+		}
+		for (Transition<StackSymbol, Configuration> eps : fa.getTransitionsOutOf(p, fa.epsilon())) {
+			for (Transition<StackSymbol, Configuration> t : fa.getTransitionsOutOf(eps.getTarget(), l)) {
+				if (fa.getFinalState().contains(t.getTarget()))
+					result = combine(result, fa.getWeightFor(t).extendWith(fa.getWeightFor(eps)));
+			}
+		}
+		return result;
+	}
+
+	private static Semiring combine(Semiring a, Semiring b) {
+		return a == null ? b : a.combineWith(b);
+	}
+}
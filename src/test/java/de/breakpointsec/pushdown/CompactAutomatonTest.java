@@ -0,0 +1,93 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.CompactAutomaton;
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.weights.Semiring;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+
+import static de.breakpointsec.pushdown.ParallelSaturationTest.minPlusAccepts;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.randomPDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompactAutomatonTest extends GenericPDSTest {
+
+	@Test
+	public void copyOfSaturatedAutomaton() {
+		for (int seed = 0; seed < 50; seed++) {
+			WPDS<StackSymbol, Configuration, Semiring> pds = randomPDS(new Random(seed));
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> fa = minPlusAccepts(1, "l0");
+			try {
+				pds.poststar(fa);
+			} catch (IllegalTransitionException e) {
+				continue;
+			}
+			CompactAutomaton<StackSymbol, Configuration, Semiring> compact = CompactAutomaton.copyOf(fa);
+			assertEquals(fa.getTransitions().size(), compact.size());
+			assertEquals(new HashSet<>(fa.getTransitions()), new HashSet<>(compact.getTransitions()));
+			for (Transition<StackSymbol, Configuration> t : fa.getTransitions()) {
+				assertEquals(fa.getWeightFor(t), compact.getWeightFor(t));
+			}
+			for (Configuration s : fa.getStates()) {
+				assertEquals(new HashSet<>(fa.getTransitionsOutOf(s)), new HashSet<>(compact.getTransitionsOutOf(s)));
+				assertEquals(new HashSet<>(fa.getTransitionsInto(s)), new HashSet<>(compact.getTransitionsInto(s)));
+			}
+			assertTrue(compact.isFinalState(ACCEPT));
+			assertEquals(fa.getInitialState(), compact.getInitialState());
+		}
+	}
+
+	@Test
+	public void addAfterQuery() {
+		CompactAutomaton<StackSymbol, Configuration, Semiring> compact = new CompactAutomaton<>(a(1));
+		assertTrue(compact.addTransition(t(1, "a", 2), null));
+		assertEquals(1, compact.getTransitionsOutOf(a(1)).size());
+		assertTrue(compact.addTransition(t(1, "b", 3), null));
+		assertFalse(compact.addTransition(t(1, "b", 3), null));
+		assertEquals(2, compact.getTransitionsOutOf(a(1)).size());
+		assertEquals(t(1, "b", 3), compact.getTransitionsInto(a(3)).get(0));
+		assertFalse(compact.containsTransition(t(2, "b", 3)));
+		assertNull(compact.getWeightFor(t(4, "b", 3)));
+		assertFalse(compact.isFinalState(a(1)));
+	}
+
+	@Test
+	public void moreStatesThanTwentyOneBitIds() {
+		int n = (1 << 21) + 2;
+		CompactAutomaton<String, Integer, Semiring> compact = new CompactAutomaton<>(0);
+		for (int i = 0; i < n; i++) {
+			compact.addFinalState(i);
+		}
+		Transition<String, Integer> high = new Transition<>(n - 1, "a", n);
+		Transition<String, Integer> low = new Transition<>(1, "a", 2);
+		assertTrue(compact.addTransition(high, null));
+		assertFalse(compact.containsTransition(low));
+		assertTrue(compact.addTransition(low, null));
+		assertEquals(high, compact.getTransitionsOutOf(n - 1).get(0));
+		assertEquals(low, compact.getTransitionsInto(2).get(0));
+		assertEquals(n + 1, compact.getStates().size());
+	}
+}
@@ -0,0 +1,103 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.weights.Semiring;
+import de.breakpointsec.pushdown.weights.WeightCache;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static de.breakpointsec.pushdown.ParallelSaturationTest.minPlusAccepts;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.randomPDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompiledWPDSTest extends GenericPDSTest {
+
+	@Test
+	public void saturationMatchesSource() throws IllegalTransitionException {
+		for (int seed = 0; seed < 50; seed++) {
+			WPDS<StackSymbol, Configuration, Semiring> pds = randomPDS(new Random(seed));
+			CompiledWPDS<StackSymbol, Configuration, Semiring> compiled = pds.compile();
+			assertEquals(pds.getAllRules(), compiled.getAllRules());
+
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> expected = minPlusAccepts(1, "l0");
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> actual = minPlusAccepts(1, "l0");
+			pds.prestar(expected);
+			compiled.prestar(actual);
+			assertSameAutomaton(seed, expected, actual);
+
+			expected = minPlusAccepts(1, "l0");
+			actual = minPlusAccepts(1, "l0");
+			try {
+				pds.poststar(expected);
+			} catch (IllegalTransitionException e) {
+				continue;
+			}
+			compiled.poststar(actual);
+			assertSameAutomaton(seed, expected, actual);
+		}
+	}
+
+	private static void assertSameAutomaton(int seed, WeightedAutomaton<StackSymbol, Configuration, Semiring> expected,
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> actual) {
+		assertEquals("Seed " + seed, expected.getTransitions(), actual.getTransitions());
+		for (Transition<StackSymbol, Configuration> t : expected.getTransitions()) {
+			assertEquals("Seed " + seed, expected.getWeightFor(t), actual.getWeightFor(t));
+		}
+	}
+
+	@Test
+	public void lookups() {
+		WPDS<StackSymbol, Configuration, Semiring> pds = randomPDS(new Random(0));
+		CompiledWPDS<StackSymbol, Configuration, Semiring> compiled = pds.compile();
+		for (int a = 0; a < 6; a++) {
+			for (int l = 0; l < 6; l++) {
+				assertEquals(pds.getNormalRulesStarting(a(a), s("l" + l)), compiled.getNormalRulesStarting(a(a), s("l" + l)));
+				assertEquals(pds.getPushRulesStarting(a(a), s("l" + l)), compiled.getPushRulesStarting(a(a), s("l" + l)));
+				assertEquals(pds.getPopRulesStarting(a(a), s("l" + l)), compiled.getPopRulesStarting(a(a), s("l" + l)));
+				assertEquals(pds.getNormalRulesEnding(a(a), s("l" + l)), compiled.getNormalRulesEnding(a(a), s("l" + l)));
+				assertEquals(pds.getPushRulesEnding(a(a), s("l" + l)), compiled.getPushRulesEnding(a(a), s("l" + l)));
+			}
+		}
+		for (int l = 0; l < 6; l++) {
+			assertEquals(pds.getPushRulesEnding(s("l" + l)), compiled.getPushRulesEnding(s("l" + l)));
+			assertEquals(pds.getPushRulesWithCallSite(s("l" + l)), compiled.getPushRulesWithCallSite(s("l" + l)));
+		}
+	}
+
+	@Test
+	public void sharesWeightCache() throws IllegalTransitionException {
+		WPDS<StackSymbol, Configuration, Semiring> pds = randomPDS(new Random(0));
+		WeightCache<Semiring> cache = new WeightCache<>(100);
+		pds.setWeightCache(cache);
+		CompiledWPDS<StackSymbol, Configuration, Semiring> compiled = pds.compile();
+		assertSame(cache, compiled.getWeightCache());
+		compiled.prestar(minPlusAccepts(1, "l0"));
+		assertTrue(cache.extendStats().requestCount() > 0);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void immutable() {
+		randomPDS(new Random(0)).compile().addRule(normal(1, "a", 1, "b", w(1)));
+	}
+}
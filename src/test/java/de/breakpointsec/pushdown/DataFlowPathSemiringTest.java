@@ -0,0 +1,102 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+import de.breakpointsec.pushdown.weights.DataFlowPathSemiring;
+import de.breakpointsec.pushdown.weights.Semiring;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DataFlowPathSemiringTest {
+
+	@Test
+	public void leqMatchesCombine() {
+		Random random = new Random(0);
+		for (int i = 0; i < 1000; i++) {
+			Semiring f = randomPath(random);
+			Semiring g = randomPath(random);
+			assertEquals(f + " " + g, f.combineWith(g).equals(g) && g.combineWith(f).equals(g), f.leq(g));
+			// Extending with a statement already on the path shares the statement set
+			Semiring h = g.extendWith(new DataFlowPathSemiring<>("s" + random.nextInt(6)));
+			assertEquals(h + " " + g, h.combineWith(g).equals(g) && g.combineWith(h).equals(g), h.leq(g));
+		}
+	}
+
+	@Test
+	public void leqComparesLastStatementsOfSharedSet() {
+		Semiring old = new DataFlowPathSemiring<>("a").extendWith(new DataFlowPathSemiring<>("b"));
+		Semiring w = old.extendWith(new DataFlowPathSemiring<>("a"));
+		assertFalse(w.leq(old));
+		assertFalse(old.combineWith(w).equals(old));
+	}
+
+	@Test
+	public void accumulatorMatchesCombine() {
+		Random random = new Random(0);
+		for (int i = 0; i < 1000; i++) {
+			Semiring f = randomPath(random);
+			Semiring g = randomPath(random);
+			Semiring accumulator = f.accumulator();
+			if (accumulator == null) {
+				assertTrue(f == DataFlowPathSemiring.one() || f == DataFlowPathSemiring.zero());
+				continue;
+			}
+			assertTrue(accumulator.isAccumulator());
+			Semiring expected = f.combineWith(g);
+			assertEquals(!expected.equals(f), g.combineInto(accumulator));
+			assertEquals(expected, accumulator);
+			Semiring snapshot = accumulator.snapshot();
+			assertFalse(snapshot.isAccumulator());
+			assertEquals(expected, snapshot);
+			assertEquals(expected.extendWith(g), accumulator.extendWith(g));
+			assertEquals(g.extendWith(expected), g.extendWith(accumulator));
+			assertFalse(accumulator.extendWith(DataFlowPathSemiring.one()).isAccumulator());
+			assertFalse(DataFlowPathSemiring.one().extendWith(accumulator).isAccumulator());
+		}
+	}
+
+	@Test
+	public void zeroAbsorbsAccumulator() {
+		Semiring accumulator = new DataFlowPathSemiring<>("a").accumulator();
+		assertTrue(DataFlowPathSemiring.zero().combineInto(accumulator));
+		assertFalse(new DataFlowPathSemiring<>("b").combineInto(accumulator));
+		assertSame(DataFlowPathSemiring.zero(), accumulator.snapshot());
+		assertNull(DataFlowPathSemiring.zero().accumulator());
+	}
+
+	private static Semiring randomPath(Random random) {
+		switch (random.nextInt(8)) {
+		case 0:
+			return DataFlowPathSemiring.one();
+		case 1:
+			return DataFlowPathSemiring.zero();
+		default:
+			Semiring path = new DataFlowPathSemiring<>("s" + random.nextInt(6));
+			for (int i = random.nextInt(3); i > 0; i--) {
+				path = path.extendWith(new DataFlowPathSemiring<>("s" + random.nextInt(6)));
+			}
+			return path;
+		}
+	}
+}
@@ -0,0 +1,186 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.rules.Rule;
+import de.breakpointsec.pushdown.weights.BitVectorDomain;
+import de.breakpointsec.pushdown.weights.GenKillSemiring;
+import de.breakpointsec.pushdown.weights.Semiring;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static de.breakpointsec.pushdown.ParallelSaturationTest.pds;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.randomRules;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.weights;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GenKillSemiringTest extends GenericPDSTest {
+
+	@Test
+	public void operationsMatchFunctions() {
+		Random random = new Random(0);
+		BitVectorDomain domain = new BitVectorDomain(150);
+		for (int i = 0; i < 1000; i++) {
+			GenKillSemiring f = randomFunction(random, domain);
+			GenKillSemiring g = randomFunction(random, domain);
+			BitSet in = randomSet(random, domain.size());
+			assertEquals(g.apply(f.apply(in)), ((GenKillSemiring) f.extendWith(g)).apply(in));
+			BitSet union = f.apply(in);
+			union.or(g.apply(in));
+			assertEquals(union, ((GenKillSemiring) f.combineWith(g)).apply(in));
+			assertEquals(f.combineWith(g).equals(g), f.leq(g));
+		}
+	}
+
+	@Test
+	public void constantsAndInterning() {
+		BitVectorDomain domain = new BitVectorDomain(10);
+		GenKillSemiring f = domain.gen(1, 2);
+		assertSame(f, domain.gen(2, 1));
+		assertSame(f, f.extendWith(domain.one()));
+		assertSame(f, domain.one().extendWith(f));
+		assertSame(domain.zero(), f.extendWith(domain.zero()));
+		assertSame(f, f.combineWith(domain.zero()));
+		assertSame(f, f.combineWith(f));
+		assertSame(domain.kill(3), domain.kill(3).extendWith(domain.kill(3)));
+		assertSame(domain.gen(1, 2, 3), f.combineWith(domain.gen(3)));
+		BitSet three = new BitSet();
+		three.set(3);
+		assertSame(domain.gen(3), domain.genKill(three, three));
+	}
+
+	@Test
+	public void accumulatorMatchesCombine() {
+		Random random = new Random(0);
+		BitVectorDomain domain = new BitVectorDomain(150);
+		for (int i = 0; i < 1000; i++) {
+			GenKillSemiring f = randomFunction(random, domain);
+			GenKillSemiring g = randomFunction(random, domain);
+			Semiring accumulator = f.accumulator();
+			assertTrue(accumulator.isAccumulator());
+			Semiring expected = f.combineWith(g);
+			assertEquals(!expected.equals(f), g.combineInto(accumulator));
+			assertEquals(expected, accumulator);
+			assertSame(expected, accumulator.snapshot());
+			assertSame(expected.extendWith(g), accumulator.extendWith(g));
+			assertSame(g.combineWith(expected), g.combineWith(accumulator));
+		}
+		assertNull(domain.zero().accumulator());
+		Semiring accumulator = domain.gen(1).accumulator();
+		assertFalse(domain.zero().combineInto(accumulator));
+		assertSame(domain.gen(1), accumulator.combineWith(domain.zero()));
+	}
+
+	@Test
+	public void poststarWithAccumulatorsMatchesParallel() throws IllegalTransitionException {
+		BitVectorDomain domain = new BitVectorDomain(70);
+		for (int seed = 0; seed < 30; seed++) {
+			Random random = new Random(seed);
+			GenKillSemiring[] functions = new GenKillSemiring[10];
+			for (int i = 0; i < functions.length; i++) {
+				functions[i] = randomFunction(random, domain);
+			}
+			WPDS<StackSymbol, Configuration, Semiring> pds = pds();
+			for (Rule<StackSymbol, Configuration, Semiring> rule : randomRules(random, value -> functions[(int) value])) {
+				pds.addRule(rule);
+			}
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> expected = genKillAccepts(domain, 1, "l0");
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> actual = genKillAccepts(domain, 1, "l0");
+			try {
+				pds.poststarParallel(expected);
+			} catch (IllegalTransitionException e) {
+				continue;
+			}
+			pds.poststar(actual);
+			assertEquals("Seed " + seed, weights(expected), weights(actual));
+			for (Transition<StackSymbol, Configuration> t : actual.getTransitions()) {
+				assertFalse(actual.getWeightFor(t).isAccumulator());
+			}
+		}
+	}
+
+	@Test
+	public void killAcrossCall() throws IllegalTransitionException {
+		BitVectorDomain domain = new BitVectorDomain(2);
+		WPDS<StackSymbol, Configuration, Semiring> pds = pds();
+		pds.addRule(normal(1, "a", 1, "b", domain.gen(0)));
+		pds.addRule(push(1, "b", 1, "f", "c", domain.one()));
+		pds.addRule(normal(1, "f", 1, "g", domain.kill(0)));
+		pds.addRule(pop(1, "g", 1, domain.gen(1)));
+		WeightedAutomaton<StackSymbol, Configuration, Semiring> fa = genKillAccepts(domain, 1, "a");
+		pds.poststar(fa);
+		Semiring w = fa.getWeightFor(t(1, "c", ACCEPT));
+		BitSet expected = new BitSet();
+		expected.set(1);
+		assertEquals(expected, w.value());
+	}
+
+	private static GenKillSemiring randomFunction(Random random, BitVectorDomain domain) {
+		return domain.genKill(randomSet(random, domain.size()), randomSet(random, domain.size()));
+	}
+
+	private static BitSet randomSet(Random random, int size) {
+		BitSet set = new BitSet();
+		for (int i = 0; i < size; i++) {
+			if (random.nextInt(4) == 0)
+				set.set(i);
+		}
+		return set;
+	}
+
+	private static WeightedAutomaton<StackSymbol, Configuration, Semiring> genKillAccepts(BitVectorDomain domain, int a, String c) {
+		WeightedAutomaton<StackSymbol, Configuration, Semiring> aut = new WeightedAutomaton<StackSymbol, Configuration, Semiring>(a(a)) {
+
+			@Override
+			public Configuration createState(Configuration d, StackSymbol loc) {
+				return new Configuration(d, loc);
+			}
+
+			@Override
+			public StackSymbol epsilon() {
+				return s("EPS");
+			}
+
+			@Override
+			public Semiring getOne() {
+				return domain.one();
+			}
+
+			@Override
+			public Semiring getZero() {
+				return domain.zero();
+			}
+
+			@Override
+			public boolean isGeneratedState(Configuration d) {
+				return d.s != null;
+			}
+		};
+		aut.addFinalState(ACCEPT);
+		aut.addTransition(t(a, c, ACCEPT));
+		return aut;
+	}
+}
@@ -0,0 +1,79 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.weights.MinPlusSemiring;
+import de.breakpointsec.pushdown.weights.Semiring;
+import org.junit.Test;
+
+import java.util.Comparator;
+import java.util.Random;
+
+import static de.breakpointsec.pushdown.ParallelSaturationTest.minPlusAccepts;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.pds;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.randomPDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GoalDirectedPostStarTest extends GenericPDSTest {
+
+	private static final Comparator<Semiring> SHORTEST = Comparator.comparingLong(w -> ((MinPlusSemiring) w).longValue());
+
+	@Test
+	public void targetWeightIsFinal() throws IllegalTransitionException {
+		for (int seed = 0; seed < 100; seed++) {
+			WPDS<StackSymbol, Configuration, Semiring> pds = randomPDS(new Random(seed));
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> full = minPlusAccepts(1, "l0");
+			try {
+				pds.poststar(full);
+			} catch (IllegalTransitionException e) {
+				continue;
+			}
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> fa = minPlusAccepts(1, "l0");
+			Transition<StackSymbol, Configuration> found = pds.poststarUntil(fa, a(2), s("l3"), SHORTEST);
+
+			long best = Long.MAX_VALUE;
+			for (Transition<StackSymbol, Configuration> t : full.getTransitions()) {
+				if (t.getStart().equals(a(2)) && t.getLabel().equals(s("l3")) && !full.isGeneratedState(t.getTarget()))
+					best = Math.min(best, ((MinPlusSemiring) full.getWeightFor(t)).longValue());
+			}
+			if (best == Long.MAX_VALUE) {
+				assertNull("Seed " + seed, found);
+			} else {
+				assertEquals("Seed " + seed, full.getWeightFor(found), fa.getWeightFor(found));
+				assertEquals("Seed " + seed, MinPlusSemiring.of(best), fa.getWeightFor(found));
+			}
+		}
+	}
+
+	@Test
+	public void stopsBeforeFixpoint() throws IllegalTransitionException {
+		WPDS<StackSymbol, Configuration, Semiring> pds = pds();
+		pds.addRule(normal(1, "a", 1, "b", MinPlusSemiring.of(1)));
+		pds.addRule(normal(1, "a", 1, "c", MinPlusSemiring.of(5)));
+		pds.addRule(normal(1, "c", 1, "d", MinPlusSemiring.of(1)));
+		WeightedAutomaton<StackSymbol, Configuration, Semiring> fa = minPlusAccepts(1, "a");
+		Transition<StackSymbol, Configuration> found = pds.poststarUntil(fa, a(1), s("b"), SHORTEST);
+		assertEquals(t(1, "b", ACCEPT), found);
+		assertEquals(MinPlusSemiring.of(1), fa.getWeightFor(found));
+		assertTrue(!fa.getTransitions().contains(t(1, "d", ACCEPT)));
+	}
+}
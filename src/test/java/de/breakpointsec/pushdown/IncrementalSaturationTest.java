@@ -0,0 +1,206 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.rules.Rule;
+import de.breakpointsec.pushdown.weights.MinPlusSemiring;
+import de.breakpointsec.pushdown.weights.Semiring;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static de.breakpointsec.pushdown.ParallelSaturationTest.minPlusAccepts;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.pds;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.randomRules;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.weights;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that automata kept up to date while rules are added equal the ones saturated from scratch.
+ */
+public class IncrementalSaturationTest extends GenericPDSTest {
+
+	@Test
+	public void poststarIncrementalMatchesFromScratch() throws IllegalTransitionException {
+		for (int seed = 0; seed < 50; seed++) {
+			List<Rule<StackSymbol, Configuration, Semiring>> rules = randomRules(new Random(seed));
+			WPDS<StackSymbol, Configuration, Semiring> incremental = pds();
+			WPDS<StackSymbol, Configuration, Semiring> scratch = pds();
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> fa = minPlusAccepts(1, "l0");
+			try {
+				incremental.poststarIncremental(fa);
+				for (Rule<StackSymbol, Configuration, Semiring> rule : rules) {
+					incremental.addRule(rule);
+					scratch.addRule(rule);
+					WeightedAutomaton<StackSymbol, Configuration, Semiring> expected = minPlusAccepts(1, "l0");
+					scratch.poststar(expected);
+					assertEquals("Seed " + seed + " after " + rule, weights(expected), weights(fa));
+				}
+			} catch (IllegalTransitionException | RuntimeException e) {
+				// Epsilon loops end the seed, addRule reports them wrapped since it does not declare the exception.
+				if (!(e instanceof IllegalTransitionException) && !(e.getCause() instanceof IllegalTransitionException))
+					throw e;
+			}
+		}
+	}
+
+	@Test
+	public void prestarIncrementalMatchesFromScratch() throws IllegalTransitionException {
+		for (int seed = 0; seed < 50; seed++) {
+			List<Rule<StackSymbol, Configuration, Semiring>> rules = randomRules(new Random(seed));
+			WPDS<StackSymbol, Configuration, Semiring> incremental = pds();
+			WPDS<StackSymbol, Configuration, Semiring> scratch = pds();
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> fa = minPlusAccepts(1, "l0");
+			incremental.prestarIncremental(fa);
+			for (Rule<StackSymbol, Configuration, Semiring> rule : rules) {
+				incremental.addRule(rule);
+				scratch.addRule(rule);
+			}
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> expected = minPlusAccepts(1, "l0");
+			scratch.prestar(expected);
+			assertEquals("Seed " + seed, weights(expected), weights(fa));
+
+			// New target configurations
+			fa.addTransition(t(2, "l3", ACCEPT));
+			fa.addTransition(t(3, "l1", a(2)));
+			expected = minPlusAccepts(1, "l0");
+			expected.addTransition(t(2, "l3", ACCEPT));
+			expected.addTransition(t(3, "l1", a(2)));
+			scratch.prestar(expected);
+			assertEquals("Seed " + seed, weights(expected), weights(fa));
+		}
+	}
+
+	@Test
+	public void removeRuleMatchesFromScratch() throws IllegalTransitionException {
+		for (int seed = 0; seed < 50; seed++) {
+			List<Rule<StackSymbol, Configuration, Semiring>> rules = new ArrayList<>(new LinkedHashSet<>(randomRules(new Random(seed))));
+			WPDS<StackSymbol, Configuration, Semiring> incremental = pds();
+			for (Rule<StackSymbol, Configuration, Semiring> rule : rules) {
+				incremental.addRule(rule);
+			}
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> post = minPlusAccepts(1, "l0");
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> pre = minPlusAccepts(1, "l0");
+			try {
+				incremental.poststarIncremental(post);
+			} catch (IllegalTransitionException e) {
+				post = null;
+			}
+			incremental.prestarIncremental(pre);
+			pre.addTransition(t(2, "l3", ACCEPT));
+
+			Collections.shuffle(rules, new Random(seed));
+			while (!rules.isEmpty()) {
+				Rule<StackSymbol, Configuration, Semiring> removed = rules.remove(rules.size() - 1);
+				assertTrue(incremental.removeRule(removed));
+				assertFalse(incremental.removeRule(removed));
+				WPDS<StackSymbol, Configuration, Semiring> scratch = pds();
+				for (Rule<StackSymbol, Configuration, Semiring> rule : rules) {
+					scratch.addRule(rule);
+				}
+				if (post != null) {
+					WeightedAutomaton<StackSymbol, Configuration, Semiring> expected = minPlusAccepts(1, "l0");
+					scratch.poststar(expected);
+					assertEquals("Seed " + seed + " after removing " + removed, weights(expected), weights(post));
+				}
+				WeightedAutomaton<StackSymbol, Configuration, Semiring> expected = minPlusAccepts(1, "l0");
+				expected.addTransition(t(2, "l3", ACCEPT));
+				scratch.prestar(expected);
+				assertEquals("Seed " + seed + " after removing " + removed, weights(expected), weights(pre));
+			}
+		}
+	}
+
+	@Test
+	public void detachedAutomatonIsNotUpdated() throws IllegalTransitionException {
+		WPDS<StackSymbol, Configuration, Semiring> pds = pds();
+		pds.addRule(normal(1, "a", 1, "b", MinPlusSemiring.of(1)));
+		WeightedAutomaton<StackSymbol, Configuration, Semiring> fa = minPlusAccepts(1, "a");
+		pds.poststarIncremental(fa);
+		pds.addRule(push(1, "b", 2, "c", "d", MinPlusSemiring.of(2)));
+		assertTrue(fa.getTransitions().contains(t(2, "c", a(2, "c"))));
+		assertEquals(MinPlusSemiring.of(3), fa.getWeightFor(t(a(2, "c"), "d", ACCEPT)));
+
+		assertTrue(pds.detach(fa));
+		assertFalse(pds.detach(fa));
+		pds.addRule(normal(2, "c", 3, "e", MinPlusSemiring.of(4)));
+		assertFalse(fa.getTransitions().contains(t(3, "e", a(2, "c"))));
+	}
+
+	@Test
+	public void failedSaturationsDoNotStopTheOthers() throws IllegalTransitionException {
+		WPDS<StackSymbol, Configuration, Semiring> pds = pds();
+		WeightedAutomaton<StackSymbol, Configuration, Semiring> first = minPlusAccepts(1, "a");
+		WeightedAutomaton<StackSymbol, Configuration, Semiring> second = minPlusAccepts(2, "a");
+		WeightedAutomaton<StackSymbol, Configuration, Semiring> unaffected = minPlusAccepts(3, "b");
+		pds.poststarIncremental(first);
+		pds.poststarIncremental(second);
+		pds.poststarIncremental(unaffected);
+		List<Rule<StackSymbol, Configuration, Semiring>> rules = new ArrayList<>();
+		// Popping to ACCEPT from a transition into ACCEPT is an epsilon loop
+		rules.add(pop(1, "a", 999, MinPlusSemiring.of(0)));
+		rules.add(pop(2, "a", 999, MinPlusSemiring.of(0)));
+		rules.add(normal(3, "b", 3, "c", MinPlusSemiring.of(1)));
+		try {
+			pds.addRules(rules);
+			fail();
+		} catch (RuntimeException e) {
+			assertTrue(e.getCause() instanceof IllegalTransitionException);
+			assertEquals(1, e.getSuppressed().length);
+		}
+		assertEquals(MinPlusSemiring.of(1), unaffected.getWeightFor(t(3, "c", ACCEPT)));
+		assertFalse(pds.detach(first));
+		assertFalse(pds.detach(second));
+		assertTrue(pds.detach(unaffected));
+	}
+
+	@Test(timeout = 10000)
+	public void attachedAutomatonRejectsOtherSaturations() throws IllegalTransitionException {
+		WPDS<StackSymbol, Configuration, Semiring> pds = pds();
+		pds.addRule(normal(1, "a", 1, "b", MinPlusSemiring.of(1)));
+		WeightedAutomaton<StackSymbol, Configuration, Semiring> fa = minPlusAccepts(1, "b");
+		pds.prestarIncremental(fa);
+		Map<?, ?> saturated = weights(fa);
+		try {
+			pds.prestar(fa);
+			fail();
+		} catch (IllegalStateException e) {
+			// Seeding it used to resume the incremental pre* under the read lock and wait for the write lock forever
+		}
+		try {
+			pds.poststar(fa);
+			fail();
+		} catch (IllegalStateException e) {
+		}
+		assertEquals(saturated, weights(fa));
+
+		pds.addRule(normal(1, "c", 1, "a", MinPlusSemiring.of(2)));
+		assertEquals(MinPlusSemiring.of(3), fa.getWeightFor(t(1, "c", ACCEPT)));
+		assertTrue(pds.detach(fa));
+		pds.prestar(fa);
+	}
+}
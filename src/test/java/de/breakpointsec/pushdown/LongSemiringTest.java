@@ -0,0 +1,137 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.LongWeightStore;
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.weights.BoundedCountingSemiring;
+import de.breakpointsec.pushdown.weights.MaxPlusSemiring;
+import de.breakpointsec.pushdown.weights.MinPlusSemiring;
+import de.breakpointsec.pushdown.weights.Semiring;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static de.breakpointsec.pushdown.ParallelSaturationTest.minPlusAccepts;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.randomPDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LongSemiringTest extends GenericPDSTest {
+
+	@Test
+	public void operations() {
+		assertSame(MinPlusSemiring.ONE, MinPlusSemiring.of(0));
+		assertEquals(MinPlusSemiring.of(5), MinPlusSemiring.of(2).extendWith(MinPlusSemiring.of(3)));
+		assertSame(MinPlusSemiring.ZERO, MinPlusSemiring.of(2).extendWith(MinPlusSemiring.ZERO));
+		assertEquals(MinPlusSemiring.INFINITY, MinPlusSemiring.extend(Long.MAX_VALUE - 1, 2));
+		assertTrue(MinPlusSemiring.of(3).leq(MinPlusSemiring.of(2)));
+		assertFalse(MinPlusSemiring.of(2).leq(MinPlusSemiring.of(3)));
+
+		Semiring two = MaxPlusSemiring.of(2);
+		assertSame(two, two.combineWith(MaxPlusSemiring.of(-4)));
+		assertSame(two, MaxPlusSemiring.ZERO.combineWith(two));
+		assertEquals(MaxPlusSemiring.of(-2), two.extendWith(MaxPlusSemiring.of(-4)));
+
+		Semiring three = BoundedCountingSemiring.of(3, 4);
+		assertEquals(BoundedCountingSemiring.of(4, 4), three.extendWith(three));
+		assertSame(three, three.combineWith(BoundedCountingSemiring.zero(4)));
+		assertEquals(BoundedCountingSemiring.zero(4), three.extendWith(BoundedCountingSemiring.zero(4)));
+	}
+
+	@Test
+	public void weightStore() {
+		LongWeightStore<StackSymbol, Configuration, MinPlusSemiring> store = new LongWeightStore<>(MinPlusSemiring::of);
+		Map<Transition<StackSymbol, Configuration>, MinPlusSemiring> expected = new HashMap<>();
+		Random random = new Random(0);
+		for (int i = 0; i < 10000; i++) {
+			Transition<StackSymbol, Configuration> t = t(random.nextInt(50), "l" + random.nextInt(10), random.nextInt(50));
+			if (random.nextInt(3) == 0) {
+				store.remove(t);
+				expected.remove(t);
+			} else {
+				MinPlusSemiring w = MinPlusSemiring.of(random.nextInt(100));
+				store.put(t, w);
+				expected.put(t, w);
+			}
+		}
+		assertEquals(expected.size(), store.size());
+		Map<Transition<StackSymbol, Configuration>, MinPlusSemiring> actual = new HashMap<>();
+		store.forEach(actual::put);
+		assertEquals(expected, actual);
+		assertNull(store.get(t(99, "l0", 99)));
+
+		Transition<StackSymbol, Configuration> t = t(1, "l0", 2);
+		store.put(t, MinPlusSemiring.of(7));
+		assertFalse(store.combineLong(t, 9, MinPlusSemiring.ONE));
+		assertEquals(7, store.getLong(t, -1));
+		assertTrue(store.combineLong(t, 3, MinPlusSemiring.ONE));
+		assertEquals(3, store.getLong(t, -1));
+		store.put(t, null);
+		assertNull(store.get(t));
+	}
+
+	@Test
+	public void poststarWithPrimitiveStorage() throws IllegalTransitionException {
+		saturateWithPrimitiveStorage(true);
+	}
+
+	@Test
+	public void prestarWithPrimitiveStorage() throws IllegalTransitionException {
+		saturateWithPrimitiveStorage(false);
+	}
+
+	private static void saturateWithPrimitiveStorage(boolean post) throws IllegalTransitionException {
+		for (int seed = 0; seed < 50; seed++) {
+			// Same rules, saturated with object storage and with primitive storage
+			WPDS<StackSymbol, Configuration, Semiring> pds = randomPDS(new Random(seed));
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> expected = minPlusAccepts(1, "l0");
+			AtomicInteger created = new AtomicInteger();
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> actual = minPlusAccepts(1, "l0", new LongWeightStore<>(value -> {
+				created.incrementAndGet();
+				return MinPlusSemiring.of(value);
+			}));
+			created.set(0);
+			try {
+				if (post)
+					pds.poststar(expected);
+				else
+					pds.prestar(expected);
+			} catch (IllegalTransitionException e) {
+				continue;
+			}
+			if (post)
+				pds.poststar(actual);
+			else
+				pds.prestar(actual);
+			// Rules fire on the plain values in the store
+			assertEquals("Seed " + seed, 0, created.get());
+			assertEquals("Seed " + seed, expected.getTransitions(), actual.getTransitions());
+			for (Transition<StackSymbol, Configuration> t : expected.getTransitions()) {
+				assertEquals("Seed " + seed, expected.getWeightFor(t), actual.getWeightFor(t));
+			}
+		}
+	}
+}
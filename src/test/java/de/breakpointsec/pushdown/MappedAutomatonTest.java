@@ -0,0 +1,107 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.MappedAutomaton;
+import de.breakpointsec.pushdown.fsm.MappedWeightStore;
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.weights.MinPlusSemiring;
+import de.breakpointsec.pushdown.weights.Semiring;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static de.breakpointsec.pushdown.ParallelSaturationTest.minPlusAccepts;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.randomPDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MappedAutomatonTest extends GenericPDSTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void copyAndReopenSaturatedAutomaton() throws IOException {
+		for (int seed = 0; seed < 20; seed++) {
+			WPDS<StackSymbol, Configuration, Semiring> pds = randomPDS(new Random(seed));
+			Path file = folder.newFile().toPath();
+			List<Configuration> states;
+			List<StackSymbol> labels;
+			// Saturate with the weights off the heap, then move the whole automaton there
+			try (MappedWeightStore<StackSymbol, Configuration, MinPlusSemiring> store = new MappedWeightStore<>(folder.newFile().toPath(), MinPlusSemiring::of)) {
+				WeightedAutomaton<StackSymbol, Configuration, Semiring> fa = minPlusAccepts(1, "l0", store);
+				try {
+					pds.poststar(fa);
+				} catch (IllegalTransitionException e) {
+					continue;
+				}
+				try (MappedAutomaton<StackSymbol, Configuration, MinPlusSemiring> mapped = MappedAutomaton.copyOf(fa, file, MinPlusSemiring::of)) {
+					assertMatches(fa, mapped);
+					states = mapped.getStates();
+					labels = mapped.getLabels();
+				}
+				try (MappedAutomaton<StackSymbol, Configuration, MinPlusSemiring> reopened = MappedAutomaton.open(file, MinPlusSemiring::of, states, labels)) {
+					assertMatches(fa, reopened);
+				}
+			}
+		}
+	}
+
+	private static void assertMatches(WeightedAutomaton<StackSymbol, Configuration, Semiring> fa, MappedAutomaton<StackSymbol, Configuration, MinPlusSemiring> mapped) {
+		assertEquals(fa.getTransitions().size(), mapped.size());
+		assertEquals(new HashSet<>(fa.getTransitions()), new HashSet<>(mapped.getTransitions()));
+		for (Transition<StackSymbol, Configuration> t : fa.getTransitions()) {
+			assertTrue(mapped.containsTransition(t));
+			assertEquals(fa.getWeightFor(t), mapped.getWeightFor(t));
+		}
+		for (Configuration s : fa.getStates()) {
+			assertEquals(new HashSet<>(fa.getTransitionsOutOf(s)), new HashSet<>(mapped.getTransitionsOutOf(s)));
+			assertEquals(new HashSet<>(fa.getTransitionsInto(s)), new HashSet<>(mapped.getTransitionsInto(s)));
+		}
+		assertTrue(mapped.isFinalState(ACCEPT));
+		assertFalse(mapped.isFinalState(a(1)));
+		assertEquals(fa.getInitialState(), mapped.getInitialState());
+		assertFalse(mapped.containsTransition(t(1, "l0", 1)));
+		assertNull(mapped.getWeightFor(t(998, "l0", 1)));
+		assertTrue(mapped.getTransitionsOutOf(a(998)).isEmpty());
+	}
+
+	@Test
+	public void rejectsOtherDictionary() throws IOException {
+		Path file = folder.newFile().toPath();
+		MappedAutomaton.<StackSymbol, Configuration, MinPlusSemiring> copyOf(minPlusAccepts(1, "a"), file, MinPlusSemiring::of).close();
+		try {
+			MappedAutomaton.open(file, MinPlusSemiring::of, Collections.singletonList(a(1)), Collections.singletonList(s("a")));
+			fail();
+		} catch (IOException e) {
+			// The dictionary lacks ACCEPT
+		}
+	}
+}
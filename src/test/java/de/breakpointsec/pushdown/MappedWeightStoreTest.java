@@ -0,0 +1,156 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.LongWeightStore;
+import de.breakpointsec.pushdown.fsm.MappedWeightStore;
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.weights.MinPlusSemiring;
+import de.breakpointsec.pushdown.weights.Semiring;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static de.breakpointsec.pushdown.ParallelSaturationTest.minPlusAccepts;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.randomPDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MappedWeightStoreTest extends GenericPDSTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void matchesMapAndReopens() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("weights");
+		MappedWeightStore<StackSymbol, Configuration, MinPlusSemiring> store = new MappedWeightStore<>(file, MinPlusSemiring::of);
+		Map<Transition<StackSymbol, Configuration>, MinPlusSemiring> expected = new HashMap<>();
+		Random random = new Random(0);
+		for (int i = 0; i < 20000; i++) {
+			Transition<StackSymbol, Configuration> t = t(random.nextInt(100), "l" + random.nextInt(20), random.nextInt(100));
+			if (random.nextInt(3) == 0) {
+				store.remove(t);
+				expected.remove(t);
+			} else {
+				MinPlusSemiring w = MinPlusSemiring.of(random.nextInt(100));
+				store.put(t, w);
+				expected.put(t, w);
+			}
+		}
+		assertEquals(expected.size(), store.size());
+		assertEquals(expected, contents(store));
+		assertNull(store.get(t(999, "l0", 1)));
+		List<Configuration> states = store.getStates();
+		List<StackSymbol> labels = store.getLabels();
+		store.close();
+
+		MappedWeightStore<StackSymbol, Configuration, MinPlusSemiring> reopened = MappedWeightStore.open(file, MinPlusSemiring::of, states, labels);
+		assertEquals(expected, contents(reopened));
+		for (Map.Entry<Transition<StackSymbol, Configuration>, MinPlusSemiring> e : expected.entrySet()) {
+			assertEquals(e.getValue(), reopened.get(e.getKey()));
+		}
+		reopened.close();
+	}
+
+	private static Map<Transition<StackSymbol, Configuration>, MinPlusSemiring> contents(MappedWeightStore<StackSymbol, Configuration, MinPlusSemiring> store) {
+		Map<Transition<StackSymbol, Configuration>, MinPlusSemiring> actual = new HashMap<>();
+		store.forEach(actual::put);
+		return actual;
+	}
+
+	@Test
+	public void poststarWithMappedStorage() throws IOException, IllegalTransitionException {
+		for (int seed = 0; seed < 20; seed++) {
+			WPDS<StackSymbol, Configuration, Semiring> pds = randomPDS(new Random(seed));
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> expected = minPlusAccepts(1, "l0", new LongWeightStore<>(MinPlusSemiring::of));
+			try (MappedWeightStore<StackSymbol, Configuration, MinPlusSemiring> store = new MappedWeightStore<>(folder.newFile().toPath(), MinPlusSemiring::of)) {
+				WeightedAutomaton<StackSymbol, Configuration, Semiring> actual = minPlusAccepts(1, "l0", store);
+				try {
+					pds.poststar(expected);
+				} catch (IllegalTransitionException e) {
+					continue;
+				}
+				pds.poststar(actual);
+				assertEquals(expected.getTransitions(), actual.getTransitions());
+				for (Transition<StackSymbol, Configuration> t : expected.getTransitions()) {
+					assertEquals(expected.getWeightFor(t), actual.getWeightFor(t));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void reopenSaturatedAutomaton() throws IOException, IllegalTransitionException {
+		WPDS<StackSymbol, Configuration, Semiring> pds = randomPDS(new Random(1));
+		Path file = folder.getRoot().toPath().resolve("saturated");
+		WeightedAutomaton<StackSymbol, Configuration, Semiring> saturated;
+		// Read before closing, the store is unmapped then
+		Map<Transition<StackSymbol, Configuration>, Semiring> weights = new HashMap<>();
+		List<Configuration> states;
+		List<StackSymbol> labels;
+		try (MappedWeightStore<StackSymbol, Configuration, MinPlusSemiring> store = new MappedWeightStore<>(file, MinPlusSemiring::of)) {
+			saturated = minPlusAccepts(1, "l0", store);
+			pds.poststar(saturated);
+			for (Transition<StackSymbol, Configuration> t : saturated.getTransitions()) {
+				weights.put(t, saturated.getWeightFor(t));
+			}
+			states = store.getStates();
+			labels = store.getLabels();
+		}
+		try (MappedWeightStore<StackSymbol, Configuration, MinPlusSemiring> store = MappedWeightStore.open(file, MinPlusSemiring::of, states, labels)) {
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> reopened = minPlusAccepts(1, "l0", store);
+			assertEquals(saturated.getTransitions(), reopened.getTransitions());
+			for (Configuration s : saturated.getStates()) {
+				assertEquals(saturated.getTransitionsOutOf(s), reopened.getTransitionsOutOf(s));
+				assertEquals(saturated.getTransitionsInto(s), reopened.getTransitionsInto(s));
+			}
+			for (Transition<StackSymbol, Configuration> t : saturated.getTransitions()) {
+				assertEquals(weights.get(t), reopened.getWeightFor(t));
+			}
+			// Saturating again adds nothing
+			List<Transition<StackSymbol, Configuration>> before = new ArrayList<>(reopened.getTransitions());
+			pds.poststar(reopened);
+			assertEquals(new HashSet<>(before), reopened.getTransitions());
+		}
+	}
+
+	@Test
+	public void moreStatesThanTwentyOneBitIds() throws IOException {
+		int n = (1 << 20) + 1;
+		try (MappedWeightStore<String, Integer, MinPlusSemiring> store = new MappedWeightStore<>(folder.newFile().toPath(), MinPlusSemiring::of)) {
+			for (int i = 0; i < n; i++) {
+				store.putLong(new Transition<>(2 * i, "a", 2 * i + 1), i);
+			}
+			assertEquals(2 * n, store.getStates().size());
+			assertEquals(MinPlusSemiring.of(n - 1), store.get(new Transition<>(2 * n - 2, "a", 2 * n - 1)));
+			assertEquals(MinPlusSemiring.of(0), store.get(new Transition<>(0, "a", 1)));
+			assertNull(store.get(new Transition<>(0, "a", 2 * n - 1)));
+		}
+	}
+}
@@ -0,0 +1,251 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.WeightStore;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.rules.Rule;
+import de.breakpointsec.pushdown.weights.MinPlusSemiring;
+import de.breakpointsec.pushdown.weights.Semiring;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Compares the parallel saturation engines against the sequential ones on randomly generated pushdown systems.
+ */
+public class ParallelSaturationTest extends GenericPDSTest {
+
+	private static ForkJoinPool pool;
+
+	@BeforeClass
+	public static void startPool() {
+		pool = new ForkJoinPool(4);
+	}
+
+	@AfterClass
+	public static void stopPool() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void poststarMatchesSequential() throws IllegalTransitionException {
+		for (int seed = 0; seed < 50; seed++) {
+			WPDS<StackSymbol, Configuration, Semiring> pds = randomPDS(new Random(seed));
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> sequential = minPlusAccepts(1, "l0");
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> parallel = minPlusAccepts(1, "l0");
+			try {
+				pds.poststar(sequential);
+			} catch (IllegalTransitionException e) {
+				try {
+					pds.poststarParallel(parallel, pool);
+					fail("Expected epsilon loop for seed " + seed);
+				} catch (IllegalTransitionException expected) {
+				}
+				continue;
+			}
+			pds.poststarParallel(parallel, pool);
+			assertEquals("Seed " + seed, weights(sequential), weights(parallel));
+		}
+	}
+
+	@Test
+	public void prestarMatchesSequential() throws IllegalTransitionException {
+		for (int run = 0; run < 5; run++) {
+			for (int seed = 0; seed < 50; seed++) {
+				WPDS<StackSymbol, Configuration, Semiring> pds = randomPDS(new Random(seed));
+				WeightedAutomaton<StackSymbol, Configuration, Semiring> sequential = minPlusAccepts(1, "l0");
+				WeightedAutomaton<StackSymbol, Configuration, Semiring> parallel = minPlusAccepts(1, "l0");
+				pds.prestar(sequential);
+				pds.prestarParallel(parallel, pool);
+				assertEquals("Seed " + seed, weights(sequential), weights(parallel));
+			}
+		}
+	}
+
+	@Test
+	public void poststarParallelOnTwoCalls() throws IllegalTransitionException {
+		WPDS<StackSymbol, Configuration, Semiring> pds = pds();
+		pds.addRule(normal(1, "a", 1, "b", MinPlusSemiring.of(1)));
+		pds.addRule(push(1, "b", 2, "call", "d", MinPlusSemiring.of(2)));
+		pds.addRule(normal(2, "call", 2, "e", MinPlusSemiring.of(3)));
+		pds.addRule(pop(2, "e", 3, MinPlusSemiring.of(4)));
+		pds.addRule(normal(3, "d", 1, "f", MinPlusSemiring.of(5)));
+		pds.addRule(push(1, "f", 2, "call", "g", MinPlusSemiring.of(6)));
+		pds.addRule(normal(3, "g", 4, "h", MinPlusSemiring.of(7)));
+		WeightedAutomaton<StackSymbol, Configuration, Semiring> fa = minPlusAccepts(1, "a");
+		pds.poststarParallel(fa, pool);
+		assertEquals(MinPlusSemiring.of(15), fa.getWeightFor(t(1, "f", ACCEPT)));
+		assertEquals(MinPlusSemiring.of(35), fa.getWeightFor(t(4, "h", ACCEPT)));
+	}
+
+	@Test
+	public void batchQueriesMatchSequential() throws Exception {
+		WPDS<StackSymbol, Configuration, Semiring> pds = randomPDS(new Random(3));
+		List<WeightedAutomaton<StackSymbol, Configuration, Semiring>> queries = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			queries.add(minPlusAccepts(1 + i % 3, "l" + i));
+		}
+		List<CompletableFuture<WeightedAutomaton<StackSymbol, Configuration, Semiring>>> post = pds.poststar(queries, pool);
+		for (int i = 0; i < queries.size(); i++) {
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> expected = minPlusAccepts(1 + i % 3, "l" + i);
+			pds.poststar(expected);
+			assertEquals("Query " + i, weights(expected), weights(post.get(i).get()));
+		}
+
+		queries.clear();
+		for (int i = 0; i < 5; i++) {
+			queries.add(minPlusAccepts(1 + i % 3, "l" + i));
+		}
+		List<CompletableFuture<WeightedAutomaton<StackSymbol, Configuration, Semiring>>> pre = pds.prestar(queries, pool);
+		for (int i = 0; i < queries.size(); i++) {
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> expected = minPlusAccepts(1 + i % 3, "l" + i);
+			pds.prestar(expected);
+			assertEquals("Query " + i, weights(expected), weights(pre.get(i).get()));
+		}
+	}
+
+	static WPDS<StackSymbol, Configuration, Semiring> pds() {
+		return new WPDS<StackSymbol, Configuration, Semiring>() {
+			@Override
+			public StackSymbol epsilon() {
+				return s("EPS");
+			}
+		};
+	}
+
+	static WPDS<StackSymbol, Configuration, Semiring> randomPDS(Random random) {
+		WPDS<StackSymbol, Configuration, Semiring> pds = pds();
+		for (Rule<StackSymbol, Configuration, Semiring> rule : randomRules(random)) {
+			pds.addRule(rule);
+		}
+		return pds;
+	}
+
+	static List<Rule<StackSymbol, Configuration, Semiring>> randomRules(Random random) {
+		return randomRules(random, MinPlusSemiring::of);
+	}
+
+	/**
+	 * Thirty random rules over three states and five labels, with weights created from values in [0, 10).
+	 */
+	static List<Rule<StackSymbol, Configuration, Semiring>> randomRules(Random random, LongFunction<? extends Semiring> weight) {
+		List<Rule<StackSymbol, Configuration, Semiring>> rules = new ArrayList<>();
+		int states = 3;
+		int labels = 5;
+		for (int i = 0; i < 30; i++) {
+			int s1 = 1 + random.nextInt(states);
+			int s2 = 1 + random.nextInt(states);
+			String l1 = "l" + random.nextInt(labels);
+			String l2 = "l" + random.nextInt(labels);
+			Semiring w = weight.apply(random.nextInt(10));
+			switch (random.nextInt(4)) {
+			case 0:
+				rules.add(push(s1, l1, s2, l2, "l" + random.nextInt(labels), w));
+				break;
+			case 1:
+				rules.add(pop(s1, l1, s2, w));
+				break;
+			default:
+				rules.add(normal(s1, l1, s2, l2, w));
+			}
+		}
+		return rules;
+	}
+
+	static Map<Transition<StackSymbol, Configuration>, Semiring> weights(WeightedAutomaton<StackSymbol, Configuration, Semiring> fa) {
+		Map<Transition<StackSymbol, Configuration>, Semiring> weights = new HashMap<>();
+		for (Transition<StackSymbol, Configuration> t : fa.getTransitions()) {
+			weights.put(t, fa.getWeightFor(t));
+		}
+		return weights;
+	}
+
+	static WeightedAutomaton<StackSymbol, Configuration, Semiring> minPlusAccepts(int a, String c) {
+		return accept(new MinPlusAutomaton(a(a)), a, c);
+	}
+
+	static WeightedAutomaton<StackSymbol, Configuration, Semiring> minPlusAccepts(int a, String c,
+			WeightStore<StackSymbol, Configuration, ? extends Semiring> store) {
+		return accept(new MinPlusAutomaton(a(a), store), a, c);
+	}
+
+	/**
+	 * An automaton without transitions or final states.
+	 */
+	static WeightedAutomaton<StackSymbol, Configuration, Semiring> emptyAutomaton(Configuration initial) {
+		return new MinPlusAutomaton(initial);
+	}
+
+	private static WeightedAutomaton<StackSymbol, Configuration, Semiring> accept(WeightedAutomaton<StackSymbol, Configuration, Semiring> aut, int a,
+			String c) {
+		aut.addFinalState(ACCEPT);
+		aut.addTransition(t(a, c, ACCEPT));
+		return aut;
+	}
+
+	private static class MinPlusAutomaton extends WeightedAutomaton<StackSymbol, Configuration, Semiring> {
+
+		MinPlusAutomaton(Configuration initialState) {
+			super(initialState);
+		}
+
+		@SuppressWarnings("unchecked")
+		MinPlusAutomaton(Configuration initialState, WeightStore<StackSymbol, Configuration, ? extends Semiring> store) {
+			super(initialState, (WeightStore<StackSymbol, Configuration, Semiring>) store);
+		}
+
+		@Override
+		public Configuration createState(Configuration d, StackSymbol loc) {
+			return new Configuration(d, loc);
+		}
+
+		@Override
+		public StackSymbol epsilon() {
+			return s("EPS");
+		}
+
+		@Override
+		public Semiring getOne() {
+			return MinPlusSemiring.ONE;
+		}
+
+		@Override
+		public Semiring getZero() {
+			return MinPlusSemiring.ZERO;
+		}
+
+		@Override
+		public boolean isGeneratedState(Configuration d) {
+			return d.s != null;
+		}
+	}
+}
@@ -26,6 +26,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertTrue;
@@ -122,7 +123,7 @@ public class PostStarTest extends GenericPDSTest {
 		pds.addRule(normal(1, "e", 1, "k", NoSemiring.NO_WEIGHT_ZERO));
 		WeightedAutomaton<StackSymbol, Configuration, Semiring> fa = accepts(1, "a", NoSemiring.NO_WEIGHT_ZERO);
 		pds.poststar(fa);
-		Collection<Transition<StackSymbol, Configuration>> transitions = fa.getTransitions();
+		Collection<Transition<StackSymbol, Configuration>> transitions = new HashSet<>(fa.getTransitions());
 		transitions.remove(t(1, "e", ACCEPT));
 		transitions.remove(t(1, "a", ACCEPT));
 		transitions.remove(t(1, "k", ACCEPT));
@@ -147,7 +148,7 @@ public class PostStarTest extends GenericPDSTest {
 		pds.addRule(pop(1, "n8", 1, NoSemiring.NO_WEIGHT_ZERO));
 		WeightedAutomaton<StackSymbol, Configuration, Semiring> fa = accepts(1, "n1", NoSemiring.NO_WEIGHT_ZERO);
 		pds.poststar(fa);
-		Collection<Transition<StackSymbol, Configuration>> transitions = fa.getTransitions();
+		Collection<Transition<StackSymbol, Configuration>> transitions = new HashSet<>(fa.getTransitions());
 		System.out.println(String.join("\n", transitions.stream().map(t -> t.toString()).collect(Collectors.toList())));
 		System.out.println(".................");
 		transitions.remove(t(1, "n1", ACCEPT));
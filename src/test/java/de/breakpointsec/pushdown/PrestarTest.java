@@ -25,6 +25,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.Collection;
+import java.util.HashSet;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -123,6 +124,18 @@ public class PrestarTest extends GenericPDSTest {
 		assertTrue(fa.getTransitions().contains(t(1, "a", ACCEPT)));
 	}
 
+	@Test
+	public void pushJoinWithLaterReturnTransition() throws IllegalTransitionException {
+		// <1,b>-><1> is known before 1~c~>ACCEPT is derived, so the push rule has to fire when the latter is processed
+		pds.addRule(normal(1, "d", 1, "e", NoSemiring.NO_WEIGHT_ZERO));
+		pds.addRule(normal(1, "c", 1, "d", NoSemiring.NO_WEIGHT_ZERO));
+		pds.addRule(push(1, "a", 1, "b", "c", NoSemiring.NO_WEIGHT_ZERO));
+		pds.addRule(pop(1, "b", 1, NoSemiring.NO_WEIGHT_ZERO));
+		WeightedAutomaton<StackSymbol, Configuration, Semiring> fa = accepts(1, "e", NoSemiring.NO_WEIGHT_ZERO);
+		pds.prestar(fa);
+		assertTrue(fa.getTransitions().contains(t(1, "a", ACCEPT)));
+	}
+
 	// Example taken from http://research.cs.wisc.edu/wpis/papers/fsttcs07.invited.pdf
 	@Test
 	public void paperEx() throws IllegalTransitionException {
@@ -138,7 +151,7 @@ public class PrestarTest extends GenericPDSTest {
 		pds.prestar(fa);
 		System.out.println(fa);
 		System.out.println(fa.toDotString());
-		Collection<Transition<StackSymbol, Configuration>> transitions = fa.getTransitions();
+		Collection<Transition<StackSymbol, Configuration>> transitions = new HashSet<>(fa.getTransitions());
 		transitions.remove(t(1, "n1", ACCEPT));
 		transitions.remove(t(1, "n2", ACCEPT));
 		transitions.remove(t(1, "n3", ACCEPT));
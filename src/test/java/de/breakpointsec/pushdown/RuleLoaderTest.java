@@ -0,0 +1,134 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+import de.breakpointsec.pushdown.io.RuleLoader;
+import de.breakpointsec.pushdown.rules.PopRule;
+import de.breakpointsec.pushdown.rules.PushRule;
+import de.breakpointsec.pushdown.weights.MinPlusSemiring;
+import de.breakpointsec.pushdown.weights.Semiring;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+
+import static de.breakpointsec.pushdown.ParallelSaturationTest.pds;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.randomRules;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RuleLoaderTest extends GenericPDSTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static RuleLoader<StackSymbol, Configuration, Semiring> loader() {
+		return new RuleLoader<>(token -> a(Integer.parseInt(token)), GenericPDSTest::s, token -> MinPlusSemiring.of(Long.parseLong(token)));
+	}
+
+	private static String format(de.breakpointsec.pushdown.rules.Rule<StackSymbol, Configuration, Semiring> rule) {
+		long weight = ((MinPlusSemiring) rule.getWeight()).longValue();
+		if (rule instanceof PushRule)
+			return "push " + rule.getS1() + " " + rule.getL1() + "\t" + rule.getS2() + " " + rule.getL2() + " " + ((PushRule<StackSymbol, Configuration, Semiring>) rule).getCallSite() + " " + weight;
+		if (rule instanceof PopRule)
+			return "pop " + rule.getS1() + " " + rule.getL1() + " " + rule.getS2() + " " + weight;
+		return "normal " + rule.getS1() + " " + rule.getL1() + " " + rule.getS2() + " " + rule.getL2() + " " + weight;
+	}
+
+	@Test
+	public void loadsRandomRules() throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for (int seed = 0; seed < 20; seed++) {
+				List<de.breakpointsec.pushdown.rules.Rule<StackSymbol, Configuration, Semiring>> rules = randomRules(new Random(seed));
+				StringBuilder text = new StringBuilder("# random rules\n\n");
+				for (de.breakpointsec.pushdown.rules.Rule<StackSymbol, Configuration, Semiring> rule : rules) {
+					text.append(format(rule)).append(seed % 2 == 0 ? "\n" : "\r\n");
+				}
+				Path file = folder.newFile().toPath();
+				Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+
+				WPDS<StackSymbol, Configuration, Semiring> expected = pds();
+				int distinct = expected.addRules(rules);
+				RuleLoader<StackSymbol, Configuration, Semiring> loader = loader();
+				// Smaller than some lines, so chunks have to grow
+				loader.setChunkSize(16);
+				loader.setMaxPendingChunks(3);
+				WPDS<StackSymbol, Configuration, Semiring> loaded = pds();
+				assertEquals(distinct, loader.load(file, loaded, executor));
+				assertEquals(expected.getAllRules(), loaded.getAllRules());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void sharesSymbols() throws IOException {
+		Path file = folder.newFile().toPath();
+		Files.write(file, Arrays.asList("normal 1 a 2 b 3", "pop 2 b 1 3"), StandardCharsets.UTF_8);
+		WPDS<StackSymbol, Configuration, Semiring> pds = pds();
+		assertEquals(2, loader().load(file, pds));
+		de.breakpointsec.pushdown.rules.Rule<StackSymbol, Configuration, Semiring> normal = pds.getNormalRules().iterator().next();
+		de.breakpointsec.pushdown.rules.Rule<StackSymbol, Configuration, Semiring> pop = pds.getPopRules().iterator().next();
+		assertSame(normal.getS2(), pop.getS1());
+		assertSame(normal.getL2(), pop.getL1());
+		assertSame(normal.getWeight(), pop.getWeight());
+	}
+
+	@Test
+	public void reportsMalformedLine() throws IOException {
+		Path file = folder.newFile().toPath();
+		Files.write(file, Arrays.asList("normal 1 a 2 b 3", "# comment", "pop 2 b 1"), StandardCharsets.UTF_8);
+		try {
+			loader().load(file, pds());
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Line 3:"));
+		}
+	}
+
+	@Test
+	public void reportsLineRejectedByParser() throws IOException {
+		Path file = folder.newFile().toPath();
+		Files.write(file, Arrays.asList("normal 1 a 2 b 3", "pop 2 b 1 x"), StandardCharsets.UTF_8);
+		RuleLoader<StackSymbol, Configuration, Semiring> loader = loader();
+		// The first line fills a chunk, which is added before the second line fails
+		loader.setChunkSize("normal 1 a 2 b 3\n".length());
+		loader.setMaxPendingChunks(1);
+		WPDS<StackSymbol, Configuration, Semiring> pds = pds();
+		try {
+			loader.load(file, pds);
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Line 2:"));
+			assertTrue(e.getCause() instanceof NumberFormatException);
+		}
+		assertEquals(1, pds.getAllRules().size());
+	}
+}
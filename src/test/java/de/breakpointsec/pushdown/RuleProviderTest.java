@@ -0,0 +1,171 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.rules.NormalRule;
+import de.breakpointsec.pushdown.rules.PopRule;
+import de.breakpointsec.pushdown.rules.PushRule;
+import de.breakpointsec.pushdown.rules.Rule;
+import de.breakpointsec.pushdown.weights.MinPlusSemiring;
+import de.breakpointsec.pushdown.weights.Semiring;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static de.breakpointsec.pushdown.ParallelSaturationTest.minPlusAccepts;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.pds;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.randomRules;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.weights;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Saturation with rules pulled from a {@link RuleProvider} instead of adding them up front.
+ */
+public class RuleProviderTest extends GenericPDSTest {
+
+	@Test
+	public void providedRulesMatchAddedRules() throws IllegalTransitionException {
+		for (int seed = 0; seed < 50; seed++) {
+			List<Rule<StackSymbol, Configuration, Semiring>> rules = randomRules(new Random(seed));
+			WPDS<StackSymbol, Configuration, Semiring> added = pds();
+			for (Rule<StackSymbol, Configuration, Semiring> rule : rules) {
+				added.addRule(rule);
+			}
+			WPDS<StackSymbol, Configuration, Semiring> provided = lazyPds(new ListRuleProvider(rules).cached());
+
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> expected = minPlusAccepts(1, "l0");
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> actual = minPlusAccepts(1, "l0");
+			added.prestar(expected);
+			provided.prestar(actual);
+			assertEquals("Seed " + seed, weights(expected), weights(actual));
+
+			expected = minPlusAccepts(1, "l0");
+			actual = minPlusAccepts(1, "l0");
+			try {
+				added.poststar(expected);
+			} catch (IllegalTransitionException e) {
+				continue;
+			}
+			provided.poststar(actual);
+			assertEquals("Seed " + seed, weights(expected), weights(actual));
+		}
+	}
+
+	@Test
+	public void cachedProviderIsAskedOnce() throws IllegalTransitionException {
+		ListRuleProvider provider = new ListRuleProvider(randomRules(new Random(1)));
+		WPDS<StackSymbol, Configuration, Semiring> pds = lazyPds(provider.cached());
+		pds.addRule(normal(1, "a", 1, "l0", MinPlusSemiring.of(1)));
+		pds.poststar(minPlusAccepts(1, "a"));
+		int calls = provider.calls;
+		pds.poststar(minPlusAccepts(1, "a"));
+		assertEquals(calls, provider.calls);
+	}
+
+	@Test
+	public void gettersIncludeProvidedRules() {
+		List<Rule<StackSymbol, Configuration, Semiring>> rules = randomRules(new Random(2));
+		WPDS<StackSymbol, Configuration, Semiring> pds = lazyPds(new ListRuleProvider(rules).cached());
+		Rule<StackSymbol, Configuration, Semiring> added = normal(1, "a", 1, "l0", MinPlusSemiring.of(1));
+		pds.addRule(added);
+
+		Set<Rule<StackSymbol, Configuration, Semiring>> expected = new HashSet<>(rules);
+		expected.add(added);
+		Set<Rule<StackSymbol, Configuration, Semiring>> actual = new HashSet<>(pds.getNormalRules());
+		actual.addAll(pds.getPopRules());
+		actual.addAll(pds.getPushRules());
+		assertEquals(expected, actual);
+		assertEquals(Collections.singleton(added), pds.getAllRules());
+	}
+
+	private static WPDS<StackSymbol, Configuration, Semiring> lazyPds(RuleProvider<StackSymbol, Configuration, Semiring> provider) {
+		return new WPDS<StackSymbol, Configuration, Semiring>(provider) {
+			@Override
+			public StackSymbol epsilon() {
+				return s("EPS");
+			}
+		};
+	}
+
+	private static class ListRuleProvider implements RuleProvider<StackSymbol, Configuration, Semiring> {
+
+		private final List<Rule<StackSymbol, Configuration, Semiring>> rules;
+		int calls;
+
+		ListRuleProvider(List<Rule<StackSymbol, Configuration, Semiring>> rules) {
+			this.rules = rules;
+		}
+
+		private <R> Set<R> select(Class<?> type, Predicate<Rule<StackSymbol, Configuration, Semiring>> filter) {
+			calls++;
+			return (Set<R>) rules.stream().filter(type::isInstance).filter(filter).collect(Collectors.toSet());
+		}
+
+		@Override
+		public Set<PopRule<StackSymbol, Configuration, Semiring>> getPopRulesStarting(Configuration start, StackSymbol string) {
+			return select(PopRule.class, r -> r.getS1().equals(start) && r.getL1().equals(string));
+		}
+
+		@Override
+		public Set<NormalRule<StackSymbol, Configuration, Semiring>> getNormalRulesStarting(Configuration start, StackSymbol string) {
+			return select(NormalRule.class, r -> r.getS1().equals(start) && r.getL1().equals(string));
+		}
+
+		@Override
+		public Set<PushRule<StackSymbol, Configuration, Semiring>> getPushRulesStarting(Configuration start, StackSymbol string) {
+			return select(PushRule.class, r -> r.getS1().equals(start) && r.getL1().equals(string));
+		}
+
+		@Override
+		public Set<NormalRule<StackSymbol, Configuration, Semiring>> getNormalRulesEnding(Configuration start, StackSymbol string) {
+			return select(NormalRule.class, r -> r.getS2().equals(start) && r.getL2().equals(string));
+		}
+
+		@Override
+		public Set<PushRule<StackSymbol, Configuration, Semiring>> getPushRulesEnding(Configuration start, StackSymbol string) {
+			return select(PushRule.class, r -> r.getS2().equals(start) && r.getL2().equals(string));
+		}
+
+		@Override
+		public Set<PushRule<StackSymbol, Configuration, Semiring>> getPushRulesWithCallSite(StackSymbol callSite) {
+			return select(PushRule.class, r -> ((PushRule<StackSymbol, Configuration, Semiring>) r).getCallSite().equals(callSite));
+		}
+
+		@Override
+		public Set<PopRule<StackSymbol, Configuration, Semiring>> getPopRules() {
+			return select(PopRule.class, r -> true);
+		}
+
+		@Override
+		public Set<NormalRule<StackSymbol, Configuration, Semiring>> getNormalRules() {
+			return select(NormalRule.class, r -> true);
+		}
+
+		@Override
+		public Set<PushRule<StackSymbol, Configuration, Semiring>> getPushRules() {
+			return select(PushRule.class, r -> true);
+		}
+	}
+}
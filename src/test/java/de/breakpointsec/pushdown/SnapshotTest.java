@@ -0,0 +1,191 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.io.Codec;
+import de.breakpointsec.pushdown.io.Codecs;
+import de.breakpointsec.pushdown.io.Snapshots;
+import de.breakpointsec.pushdown.rules.PopRule;
+import de.breakpointsec.pushdown.weights.MinPlusSemiring;
+import de.breakpointsec.pushdown.weights.Semiring;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+
+import static de.breakpointsec.pushdown.ParallelSaturationTest.minPlusAccepts;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.pds;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.randomPDS;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.randomRules;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class SnapshotTest extends GenericPDSTest {
+
+	static final Codec<StackSymbol> LABELS = new Codec<StackSymbol>() {
+		@Override
+		public void write(StackSymbol value, DataOutput out) throws IOException {
+			out.writeUTF(value.s);
+		}
+
+		@Override
+		public StackSymbol read(DataInput in) throws IOException {
+			return s(in.readUTF());
+		}
+	};
+
+	static final Codec<Configuration> STATES = new Codec<Configuration>() {
+		@Override
+		public void write(Configuration value, DataOutput out) throws IOException {
+			out.writeInt(value.a);
+			out.writeBoolean(value.s != null);
+			if (value.s != null)
+				LABELS.write(value.s, out);
+		}
+
+		@Override
+		public Configuration read(DataInput in) throws IOException {
+			Configuration c = a(in.readInt());
+			return in.readBoolean() ? new Configuration(c, LABELS.read(in)) : c;
+		}
+	};
+
+	static final Codec<Semiring> WEIGHTS = new Codec<Semiring>() {
+		@Override
+		public void write(Semiring value, DataOutput out) throws IOException {
+			out.writeLong(((MinPlusSemiring) value).longValue());
+		}
+
+		@Override
+		public Semiring read(DataInput in) throws IOException {
+			return MinPlusSemiring.of(in.readLong());
+		}
+	};
+
+	@Test
+	public void rulesRoundTrip() throws IOException, IllegalTransitionException {
+		for (int seed = 0; seed < 20; seed++) {
+			WPDS<StackSymbol, Configuration, Semiring> pds = randomPDS(new Random(seed));
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			Snapshots.writeRules(pds, new DataOutputStream(out), STATES, LABELS, WEIGHTS);
+			WPDS<StackSymbol, Configuration, Semiring> loaded = Snapshots.readRules(in(out), pds(), STATES, LABELS, WEIGHTS);
+			assertEquals(pds.getAllRules(), loaded.getAllRules());
+
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> expected = minPlusAccepts(1, "l0");
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> actual = minPlusAccepts(1, "l0");
+			pds.prestar(expected);
+			loaded.prestar(actual);
+			assertEquals(expected.getTransitions(), actual.getTransitions());
+		}
+	}
+
+	@Test
+	public void automatonRoundTrip() throws IOException {
+		for (int seed = 0; seed < 20; seed++) {
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> fa = minPlusAccepts(1, "l0");
+			try {
+				randomPDS(new Random(seed)).poststar(fa);
+			} catch (IllegalTransitionException e) {
+				continue;
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			Snapshots.writeAutomaton(fa, new DataOutputStream(out), STATES, LABELS, WEIGHTS);
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> loaded = Snapshots.readAutomaton(in(out),
+					ParallelSaturationTest::emptyAutomaton, STATES, LABELS, WEIGHTS);
+			assertEquals(fa.getInitialState(), loaded.getInitialState());
+			assertEquals(fa.getFinalState(), loaded.getFinalState());
+			assertEquals(fa.getTransitions(), loaded.getTransitions());
+			for (Transition<StackSymbol, Configuration> t : fa.getTransitions()) {
+				assertEquals(fa.getWeightFor(t), loaded.getWeightFor(t));
+			}
+		}
+	}
+
+	@Test
+	public void providedRulesAreNotWritten() throws IOException {
+		PopRule<StackSymbol, Configuration, Semiring> provided = new PopRule<>(a(1), s("p"), a(2), MinPlusSemiring.ONE);
+		WPDS<StackSymbol, Configuration, Semiring> pds = new WPDS<StackSymbol, Configuration, Semiring>(new RuleProvider<StackSymbol, Configuration, Semiring>() {
+			@Override
+			public Set<PopRule<StackSymbol, Configuration, Semiring>> getPopRules() {
+				return Collections.singleton(provided);
+			}
+		}) {
+			@Override
+			public StackSymbol epsilon() {
+				return s("EPS");
+			}
+		};
+		pds.addRules(randomRules(new Random(0)));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Snapshots.writeRules(pds, new DataOutputStream(out), STATES, LABELS, WEIGHTS);
+		WPDS<StackSymbol, Configuration, Semiring> loaded = Snapshots.readRules(in(out), pds(), STATES, LABELS, WEIGHTS);
+		assertEquals(pds.getAllRules(), loaded.getAllRules());
+		assertFalse(loaded.getPopRules().contains(provided));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsOtherKind() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Snapshots.writeAutomaton(minPlusAccepts(1, "l0"), new DataOutputStream(out), STATES, LABELS, WEIGHTS);
+		Snapshots.readRules(in(out), pds(), STATES, LABELS, Codecs.longSemiring(value -> null));
+	}
+
+	@Test
+	public void readsConsecutiveSnapshots() throws IOException, IllegalTransitionException {
+		WPDS<StackSymbol, Configuration, Semiring> pds = randomPDS(new Random(0));
+		WeightedAutomaton<StackSymbol, Configuration, Semiring> fa = minPlusAccepts(1, "l0");
+		pds.prestar(fa);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(bytes));
+		Snapshots.writeRules(pds, out, STATES, LABELS, WEIGHTS);
+		Snapshots.writeAutomaton(fa, out, STATES, LABELS, WEIGHTS);
+		out.writeInt(42);
+		out.flush();
+		// Buffered by the caller, each read stops at the end of its snapshot
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertEquals(pds.getAllRules(), Snapshots.readRules(in, pds(), STATES, LABELS, WEIGHTS).getAllRules());
+		assertEquals(fa.getTransitions(), Snapshots.readAutomaton(in, ParallelSaturationTest::emptyAutomaton, STATES, LABELS, WEIGHTS).getTransitions());
+		assertEquals(42, in.readInt());
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsCorruptIds() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Snapshots.writeAutomaton(minPlusAccepts(1, "l0"), new DataOutputStream(out), STATES, LABELS, WEIGHTS);
+		byte[] bytes = out.toByteArray();
+		// The weight id of the only transition
+		bytes[bytes.length - 1] = 0x7F;
+		Snapshots.readAutomaton(new DataInputStream(new ByteArrayInputStream(bytes)), ParallelSaturationTest::emptyAutomaton, STATES, LABELS, WEIGHTS);
+	}
+
+	private static DataInputStream in(ByteArrayOutputStream out) {
+		return new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+	}
+}
@@ -0,0 +1,83 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.Transition;
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.rules.Rule;
+import de.breakpointsec.pushdown.weights.MinPlusSemiring;
+import de.breakpointsec.pushdown.weights.Semiring;
+import de.breakpointsec.pushdown.weights.WeightCache;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static de.breakpointsec.pushdown.ParallelSaturationTest.minPlusAccepts;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.pds;
+import static de.breakpointsec.pushdown.ParallelSaturationTest.randomRules;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class WeightCacheTest extends GenericPDSTest {
+
+	@Test
+	public void internsResults() {
+		WeightCache<Semiring> cache = new WeightCache<>(10);
+		Semiring a = MinPlusSemiring.of(2);
+		Semiring b = MinPlusSemiring.of(3);
+		Semiring ab = cache.extend(a, b);
+		assertEquals(MinPlusSemiring.of(5), ab);
+		assertSame(ab, cache.extend(a, b));
+		assertSame(ab, cache.extend(MinPlusSemiring.of(1), MinPlusSemiring.of(4)));
+		assertSame(ab, cache.intern(MinPlusSemiring.of(5)));
+		assertEquals(1, cache.extendStats().hitCount());
+		assertEquals(2, cache.extendStats().missCount());
+	}
+
+	@Test
+	public void poststarMatchesUncached() throws IllegalTransitionException {
+		long requests = 0;
+		for (int seed = 0; seed < 50; seed++) {
+			List<Rule<StackSymbol, Configuration, Semiring>> rules = randomRules(new Random(seed));
+			WPDS<StackSymbol, Configuration, Semiring> reference = pds();
+			WPDS<StackSymbol, Configuration, Semiring> cached = pds();
+			WeightCache<Semiring> cache = new WeightCache<>(100);
+			cached.setWeightCache(cache);
+			for (Rule<StackSymbol, Configuration, Semiring> rule : rules) {
+				reference.addRule(rule);
+				cached.addRule(rule);
+			}
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> expected = minPlusAccepts(1, "l0");
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> actual = minPlusAccepts(1, "l0");
+			try {
+				reference.poststar(expected);
+			} catch (IllegalTransitionException e) {
+				continue;
+			}
+			cached.poststar(actual);
+			assertEquals("Seed " + seed, expected.getTransitions(), actual.getTransitions());
+			for (Transition<StackSymbol, Configuration> t : expected.getTransitions()) {
+				assertEquals("Seed " + seed, expected.getWeightFor(t), actual.getWeightFor(t));
+			}
+			requests += cache.extendStats().requestCount();
+		}
+		assertTrue(requests > 0);
+	}
+}
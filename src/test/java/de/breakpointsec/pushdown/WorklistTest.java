@@ -0,0 +1,131 @@
+
+package de.breakpointsec.pushdown;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import de.breakpointsec.pushdown.fsm.WeightedAutomaton;
+import de.breakpointsec.pushdown.weights.Semiring;
+import de.breakpointsec.pushdown.worklist.FifoWorklist;
+import de.breakpointsec.pushdown.worklist.LifoWorklist;
+import de.breakpointsec.pushdown.worklist.PriorityWorklist;
+import de.breakpointsec.pushdown.worklist.Worklist;
+import de.breakpointsec.pushdown.worklist.WorklistStrategy;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WorklistTest extends GenericPDSTest {
+	private WPDS<StackSymbol, Configuration, Semiring> pds;
+
+	@Before
+	public void init() {
+		pds = new WPDS<StackSymbol, Configuration, Semiring>() {
+			@Override
+			public StackSymbol epsilon() {
+				return new StackSymbol("EPS");
+			}
+		};
+	}
+
+	@Test
+	public void fifoSkipsPendingTransitions() {
+		Worklist<StackSymbol, Configuration> worklist = new FifoWorklist<>();
+		assertTrue(worklist.add(t(1, "a", 2)));
+		assertTrue(worklist.add(t(2, "b", 3)));
+		assertFalse(worklist.add(t(1, "a", 2)));
+		assertEquals(2, worklist.size());
+		assertEquals(t(1, "a", 2), worklist.poll());
+		assertTrue(worklist.add(t(1, "a", 2)));
+		assertEquals(t(2, "b", 3), worklist.poll());
+		assertEquals(t(1, "a", 2), worklist.poll());
+		assertTrue(worklist.isEmpty());
+		assertEquals(3, worklist.getEnqueueCount());
+		assertEquals(3, worklist.getDequeueCount());
+	}
+
+	@Test
+	public void poststarReportsCounts() throws IllegalTransitionException {
+		pds.addRule(normal(1, "a", 1, "b", w(1)));
+		pds.addRule(push(1, "b", 2, "call", "d", w(2)));
+		pds.addRule(normal(2, "call", 2, "e", w(3)));
+		pds.addRule(pop(2, "e", 3, w(4)));
+		WeightedAutomaton<StackSymbol, Configuration, Semiring> fa = waccepts(1, "a", w(0));
+		Worklist<StackSymbol, Configuration> worklist = new FifoWorklist<>();
+		pds.poststar(fa, worklist);
+		assertEquals(w(10), fa.getWeightFor(t(3, "d", ACCEPT)));
+		assertTrue(worklist.isEmpty());
+		assertEquals(worklist.getEnqueueCount(), worklist.getDequeueCount());
+		assertTrue(worklist.getEnqueueCount() >= fa.getTransitions().size());
+	}
+
+	@Test
+	public void lifoReturnsLatestFirst() {
+		Worklist<StackSymbol, Configuration> worklist = new LifoWorklist<>();
+		worklist.add(t(1, "a", 2));
+		worklist.add(t(2, "b", 3));
+		assertEquals(t(2, "b", 3), worklist.poll());
+		assertEquals(t(1, "a", 2), worklist.poll());
+		assertEquals(null, worklist.poll());
+	}
+
+	@Test
+	public void priorityMovesPendingTransitionForward() {
+		Map<String, Integer> keys = new HashMap<>();
+		keys.put("a", 5);
+		keys.put("b", 3);
+		Worklist<StackSymbol, Configuration> worklist = new PriorityWorklist<>(t -> keys.get(t.getLabel().toString()), Comparator.<Integer> naturalOrder());
+		worklist.add(t(1, "a", 2));
+		worklist.add(t(1, "b", 2));
+		keys.put("a", 1);
+		assertFalse(worklist.add(t(1, "a", 2)));
+		assertEquals(2, worklist.size());
+		assertEquals(t(1, "a", 2), worklist.poll());
+		assertEquals(t(1, "b", 2), worklist.poll());
+		assertTrue(worklist.isEmpty());
+		assertEquals(null, worklist.poll());
+	}
+
+	@Test
+	public void strategiesAgreeOnPostStar() throws IllegalTransitionException {
+		pds.addRule(normal(1, "a", 1, "b", w(1)));
+		pds.addRule(push(1, "b", 2, "call", "d", w(2)));
+		pds.addRule(normal(2, "call", 2, "e", w(3)));
+		pds.addRule(pop(2, "e", 3, w(4)));
+		pds.addRule(normal(3, "d", 1, "f", w(5)));
+		pds.addRule(push(1, "f", 2, "call", "g", w(6)));
+		pds.addRule(normal(3, "g", 4, "h", w(7)));
+		List<WorklistStrategy<StackSymbol, Configuration, Semiring>> strategies = Arrays.asList(WorklistStrategy.fifo(), WorklistStrategy.lifo(),
+			WorklistStrategy.byWeight(Comparator.comparing(w -> (Integer) w.value())), WorklistStrategy.topological(),
+			WorklistStrategy.reverseTopological());
+		for (WorklistStrategy<StackSymbol, Configuration, Semiring> strategy : strategies) {
+			WeightedAutomaton<StackSymbol, Configuration, Semiring> fa = waccepts(1, "a", w(0));
+			pds.poststar(fa, strategy);
+			assertEquals(w(15), fa.getWeightFor(t(1, "f", ACCEPT)));
+			assertEquals(w(10), fa.getWeightFor(t(3, "d", ACCEPT)));
+			assertEquals(w(35), fa.getWeightFor(t(4, "h", ACCEPT)));
+		}
+	}
+}
@@ -0,0 +1,97 @@
+
+package de.breakpointsec.pushdown.weights;
+
+/*-
+ * #%L
+ * pushdown
+ * %%
+ * Copyright (C) 2019 Breakpoint Security GmbH
+ * %%
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v2.0 which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ * 
+ * SPDX-License-Identifier: EPL-2.0
+ * 
+ * Copyright Breakpoint Security GmbH
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PersistentSetTest {
+
+	@Test
+	public void matchesHashSet() {
+		Random random = new Random(0);
+		for (int round = 0; round < 100; round++) {
+			PersistentSet<Key> a = PersistentSet.empty();
+			PersistentSet<Key> b = PersistentSet.empty();
+			Set<Key> expectedA = new HashSet<>();
+			Set<Key> expectedB = new HashSet<>();
+			int range = 1 + random.nextInt(500);
+			for (int i = random.nextInt(200); i > 0; i--) {
+				Key k = new Key(random.nextInt(range));
+				a = a.plus(k);
+				expectedA.add(k);
+				k = new Key(random.nextInt(range));
+				b = b.plus(k);
+				expectedB.add(k);
+			}
+			assertEquals(expectedA, a);
+			assertEquals(a, expectedA);
+			assertEquals(expectedA.hashCode(), a.hashCode());
+			PersistentSet<Key> union = a.union(b);
+			expectedA.addAll(expectedB);
+			assertEquals(expectedA, union);
+			assertEquals(expectedA.size(), union.size());
+			assertEquals(new HashSet<>(union), expectedA);
+			assertEquals(union, b.union(a));
+			assertSame(union, union.union(a));
+			PersistentSet<Key> again = b.union(union);
+			assertTrue(again == union || again == b && b.equals(union));
+			assertFalse(union.contains(new Key(range)));
+		}
+	}
+
+	@Test
+	public void sharesUnchangedSets() {
+		PersistentSet<String> a = PersistentSet.of("a");
+		PersistentSet<String> ab = a.plus("b");
+		assertSame(ab, ab.plus("a"));
+		assertSame(ab, ab.union(a));
+		assertSame(ab, a.union(ab));
+		assertTrue(ab.contains("b"));
+		assertEquals(ab, PersistentSet.of("b").plus("a"));
+	}
+
+	/**
+	 * Few distinct hash codes, to exercise collision nodes.
+	 */
+	private static final class Key {
+		private final int id;
+
+		Key(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public int hashCode() {
+			return id % 7;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && ((Key) obj).id == id;
+		}
+	}
+}